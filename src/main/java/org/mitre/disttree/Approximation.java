@@ -0,0 +1,53 @@
+package org.mitre.disttree;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An Approximation lets a kNN search trade recall for speed. An approximate search may stop before
+ * it proves its results are the true k-nearest neighbors.
+ * <p>
+ * A leaf budget caps the number of DataPages a search loads, this puts a hard limit on a search's
+ * I/O (and latency). An epsilon factor returns results whose i-th distance is at most (1 + epsilon)
+ * times the true i-th nearest neighbor's distance. The search ignores any node that can only
+ * improve the results by less than this factor.
+ * <p>
+ * Approximate searches report whether their results are still guaranteed to be exact (see
+ * SearchResults.isExact()).
+ *
+ * @param maxLeaves The maximum number of leaves (i.e., DataPages) the search may visit
+ * @param epsilon   Results may be up to (1 + epsilon) times farther than the true results
+ */
+public record Approximation(int maxLeaves, double epsilon) {
+
+    /** An "Approximation" that requires exact results. */
+    public static final Approximation EXACT = new Approximation(Integer.MAX_VALUE, 0);
+
+    public Approximation {
+        checkArgument(maxLeaves >= 1, "maxLeaves must be at least 1");
+        checkArgument(epsilon >= 0, "epsilon cannot be negative");
+    }
+
+    /** Visit at most this many leaves (i.e., load at most this many DataPages). */
+    public static Approximation maxLeaves(int maxLeaves) {
+        return new Approximation(maxLeaves, 0);
+    }
+
+    /** Allow results that are up to (1 + epsilon) times farther than the exact results. */
+    public static Approximation epsilon(double epsilon) {
+        return new Approximation(Integer.MAX_VALUE, epsilon);
+    }
+
+    /** @return A copy of this Approximation that visits at most this many leaves. */
+    public Approximation withMaxLeaves(int n) {
+        return new Approximation(n, epsilon);
+    }
+
+    /** @return A copy of this Approximation with this epsilon factor. */
+    public Approximation withEpsilon(double e) {
+        return new Approximation(maxLeaves, e);
+    }
+
+    public boolean isExact() {
+        return maxLeaves == Integer.MAX_VALUE && epsilon == 0;
+    }
+}
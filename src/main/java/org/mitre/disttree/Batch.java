@@ -5,6 +5,7 @@ import static java.util.stream.Collectors.toCollection;
 import static org.mitre.caasd.commons.ids.TimeId.newId;
 import static org.mitre.disttree.Tuple.zipNewTuples;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -66,6 +67,9 @@ public class Batch<K, V> {
      * A BatchAccumulator holds incoming Tuples that will eventually be written to a DataStore.
      * Achieving efficient IO requires "bulk writes", this is where "add one tuples" becomes "add
      * many tuples".
+     * <p>
+     * A BatchAccumulator is thread-safe. It also tracks the (approximate) number of bytes it holds
+     * and when its oldest Tuple arrived, so callers can decide when a Batch is "full enough".
      *
      * @param <K>
      * @param <V>
@@ -75,29 +79,65 @@ public class Batch<K, V> {
         /** Tuples queuing up to be written to durable storage. */
         private final ArrayDeque<Tuple<K, V>> queue;
 
+        /** The sum of the sizes reported for every queued Tuple. */
+        private long queuedBytes;
+
+        /** When the oldest queued Tuple was added (in System.nanoTime units). */
+        private long oldestArrivalNanos;
+
         public BatchAccumulator() {
             this.queue = new ArrayDeque<>();
         }
 
         public void addToBatch(Tuple<K, V> tuple) {
+            addToBatch(tuple, 0);
+        }
+
+        /**
+         * @param tuple    A Tuple that should be written
+         * @param numBytes The size of this Tuple (e.g., the length of its serialized key and value)
+         */
+        public void addToBatch(Tuple<K, V> tuple, long numBytes) {
+            addToBatch(tuple, numBytes, System.nanoTime());
+        }
+
+        /**
+         * @param tuple        A Tuple that should be written
+         * @param numBytes     The size of this Tuple (e.g., the length of its serialized key and value)
+         * @param arrivalNanos When this Tuple arrived (in System.nanoTime units), this can precede the
+         *                     call when the Tuple first waited in another queue
+         */
+        public synchronized void addToBatch(Tuple<K, V> tuple, long numBytes, long arrivalNanos) {
+            if (queue.isEmpty()) {
+                oldestArrivalNanos = arrivalNanos;
+            }
             queue.add(tuple);
+            queuedBytes += numBytes;
         }
 
-        public int currentBatchSize() {
+        public synchronized int currentBatchSize() {
             return queue.size();
         }
 
+        public synchronized long currentBatchBytes() {
+            return queuedBytes;
+        }
+
+        /** @return How long the oldest queued Tuple has been waiting (zero when nothing is queued). */
+        public synchronized Duration oldestTupleAge() {
+            return queue.isEmpty() ? Duration.ZERO : Duration.ofNanos(System.nanoTime() - oldestArrivalNanos);
+        }
+
         /**
          * Drain all queued Tuples into a Batch<K,V> for committing to Tree via IO operations.
          */
-        public Batch<K, V> drainToBatch() {
+        public synchronized Batch<K, V> drainToBatch() {
 
-            synchronized (queue) {
-                var allData = new ArrayList<>(queue);
-                queue.clear();
+            var allData = new ArrayList<>(queue);
+            queue.clear();
+            queuedBytes = 0;
 
-                return new Batch<>(allData);
-            }
+            return new Batch<>(allData);
         }
     }
 
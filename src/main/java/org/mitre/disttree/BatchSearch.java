@@ -0,0 +1,191 @@
+package org.mitre.disttree;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mitre.caasd.commons.ids.TimeId;
+
+/**
+ * A BatchSearch executes many Searches with one shared traversal of a DistanceTree.
+ * <p>
+ * Executing similar Searches one at a time re-walks the top of the tree and reloads the same
+ * NodeHeaders and DataPages over and over. A BatchSearch visits each node once for every Search
+ * that still needs it. Each NodeHeader's children are loaded once and each DataPage is loaded
+ * once, no matter how many of the Searches need them.
+ * <p>
+ * Each Search still prunes with its own search radius and keeps its own results, so the results
+ * of a BatchSearch are identical to executing each Search separately.
+ *
+ * @param <K> The "Key" class is used to measure distance between two objects
+ * @param <V> The "Value" class
+ */
+class BatchSearch<K, V> {
+
+    private final List<Search<K, V>> searches;
+
+    private final InternalTree<K, V> tree;
+
+    private boolean isDone = false;
+
+    /* Counters that describe how much I/O the shared traversal required. */
+    private int headersLoaded = 0;
+    private int pagesLoaded = 0;
+
+    /** One Search's measurement of one node in the tree. */
+    private record Visit<K, V>(Search<K, V> search, DistBtw<K> dist) {}
+
+    /** A node in the tree and every Search that needs to visit it. */
+    private record Task<K, V>(NodeHeader<K> node, List<Visit<K, V>> visits) {
+
+        /** @return The smallest distance between this node's center and any search key. */
+        double closestKey() {
+            return visits.stream().mapToDouble(v -> v.dist().distance()).min().orElse(Double.MAX_VALUE);
+        }
+    }
+
+    private BatchSearch(List<Search<K, V>> searches, InternalTree<K, V> tree) {
+        requireNonNull(searches);
+        requireNonNull(tree);
+        this.searches = searches;
+        this.tree = tree;
+    }
+
+    /**
+     * Create a batch of kNN searches.
+     *
+     * @param searchKeys Search for each of these
+     * @param k          The "k" in k-Nearest-Neighbors
+     * @param tree       The source of information about the DistanceTree
+     */
+    static <K, V> BatchSearch<K, V> knnSearches(List<K> searchKeys, int k, InternalTree<K, V> tree) {
+        requireNonNull(searchKeys);
+        checkArgument(k >= 1, "k must be at least 1");
+
+        List<Search<K, V>> searches = searchKeys.stream()
+                .map(key -> Search.knnSearch(key, k, tree))
+                .toList();
+        return new BatchSearch<>(searches, tree);
+    }
+
+    /**
+     * Create a batch of range searches.
+     *
+     * @param searchKeys Search for each of these
+     * @param range      Include results within this distance
+     * @param tree       The source of information about the DistanceTree
+     */
+    static <K, V> BatchSearch<K, V> rangeSearches(List<K> searchKeys, double range, InternalTree<K, V> tree) {
+        requireNonNull(searchKeys);
+        checkArgument(range > 0, "The range must be strictly positive :{}", range);
+
+        List<Search<K, V>> searches = searchKeys.stream()
+                .map(key -> Search.rangeSearch(key, range, tree))
+                .toList();
+        return new BatchSearch<>(searches, tree);
+    }
+
+    /*
+     * The shared traversal is depth-first. Children are pushed from "worst" to "best" (measured by
+     * the closest search key) so the nodes near the search keys are explored first. This shrinks
+     * the radius of kNN searches early, just like a single depth-first Search.
+     */
+    synchronized void executeQueries() {
+        checkState(!isDone, "Searches were already executed");
+
+        NodeHeader<K> rootNode = tree.rootNode();
+
+        if (nonNull(rootNode)) {
+            headersLoaded++;
+
+            List<Visit<K, V>> rootVisits = searches.stream()
+                    .map(search -> new Visit<>(search, search.startAt(rootNode)))
+                    .toList();
+
+            Deque<Task<K, V>> stack = new ArrayDeque<>();
+            stack.push(new Task<>(rootNode, rootVisits));
+
+            while (!stack.isEmpty()) {
+                Task<K, V> task = stack.pop();
+
+                // Drop the Searches that cannot improve their results here
+                List<Visit<K, V>> visits = task.visits().stream()
+                        .filter(visit -> visit.search().needsToVisit(visit.dist()))
+                        .toList();
+
+                if (visits.isEmpty()) {
+                    continue;
+                }
+
+                if (task.node().isLeafNode()) {
+                    visitLeaf(task.node(), visits);
+                } else {
+                    visitChildren(task.node(), visits).stream()
+                            .sorted(Comparator.comparingDouble((Task<K, V> child) -> child.closestKey())
+                                    .reversed())
+                            .forEach(child -> stack.push(child));
+                }
+            }
+        }
+
+        searches.forEach(search -> search.markDone());
+        isDone = true;
+    }
+
+    /** Load one DataPage and give it to every Search that needs it. */
+    private void visitLeaf(NodeHeader<K> leaf, List<Visit<K, V>> visits) {
+        pagesLoaded++;
+        DataPage<K, V> page = tree.dataPageAt(leaf.id());
+        visits.forEach(visit -> visit.search().visitLeaf(visit.dist(), page));
+    }
+
+    /** Load a node's children once, then group each Search's measurements by child. */
+    private List<Task<K, V>> visitChildren(NodeHeader<K> parent, List<Visit<K, V>> visits) {
+
+        List<NodeHeader<K>> childNodes = tree.nodesBelow(parent);
+        headersLoaded += childNodes.size();
+
+        // LinkedHashMap, so children are pushed in a deterministic order when distances tie
+        Map<TimeId, List<Visit<K, V>>> visitsByChild = new LinkedHashMap<>();
+        Map<TimeId, NodeHeader<K>> childrenById = new LinkedHashMap<>();
+
+        for (Visit<K, V> visit : visits) {
+            for (DistBtw<K> childDist : visit.search().visitChildren(visit.dist(), childNodes)) {
+                TimeId childId = childDist.node().id();
+                childrenById.put(childId, childDist.node());
+                visitsByChild
+                        .computeIfAbsent(childId, id -> new ArrayList<>())
+                        .add(new Visit<>(visit.search(), childDist));
+            }
+        }
+
+        return visitsByChild.entrySet().stream()
+                .map(entry -> new Task<>(childrenById.get(entry.getKey()), entry.getValue()))
+                .toList();
+    }
+
+    /** @return One SearchResults per search key (in the same order as the search keys). */
+    List<SearchResults<K, V>> results() {
+        checkState(isDone, "Searches were not executed");
+        return searches.stream().map(search -> search.results()).toList();
+    }
+
+    /** @return The number of NodeHeaders the shared traversal loaded (including the root). */
+    int headersLoaded() {
+        return headersLoaded;
+    }
+
+    /** @return The number of DataPages the shared traversal loaded. */
+    int pagesLoaded() {
+        return pagesLoaded;
+    }
+}
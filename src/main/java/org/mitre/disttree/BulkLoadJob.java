@@ -0,0 +1,58 @@
+package org.mitre.disttree;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A BulkLoadJob fills an empty DistanceTree with a large dataset when it is executed.
+ */
+class BulkLoadJob<K, V> implements Runnable {
+
+    final InternalTree<K, V> targetTree;
+    final Collection<Tuple<K, V>> tuples;
+    final ForkJoinPool pool;
+
+    /**
+     * @param targetTree The (empty) DistanceTree we want to fill
+     * @param tuples     The entire dataset
+     */
+    BulkLoadJob(InternalTree<K, V> targetTree, Collection<Tuple<K, V>> tuples) {
+        this(targetTree, tuples, null);
+    }
+
+    /**
+     * @param targetTree The (empty) DistanceTree we want to fill
+     * @param tuples     The entire dataset
+     * @param pool       Partitions the dataset in parallel (null = use the calling thread)
+     */
+    BulkLoadJob(InternalTree<K, V> targetTree, Collection<Tuple<K, V>> tuples, ForkJoinPool pool) {
+        requireNonNull(targetTree);
+        requireNonNull(tuples);
+        this.targetTree = targetTree;
+        this.tuples = tuples;
+        this.pool = pool;
+    }
+
+    @Override
+    public void run() {
+
+        BulkLoader<K, V> loader = new BulkLoader<>(targetTree, pool, BulkLoader.DEFAULT_SEED);
+        List<TreeTransaction<K, V>> transactions = loader.computeTransactions(tuples);
+
+        transactions.forEach(transaction -> execute(transaction));
+    }
+
+    /** Update the underlying DataStore, make it represent a revised DistanceTree. */
+    private void execute(TreeTransaction<K, V> transaction) {
+
+        if (transaction.expectedTreeId() != targetTree.lastTransactionId()) {
+            throw new ConcurrentModificationException();
+        }
+
+        targetTree.applyTransaction(transaction);
+    }
+}
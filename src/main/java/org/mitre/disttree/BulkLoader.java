@@ -0,0 +1,382 @@
+package org.mitre.disttree;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.Math.max;
+import static java.util.Objects.isNull;
+import static java.util.Objects.requireNonNull;
+import static org.mitre.caasd.commons.ids.TimeId.newId;
+import static org.mitre.disttree.NodeHeader.newInnerNodeHeader;
+import static org.mitre.disttree.NodeHeader.newLeafNodeHeader;
+import static org.mitre.disttree.TupleAssignment.assign;
+import static org.mitre.disttree.VerifyingDistanceMetric.verifyDistances;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+import org.mitre.caasd.commons.ids.TimeId;
+import org.mitre.disttree.Splitter.SplitResult;
+import org.mitre.disttree.Splitter.Stub;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A BulkLoader builds an entire DistanceTree "from the bottom up" using a large dataset that is
+ * known in advance.
+ * <p>
+ * Adding a big dataset one Batch at a time is slow because every Batch requires top-down descents
+ * of the tree, node splits, incremental repacking, and a round trip to the DataStore. A BulkLoader
+ * skips all of that. First, the dataset is recursively partitioned (using a Splitter) until every
+ * partition fits in one DataPage, these partitions become the leaves. Next, the inner levels are
+ * built bottom-up by grouping up to branchingFactor neighboring nodes under one parent. Finally,
+ * the tree is written using a few large TreeTransactions.
+ * <p>
+ * The root node is written in the last TreeTransaction, so the tree appears empty until the bulk
+ * load is complete.
+ * <p>
+ * When a ForkJoinPool is provided the partitioning (and the construction of each inner level) is
+ * performed in parallel. The tree that is built does not depend on the pool, it only depends on the
+ * dataset and the seed.
+ */
+class BulkLoader<K, V> {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(BulkLoader.class);
+
+    /** The number of leaf nodes (and DataPages) written in each TreeTransaction. */
+    static final int LEAVES_PER_TRANSACTION = 1_000;
+
+    /** Partitions with at least this many Tuples have their two halves divided concurrently. */
+    static final int PARALLEL_PARTITION_THRESHOLD = 20_000;
+
+    static final long DEFAULT_SEED = 17L;
+
+    private final InternalTree<K, V> tree;
+
+    private final DistanceMetric<K> distMetric;
+
+    private final int maxTuplesPerPage;
+
+    private final int branchingFactor;
+
+    /** Runs the partitioning work, null means everything happens on the calling thread. */
+    private final ForkJoinPool pool;
+
+    /** Seeds the random center selection of the first split (later splits derive their own seeds). */
+    private final long seed;
+
+    /** @param tree The (empty) tree this BulkLoader will fill */
+    BulkLoader(InternalTree<K, V> tree) {
+        this(tree, null, DEFAULT_SEED);
+    }
+
+    /**
+     * @param tree The (empty) tree this BulkLoader will fill
+     * @param pool Runs the partitioning work (null = use the calling thread)
+     * @param seed Controls the random center selection, the same seed always builds the same tree
+     */
+    BulkLoader(InternalTree<K, V> tree, ForkJoinPool pool, long seed) {
+        requireNonNull(tree);
+        this.tree = tree;
+        this.distMetric = verifyDistances(tree.config().distMetric());
+        this.maxTuplesPerPage = tree.config().maxTuplesPerPage();
+        this.branchingFactor = tree.config().branchingFactor();
+        this.pool = pool;
+        this.seed = seed;
+    }
+
+    /**
+     * Compute the sequence of TreeTransactions that will write these Tuples to the (empty) tree.
+     * These transactions must be applied in order.
+     *
+     * @param tuples The entire dataset
+     */
+    List<TreeTransaction<K, V>> computeTransactions(Collection<Tuple<K, V>> tuples) {
+        requireNonNull(tuples);
+        checkArgument(!tuples.isEmpty(), "Cannot bulk load an empty dataset");
+        checkState(isNull(tree.rootNode()), "Bulk loading requires an empty tree");
+
+        List<Stub<K, V>> partitions = partition(new TreeSet<>(tuples));
+
+        LOGGER.atDebug()
+                .setMessage("Bulk loading {} tuples into {} leaves")
+                .addArgument(tuples.size())
+                .addArgument(partitions.size())
+                .log();
+
+        // Give each leaf an id, the leaves learn about their parents when the next level is built
+        List<NodeHeader<K>> leaves = new ArrayList<>(partitions.size());
+        Map<TimeId, Stub<K, V>> leafContents = new HashMap<>();
+        for (Stub<K, V> stub : partitions) {
+            NodeHeader<K> leaf = newLeafNodeHeader(newId(), null, stub.center(), stub.radius(), stub.tuples().size());
+            leaves.add(leaf);
+            leafContents.put(leaf.id(), stub);
+        }
+
+        List<NodeHeader<K>> finishedLeaves = new ArrayList<>(leaves.size());
+        List<NodeHeader<K>> innerNodes = new ArrayList<>();
+
+        List<NodeHeader<K>> level = leaves;
+        List<NodeHeader<K>> finishedLevel = finishedLeaves;
+        do {
+            List<Family<K>> families = mapInOrder(groupNeighbors(level), this::buildParent);
+            List<NodeHeader<K>> parents = new ArrayList<>(families.size());
+            for (Family<K> family : families) {
+                parents.add(family.parent());
+                finishedLevel.addAll(family.children());
+            }
+            level = parents;
+            finishedLevel = innerNodes;
+        } while (level.size() > 1);
+
+        // The last node standing is the root (there is always an inner root, even with one leaf)
+        innerNodes.add(level.get(0));
+
+        return asTransactions(finishedLeaves, leafContents, innerNodes);
+    }
+
+    /**
+     * Recursively split these Tuples until every partition fits inside one DataPage. The partitions
+     * are returned in depth first order, so partitions that are adjacent in the output were split
+     * from the same parent partition (i.e., they are spatial neighbors).
+     * <p>
+     * Every split draws its center points using a seed derived from its parent's seed. Therefore,
+     * the partitions only depend on the data and the BulkLoader's seed (not on how the work was
+     * scheduled across threads).
+     */
+    private List<Stub<K, V>> partition(Set<Tuple<K, V>> allTuples) {
+
+        if (allTuples.size() <= maxTuplesPerPage) {
+            return List.of(stubAroundFirstKey(allTuples));
+        }
+
+        return isNull(pool) ? partitionSequentially(allTuples, seed) : pool.invoke(new PartitionTask(allTuples, seed));
+    }
+
+    /**
+     * Divide an oversized set of Tuples using one thread. An explicit stack is used (instead of
+     * recursion) because a lopsided dataset can require very deep splitting.
+     */
+    private List<Stub<K, V>> partitionSequentially(Set<Tuple<K, V>> tuples, long seed) {
+
+        List<Stub<K, V>> partitions = new ArrayList<>();
+
+        Deque<Partition<K, V>> stack = new ArrayDeque<>();
+        pushSplit(stack, tuples, seed);
+
+        while (!stack.isEmpty()) {
+            Partition<K, V> cur = stack.pop();
+            if (cur.stub().tuples().size() <= maxTuplesPerPage) {
+                partitions.add(cur.stub());
+            } else {
+                pushSplit(stack, cur.stub().tuples(), cur.seed());
+            }
+        }
+
+        return partitions;
+    }
+
+    /** Split these Tuples, then push the right half and the left half (the left half is divided first). */
+    private void pushSplit(Deque<Partition<K, V>> stack, Set<Tuple<K, V>> tuples, long seed) {
+        List<Partition<K, V>> halves = split(tuples, seed);
+        stack.push(halves.get(1));
+        stack.push(halves.get(0));
+    }
+
+    /** @return The left and right halves of these Tuples (each with the seed used to divide it further). */
+    private List<Partition<K, V>> split(Set<Tuple<K, V>> tuples, long seed) {
+
+        // The caller opted into parallel work by providing a pool, so big splits can use it too
+        Splitter<K, V> splitter = new Splitter<>(distMetric, CenterSelectors.maxOfRandomSamples(seed, pool), pool);
+        SplitResult<K, V> split = splitter.splitCarefully(tuples);
+
+        checkState(!split.left().tuples().isEmpty() && !split.right().tuples().isEmpty(), "Empty partition");
+
+        SplittableRandom rng = new SplittableRandom(seed);
+        return List.of(new Partition<>(split.left(), rng.nextLong()), new Partition<>(split.right(), rng.nextLong()));
+    }
+
+    /** A Stub that may need to be split further, and the seed to use when it is split. */
+    private record Partition<K, V>(Stub<K, V> stub, long seed) {}
+
+    /**
+     * Divides an oversized set of Tuples on a ForkJoinPool. The two halves of every big split are
+     * divided concurrently. Small partitions are divided sequentially (to avoid tiny tasks).
+     */
+    private class PartitionTask extends RecursiveTask<List<Stub<K, V>>> {
+
+        private final Set<Tuple<K, V>> tuples;
+
+        private final long seed;
+
+        PartitionTask(Set<Tuple<K, V>> tuples, long seed) {
+            this.tuples = tuples;
+            this.seed = seed;
+        }
+
+        @Override
+        protected List<Stub<K, V>> compute() {
+
+            if (tuples.size() < PARALLEL_PARTITION_THRESHOLD) {
+                return partitionSequentially(tuples, seed);
+            }
+
+            List<Partition<K, V>> halves = split(tuples, seed);
+            Partition<K, V> left = halves.get(0);
+            Partition<K, V> right = halves.get(1);
+
+            PartitionTask rightTask = null;
+            if (right.stub().tuples().size() > maxTuplesPerPage) {
+                rightTask = new PartitionTask(right.stub().tuples(), right.seed());
+                rightTask.fork();
+            }
+
+            List<Stub<K, V>> partitions = new ArrayList<>();
+            if (left.stub().tuples().size() > maxTuplesPerPage) {
+                partitions.addAll(new PartitionTask(left.stub().tuples(), left.seed()).compute());
+            } else {
+                partitions.add(left.stub());
+            }
+
+            if (isNull(rightTask)) {
+                partitions.add(right.stub());
+            } else {
+                partitions.addAll(rightTask.join());
+            }
+
+            return partitions;
+        }
+    }
+
+    /** @return A Stub for a dataset that is too small to split (the first key becomes the center). */
+    private Stub<K, V> stubAroundFirstKey(Set<Tuple<K, V>> tuples) {
+
+        K center = tuples.iterator().next().key();
+
+        Map<TimeId, Double> dists = new HashMap<>();
+        double radius = 0;
+        for (Tuple<K, V> tuple : tuples) {
+            double dist = distMetric.distanceBtw(center, tuple.key());
+            dists.put(tuple.id(), dist);
+            radius = max(radius, dist);
+        }
+
+        return new Stub<>(center, tuples, radius, dists);
+    }
+
+    /** Divide a level of nodes into (evenly sized) groups of adjacent nodes that share a parent. */
+    private List<List<NodeHeader<K>>> groupNeighbors(List<NodeHeader<K>> level) {
+
+        int n = level.size();
+        int numGroups = (n + branchingFactor - 1) / branchingFactor;
+
+        List<List<NodeHeader<K>>> groups = new ArrayList<>(numGroups);
+        for (int i = 0; i < numGroups; i++) {
+            int from = (int) ((long) i * n / numGroups);
+            int to = (int) ((long) (i + 1) * n / numGroups);
+            groups.add(level.subList(from, to));
+        }
+        return groups;
+    }
+
+    /** Apply this function to every item (using the pool when there is one), the output order matches the input. */
+    private <T, R> List<R> mapInOrder(List<T> items, Function<T, R> func) {
+        return isNull(pool)
+                ? items.stream().map(func).toList()
+                : pool.submit(() -> items.parallelStream().map(func).toList()).join();
+    }
+
+    /** A new parent node and its children (whose parent and distToParent are now known). */
+    private record Family<K>(NodeHeader<K> parent, List<NodeHeader<K>> children) {}
+
+    /**
+     * Build the parent of these sibling nodes. The parent's center is the sibling center that
+     * yields the smallest parent radius.
+     *
+     * @param siblings The nodes that will share the new parent
+     *
+     * @return The parent node (whose own parent is not known yet) and the updated siblings
+     */
+    private Family<K> buildParent(List<NodeHeader<K>> siblings) {
+
+        int n = siblings.size();
+        double[][] dists = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double dist = distMetric.distanceBtw(siblings.get(i).center(), siblings.get(j).center());
+                dists[i][j] = dist;
+                dists[j][i] = dist;
+            }
+        }
+
+        int bestCenter = 0;
+        double bestRadius = Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            double radius = 0;
+            for (int j = 0; j < n; j++) {
+                radius = max(radius, dists[i][j] + siblings.get(j).radius());
+            }
+            if (radius < bestRadius) {
+                bestCenter = i;
+                bestRadius = radius;
+            }
+        }
+
+        TimeId parentId = newId();
+        List<TimeId> childIds = siblings.stream().map(NodeHeader::id).toList();
+
+        List<NodeHeader<K>> children = new ArrayList<>(n);
+        for (int j = 0; j < n; j++) {
+            children.add(siblings.get(j).withParent(parentId).withDistToParent(dists[bestCenter][j]));
+        }
+
+        NodeHeader<K> parent =
+                newInnerNodeHeader(parentId, null, siblings.get(bestCenter).center(), bestRadius, childIds);
+
+        return new Family<>(parent, children);
+    }
+
+    /**
+     * Write the leaves (and their DataPages) in chunks, then write every inner node in one final
+     * transaction. Each transaction expects the tree to be in the state the previous transaction
+     * left it in.
+     */
+    private List<TreeTransaction<K, V>> asTransactions(
+            List<NodeHeader<K>> leaves, Map<TimeId, Stub<K, V>> leafContents, List<NodeHeader<K>> innerNodes) {
+
+        List<TreeTransaction<K, V>> transactions = new ArrayList<>();
+        TimeId expectedTreeId = tree.lastTransactionId();
+
+        for (int from = 0; from < leaves.size(); from += LEAVES_PER_TRANSACTION) {
+
+            List<NodeHeader<K>> chunk = leaves.subList(from, Math.min(from + LEAVES_PER_TRANSACTION, leaves.size()));
+
+            List<TupleAssignment<K, V>> assignments = new ArrayList<>();
+            for (NodeHeader<K> leaf : chunk) {
+                Stub<K, V> stub = leafContents.get(leaf.id());
+                stub.tuples().forEach(tuple -> assignments.add(assign(tuple, leaf.id(), stub.distToCenter(tuple))));
+            }
+
+            TreeTransaction<K, V> transaction = new TreeTransaction<>(
+                    expectedTreeId, chunk, List.of(), assignments, List.of(), Set.of(), Set.of());
+            transactions.add(transaction);
+            expectedTreeId = transaction.transactionId();
+        }
+
+        transactions.add(new TreeTransaction<>(
+                expectedTreeId, innerNodes, List.of(), List.of(), List.of(), Set.of(), Set.of()));
+
+        return transactions;
+    }
+}
@@ -1,12 +1,36 @@
 package org.mitre.disttree;
 
+import static java.util.Objects.nonNull;
+
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class CenterSelectors {
 
+    /** When a selector has a ForkJoinPool, candidate pairs are measured in parallel once this many pairs are drawn. */
+    static final int PARALLEL_PAIR_THRESHOLD = 256;
+
     public static <K> CenterSelector<K> maxOfRandomSamples() {
-        return new RandomizedMaxDistanceSelector<>();
+        return new RandomizedMaxDistanceSelector<>(17L, null);
+    }
+
+    /**
+     * @param seed Seeds the random number generator that draws candidate pairs. Two selectors with
+     *             the same seed select the same centers from the same keys.
+     */
+    public static <K> CenterSelector<K> maxOfRandomSamples(long seed) {
+        return new RandomizedMaxDistanceSelector<>(seed, null);
+    }
+
+    /**
+     * @param seed Seeds the random number generator that draws candidate pairs
+     * @param pool Measures the candidate pairs of big key sets in parallel (null = use the calling
+     *             thread). Only provide a pool when the DistanceMetric is thread-safe.
+     */
+    static <K> CenterSelector<K> maxOfRandomSamples(long seed, ForkJoinPool pool) {
+        return new RandomizedMaxDistanceSelector<>(seed, pool);
     }
 
     /**
@@ -16,7 +40,15 @@ public class CenterSelectors {
      */
     private static class RandomizedMaxDistanceSelector<K> implements CenterSelector<K> {
 
-        final Random rng = new Random(17L);
+        final Random rng;
+
+        /** Measures the candidate pairs in parallel, null means use the calling thread. */
+        final ForkJoinPool pool;
+
+        RandomizedMaxDistanceSelector(long seed, ForkJoinPool pool) {
+            this.rng = new Random(seed);
+            this.pool = pool;
+        }
 
         /**
          * @param keys   A List of Keys that needs to be split
@@ -29,6 +61,10 @@ public class CenterSelectors {
 
             int numPairsToDraw = (int) Math.sqrt(keys.size()); // sqrt strikes a good balance
 
+            if (nonNull(pool) && numPairsToDraw >= PARALLEL_PAIR_THRESHOLD) {
+                return selectInParallel(keys, metric, numPairsToDraw);
+            }
+
             List<K> bestPair = selectRandomPairOfKeys(keys, rng);
             double biggestDistance = metric.distanceBtw(bestPair.get(0), bestPair.get(1));
             numPairsToDraw--;
@@ -46,6 +82,30 @@ public class CenterSelectors {
 
             return bestPair;
         }
+
+        /**
+         * Draw every candidate pair up front (so the result does not depend on thread scheduling),
+         * then measure the pairs in parallel. Ties go to the pair that was drawn first.
+         */
+        private List<K> selectInParallel(List<K> keys, DistanceMetric<K> metric, int numPairsToDraw) {
+
+            List<List<K>> pairs = IntStream.range(0, numPairsToDraw)
+                    .mapToObj(i -> selectRandomPairOfKeys(keys, rng))
+                    .toList();
+
+            double[] dists = pool.submit(() -> pairs.parallelStream()
+                            .mapToDouble(pair -> metric.distanceBtw(pair.get(0), pair.get(1)))
+                            .toArray())
+                    .join();
+
+            int best = 0;
+            for (int i = 1; i < dists.length; i++) {
+                if (dists[i] > dists[best]) {
+                    best = i;
+                }
+            }
+            return pairs.get(best);
+        }
     }
 
     private static <KEY> List<KEY> selectRandomPairOfKeys(List<KEY> keys, Random rng) {
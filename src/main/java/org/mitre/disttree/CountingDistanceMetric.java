@@ -2,8 +2,11 @@ package org.mitre.disttree;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.concurrent.atomic.LongAdder;
+
 /**
- * Decorates a DistanceMetric, tracks how often the "distanceBtw" method is called.
+ * Decorates a DistanceMetric, tracks how often the "distanceBtw" method is called. The count is
+ * accurate even when several threads (e.g., a parallel search) use the metric at the same time.
  *
  * @param <KEY>
  */
@@ -11,13 +14,13 @@ public class CountingDistanceMetric<KEY> implements DistanceMetric<KEY> {
 
     private final DistanceMetric<KEY> metric;
 
-    private long numExecutions;
+    private final LongAdder numExecutions;
 
     /** Augment this DistanceMetric so that we can track how often it is called. */
     public CountingDistanceMetric(DistanceMetric<KEY> metric) {
         requireNonNull(metric);
         this.metric = metric;
-        this.numExecutions = 0;
+        this.numExecutions = new LongAdder();
     }
 
     /**
@@ -32,7 +35,7 @@ public class CountingDistanceMetric<KEY> implements DistanceMetric<KEY> {
      */
     @Override
     public double distanceBtw(KEY k1, KEY k2) {
-        numExecutions++;
+        numExecutions.increment();
         return metric.distanceBtw(k1, k2);
     }
 
@@ -41,7 +44,7 @@ public class CountingDistanceMetric<KEY> implements DistanceMetric<KEY> {
      *     is useful when measuring how much work is done during tree search and tree creation.
      */
     public long numExecutions() {
-        return numExecutions;
+        return numExecutions.sum();
     }
 
     /** @return The DistanceMetric provided at construction time. */
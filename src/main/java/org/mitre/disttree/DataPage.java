@@ -5,7 +5,9 @@ import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toSet;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -22,20 +24,61 @@ import org.mitre.caasd.commons.ids.TimeId;
  * <p>
  * A Radius and "center point" is intentionally not stored as part of a DataPage because we want the
  * center and radius to be maintained in a separate object (i.e., the NodeHeader) that can be more
- * aggressively cached because it is smaller and uses fewer bytes.
+ * aggressively cached because it is smaller and uses fewer bytes. However, the distance between
+ * each Tuple's key and the leaf's center CAN be stored. Searches use these distances to skip
+ * Tuples that cannot be inside the query sphere without running the DistanceMetric.
  *
- * @param id     A unique ID that identifies this particular page of data.
- * @param tuples The tuples themselves
- * @param <K>    The Key class
- * @param <V>    The Value class
+ * @param id          A unique ID that identifies this particular page of data.
+ * @param tuples      The tuples themselves
+ * @param centerDists The distance between a tuple's key and the leaf's center (by tuple id). This
+ *                    map may omit tuples whose distance is unknown.
+ * @param <K>         The Key class
+ * @param <V>         The Value class
  */
-public record DataPage<K, V>(TimeId id, Set<Tuple<K, V>> tuples) {
+public record DataPage<K, V>(TimeId id, Set<Tuple<K, V>> tuples, Map<TimeId, Double> centerDists) {
+
+    public DataPage {
+        requireNonNull(id);
+        requireNonNull(tuples);
+        requireNonNull(centerDists);
+    }
+
+    /** Create a DataPage that does not know how far its tuples are from the leaf's center. */
+    public DataPage(TimeId id, Set<Tuple<K, V>> tuples) {
+        this(id, tuples, Map.of());
+    }
 
     /** Create a new DataPage with this TimeId and these Tuples. */
     public static <K, V> DataPage<K, V> asDataPage(TimeId id, Collection<Tuple<K, V>> tuples) {
         return new DataPage<>(id, new TreeSet<>(tuples));
     }
 
+    /**
+     * Create a new DataPage from TupleAssignments that all target this DataPage. The distToCenter
+     * of each assignment is retained when it is known.
+     */
+    public static <K, V> DataPage<K, V> fromAssignments(TimeId id, Collection<TupleAssignment<K, V>> assignments) {
+
+        TreeSet<Tuple<K, V>> tuples = new TreeSet<>();
+        Map<TimeId, Double> dists = new HashMap<>();
+
+        for (TupleAssignment<K, V> ta : assignments) {
+            checkArgument(ta.hasPageId(id));
+            tuples.add(ta.tuple());
+            if (ta.hasDistToCenter()) {
+                dists.put(ta.tupleId(), ta.distToCenter());
+            }
+        }
+
+        return new DataPage<>(id, tuples, dists);
+    }
+
+    /** @return The distance between this tuple's key and the leaf's center (NaN when unknown). */
+    public double distToCenter(TimeId tupleId) {
+        Double dist = centerDists.get(tupleId);
+        return dist == null ? Double.NaN : dist;
+    }
+
     public List<K> keyList() {
         // Cannot be a Set because keys can be repeated
         return tuples.stream().map(e -> e.key()).toList();
@@ -64,6 +107,9 @@ public record DataPage<K, V>(TimeId id, Set<Tuple<K, V>> tuples) {
         allTuples.addAll(a.tuples);
         allTuples.addAll(b.tuples);
 
-        return new DataPage<>(a.id, allTuples);
+        Map<TimeId, Double> allDists = new HashMap<>(a.centerDists);
+        allDists.putAll(b.centerDists);
+
+        return new DataPage<>(a.id, allTuples, allDists);
     }
 }
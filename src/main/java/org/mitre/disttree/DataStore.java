@@ -1,5 +1,14 @@
 package org.mitre.disttree;
 
+import static java.util.Objects.nonNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 import org.mitre.caasd.commons.ids.TimeId;
 
 /**
@@ -42,6 +51,71 @@ public interface DataStore {
      */
     NodeHeader<byte[]> nodeAt(TimeId id);
 
+    /**
+     * Get multiple NodeHeaders in one bulk read. Descending the tree requires fetching every child
+     * of an inner node, so DataStores that perform real I/O should override this method and
+     * retrieve all the requested NodeHeaders with a single round trip.
+     *
+     * @param ids The ids of the NodeHeaders to retrieve (usually the children of one inner node)
+     *
+     * @return The NodeHeaders that were found, in the same order as the input ids. Ids that do not
+     *     correspond to a NodeHeader are skipped.
+     * @throws NullPointerException When ids is null
+     */
+    default List<NodeHeader<byte[]>> nodesAt(Collection<TimeId> ids) {
+        List<NodeHeader<byte[]>> nodes = new ArrayList<>(ids.size());
+        for (TimeId id : ids) {
+            NodeHeader<byte[]> node = nodeAt(id);
+            if (nonNull(node)) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Get multiple DataPages in one bulk read. DataStores that perform real I/O should override
+     * this method and retrieve all the requested DataPages with a single round trip.
+     *
+     * @param ids The ids of the DataPages to retrieve
+     *
+     * @return The DataPages that were found, in the same order as the input ids. Ids that do not
+     *     correspond to a DataPage are skipped.
+     * @throws NullPointerException When ids is null
+     */
+    default List<DataPage<byte[], byte[]>> dataPagesAt(Collection<TimeId> ids) {
+        List<DataPage<byte[], byte[]>> pages = new ArrayList<>(ids.size());
+        for (TimeId id : ids) {
+            DataPage<byte[], byte[]> page = dataPageAt(id);
+            if (nonNull(page)) {
+                pages.add(page);
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Find the DataPage that contains a Tuple. This secondary index (from tuple id to page id) is
+     * maintained by applyTransaction. It allows Tuples that were already added to the tree to be
+     * retrieved without searching the tree with the DistanceMetric.
+     *
+     * @param tupleId The id of a Tuple (i.e., the TimeId assigned when the Tuple was created)
+     *
+     * @return The id of the DataPage containing this Tuple, or null when the Tuple is not found.
+     * @throws NullPointerException When tupleId is null
+     */
+    TimeId pageIdOf(TimeId tupleId);
+
+    /**
+     * Use the secondary index (from tuple id to page id) to find every Tuple that was created
+     * before a cutoff. This supports time-windowed retention without reading any DataPages.
+     *
+     * @param cutoff Tuples whose TimeId is older than this instant are found
+     *
+     * @return The id of the DataPage containing each old Tuple (tupleId -> pageId)
+     */
+    Map<TimeId, TimeId> pageIdsOfTuplesOlderThan(Instant cutoff);
+
     /**
      * Perform I/O that "adds data" to a MetricTree. Ideally, this method will be ACID compliant
      * (i.e. all ops must succeed OR rollback everything)
@@ -49,6 +123,44 @@ public interface DataStore {
      * @param transaction A set of changes to a MetricTree that need to be executed successfully as
      *                    a transaction
      */
-    // @todo -- Perhaps this signature should change to permit/encourage async writes
     void applyTransaction(TreeTransaction<byte[], byte[]> transaction);
+
+    /**
+     * Apply a TreeTransaction without waiting for the I/O to finish. Every read that follows this
+     * call must reflect the transaction (even before it is durable), so the next TreeTransaction can
+     * be computed while this one is persisted. The default implementation is synchronous.
+     *
+     * @param transaction A set of changes to a MetricTree that need to be executed successfully as
+     *                    a transaction
+     *
+     * @return A future that completes with the transaction's id once the transaction is durable (or
+     *     completes exceptionally if the I/O fails)
+     * @throws IllegalStateException When the transaction is rejected up front (e.g., it was not
+     *                               built from this DataStore's current state)
+     */
+    default CompletableFuture<TimeId> applyTransactionAsync(TreeTransaction<byte[], byte[]> transaction) {
+        applyTransaction(transaction);
+        return CompletableFuture.completedFuture(transaction.transactionId());
+    }
+
+    /**
+     * Open a read-only view of this DataStore that is pinned to its current lastTransactionId.
+     * Reads from the Snapshot are unaffected by later transactions, so they never observe a
+     * partially applied transaction. The Snapshot must be closed, superseded NodeHeaders and
+     * DataPages it may read are retained until then.
+     *
+     * @throws UnsupportedOperationException When this DataStore does not retain superseded data (see
+     *                                       DataStores.versionedStore)
+     */
+    default Snapshot openSnapshot() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support snapshots");
+    }
+
+    /** A read-only, point-in-time view of a DataStore. */
+    interface Snapshot extends DataStore, AutoCloseable {
+
+        /** Release the superseded data this Snapshot retains. */
+        @Override
+        void close();
+    }
 }
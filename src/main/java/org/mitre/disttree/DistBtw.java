@@ -1,11 +1,14 @@
 package org.mitre.disttree;
 
 import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 import static org.mitre.disttree.Ops.NodeOp.increaseRadiusOf;
 
 import java.util.List;
+import java.util.Map;
 
+import org.mitre.caasd.commons.ids.TimeId;
 import org.mitre.disttree.Ops.NodeOp;
 
 /**
@@ -41,6 +44,73 @@ public record DistBtw<K>(NodeHeader<K> node, K key, double distance) {
         return new DistBtw<>(bestSoFar, key, minDist);
     }
 
+    /**
+     * Given the children of one node, find the child whose center is closest to the Key. Children
+     * whose distToParent is known are skipped (without running the DistanceMetric) when the
+     * triangle inequality proves they cannot be closer than the best child found so far.
+     *
+     * @param distMetric        The DistanceMetric
+     * @param children          The children of a single parent node
+     * @param key               The key being routed
+     * @param keyToParentCenter The distance between the key and the parent node's center
+     */
+    public static <K> DistBtw<K> chooseClosest(
+            DistanceMetric<K> distMetric, List<NodeHeader<K>> children, K key, double keyToParentCenter) {
+        return chooseClosest(distMetric, children, key, keyToParentCenter, Map.of());
+    }
+
+    /**
+     * Given the children of one node, find the child whose center is closest to the Key. Distances
+     * that were already measured (e.g., by a Search for the same key) are reused instead of running
+     * the DistanceMetric again.
+     *
+     * @param distMetric        The DistanceMetric
+     * @param children          The children of a single parent node
+     * @param key               The key being routed
+     * @param keyToParentCenter The distance between the key and the parent node's center
+     * @param knownDists        Previously measured distances between the key and node centers (by
+     *                          node id)
+     */
+    public static <K> DistBtw<K> chooseClosest(
+            DistanceMetric<K> distMetric,
+            List<NodeHeader<K>> children,
+            K key,
+            double keyToParentCenter,
+            Map<TimeId, Double> knownDists) {
+        requireNonNull(key);
+        requireNonNull(children);
+        requireNonNull(knownDists);
+        checkState(!children.isEmpty());
+
+        double minDist = Double.MAX_VALUE;
+        NodeHeader<K> bestSoFar = null;
+
+        for (NodeHeader<K> cur : children) {
+
+            Double knownDist = knownDists.get(cur.id());
+            if (nonNull(knownDist)) {
+                if (knownDist < minDist) {
+                    minDist = knownDist;
+                    bestSoFar = cur;
+                }
+                continue;
+            }
+
+            // |d(key, parent) - d(child, parent)| <= d(key, child)
+            if (cur.hasDistToParent() && Math.abs(keyToParentCenter - cur.distToParent()) >= minDist) {
+                continue;
+            }
+
+            double dist = distMetric.distanceBtw(key, cur.center());
+            if (dist < minDist) {
+                minDist = dist;
+                bestSoFar = cur;
+            }
+        }
+
+        return new DistBtw<>(bestSoFar, key, minDist);
+    }
+
     /** @return True if adding this Key to this node would increase its radius. */
     public boolean increasesRadius() {
         return distance > node.radius();
@@ -1,10 +1,25 @@
 package org.mitre.disttree;
 
+import static java.util.Objects.isNull;
 import static java.util.Objects.requireNonNull;
 import static org.mitre.disttree.TreeConfig.ReadWriteMode.READ_ONLY;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.mitre.caasd.commons.ids.TimeId;
 import org.mitre.disttree.TreeConfig.ReadWriteMode;
 
 import org.slf4j.Logger;
@@ -51,9 +66,127 @@ public class DistanceTree<K, V> {
         job.run();
     }
 
-    /** Block while adding multiple Batch of data to the DistanceTree. */
+    /**
+     * Add one Batch of data to the DistanceTree without waiting for the DataStore to make it
+     * durable. The tree (and every search) reflects the Batch as soon as this method returns. When
+     * the DataStore writes asynchronously (see DataStores.pipelinedStore) the next Batch's
+     * transaction is computed while this Batch is still being written. Otherwise, the write is
+     * finished before this method returns.
+     *
+     * @return A future that completes with the id of the Batch's TreeTransaction once it is durable
+     */
+    public CompletableFuture<TimeId> addBatchAsync(Batch<K, V> batch) {
+        if (readWriteMode == READ_ONLY) {
+            throw new UnsupportedOperationException("Cannot add batch in READ_ONLY mode");
+        }
+        LOGGER.atTrace()
+                .setMessage("Adding a new batch of {} tuples asynchronously")
+                .addArgument(batch.tuples().size())
+                .log();
+
+        var job = new InsertBatchJob<>(tree, batch);
+        return job.runAsync();
+    }
+
+    /**
+     * Block while adding multiple Batch of data to the DistanceTree. Each Batch's transaction is
+     * computed while the prior Batch is written (if the DataStore writes asynchronously).
+     */
     public void addBatches(List<Batch<K, V>> batches) {
-        batches.forEach(t -> addBatch(t));
+        List<CompletableFuture<TimeId>> writes =
+                batches.stream().map(batch -> addBatchAsync(batch)).toList();
+
+        try {
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof RuntimeException cause ? cause : ex;
+        }
+    }
+
+    /**
+     * Start a background service that accepts individual Key/Value pairs (from any number of
+     * threads) and adds them to this tree in Batches. The IngestPolicy decides when each Batch is
+     * committed. Close the service to commit everything it holds and stop its writer thread.
+     *
+     * @param policy Controls batch size (by count and bytes), linger time, and backpressure
+     */
+    public IngestService<K, V> startIngestService(IngestPolicy policy) {
+        if (readWriteMode == READ_ONLY) {
+            throw new UnsupportedOperationException("Cannot ingest data in READ_ONLY mode");
+        }
+        return new IngestService<>(this, policy);
+    }
+
+    /**
+     * Block while building an empty DistanceTree from a large dataset. This is much faster than
+     * adding the same data with addBatch because the tree is built from the bottom up (the data is
+     * recursively partitioned into leaves, then the inner nodes are built level by level) and
+     * written using a few large TreeTransactions. The tree appears empty until the load completes.
+     *
+     * @param tuples The entire dataset
+     *
+     * @throws IllegalStateException When the tree is not empty
+     */
+    public void bulkLoad(Collection<Tuple<K, V>> tuples) {
+        if (readWriteMode == READ_ONLY) {
+            throw new UnsupportedOperationException("Cannot bulk load in READ_ONLY mode");
+        }
+        LOGGER.atTrace()
+                .setMessage("Bulk loading {} tuples")
+                .addArgument(tuples.size())
+                .log();
+
+        var job = new BulkLoadJob<>(tree, tuples);
+        job.run();
+    }
+
+    /**
+     * Block while building an empty DistanceTree from a large dataset using a ForkJoinPool. The
+     * recursive partitioning of the data (and the construction of each inner level) is performed
+     * in parallel. The resulting tree is identical to the tree built by bulkLoad(tuples).
+     *
+     * @param tuples The entire dataset
+     * @param pool   Runs the partitioning work
+     *
+     * @throws IllegalStateException When the tree is not empty
+     */
+    public void bulkLoad(Collection<Tuple<K, V>> tuples, ForkJoinPool pool) {
+        requireNonNull(pool);
+        if (readWriteMode == READ_ONLY) {
+            throw new UnsupportedOperationException("Cannot bulk load in READ_ONLY mode");
+        }
+        LOGGER.atTrace()
+                .setMessage("Bulk loading {} tuples in parallel")
+                .addArgument(tuples.size())
+                .log();
+
+        var job = new BulkLoadJob<>(tree, tuples, pool);
+        job.run();
+    }
+
+    /**
+     * Find the k-Nearest-Neighbors of every Tuple in a Batch, then add the Batch to the
+     * DistanceTree. This is cheaper than calling knnSearch and then addBatch because the insertion
+     * reuses the distances the searches already computed while walking down the tree.
+     *
+     * @param batch The data to search for and then add
+     * @param k     The number of neighbors to find for each Tuple
+     *
+     * @return One SearchResults for each Tuple in the Batch (in the same order as the Batch). The
+     *     neighbors are found among the Tuples that were in the tree before this Batch was added.
+     */
+    public List<SearchResults<K, V>> knnSearchAndAdd(Batch<K, V> batch, int k) {
+        verifyCanSearch();
+        if (readWriteMode == READ_ONLY) {
+            throw new UnsupportedOperationException("Cannot add batch in READ_ONLY mode");
+        }
+        LOGGER.atTrace()
+                .setMessage("Searching for and adding a new batch of {} tuples")
+                .addArgument(batch.tuples().size())
+                .log();
+
+        var job = new SearchAndInsertJob<>(tree, batch, k);
+        return job.call();
     }
 
     /** Prompt the tree to rebuild all leaf nodes in the tree (this is an expensive operation). */
@@ -65,6 +198,101 @@ public class DistanceTree<K, V> {
         job.run();
     }
 
+    /**
+     * Block while deleting Tuples from the DistanceTree. Only the DataPages holding these Tuples are
+     * rewritten, so the cost of a deletion is proportional to the number of Tuples deleted (not the
+     * size of the tree). Leaves that become empty are removed and underfull leaves are merged into
+     * their neighbors.
+     *
+     * @param tupleIds The ids of the Tuples to delete (ids that are not in the tree are ignored)
+     */
+    public void delete(Collection<TimeId> tupleIds) {
+        if (readWriteMode == READ_ONLY) {
+            throw new UnsupportedOperationException("Cannot delete tuples in READ_ONLY mode");
+        }
+        LOGGER.atTrace()
+                .setMessage("Deleting {} tuples")
+                .addArgument(tupleIds.size())
+                .log();
+
+        var job = new EditTuplesJob<>(tree, Set.copyOf(tupleIds), Map.of());
+        job.run();
+    }
+
+    /** Block while deleting one Tuple from the DistanceTree (nothing happens if the id is not found). */
+    public void delete(TimeId tupleId) {
+        delete(List.of(tupleId));
+    }
+
+    /**
+     * Block while deleting every Tuple whose Key equals this Key (i.e., is 0 distance away).
+     *
+     * @param key The Key being removed from the tree
+     *
+     * @return The number of Tuples deleted
+     */
+    public int deleteAllWithKey(K key) {
+        verifyCanSearch();
+        if (readWriteMode == READ_ONLY) {
+            throw new UnsupportedOperationException("Cannot delete tuples in READ_ONLY mode");
+        }
+        requireNonNull(key);
+
+        // The smallest possible range search finds the Tuples that are exactly 0 distance away
+        var treeSearcher = new TreeSearcher<>(tree);
+        List<TimeId> ids = treeSearcher.getAllWithinRange(key, Double.MIN_VALUE).stream()
+                .filter(result -> result.distance() == 0)
+                .map(SearchResult::id)
+                .toList();
+
+        if (!ids.isEmpty()) {
+            delete(ids);
+        }
+        return ids.size();
+    }
+
+    /**
+     * Block while deleting every Tuple that was created before a cutoff (e.g., to retain a rolling
+     * window of recent data). Expired Tuples are found using their TimeIds, then leaves (and
+     * subtrees) that hold nothing but expired Tuples are dropped in one transaction. Only DataPages
+     * that hold both expired and unexpired Tuples are rewritten.
+     *
+     * @param cutoff Tuples created before this instant are deleted
+     *
+     * @return The number of Tuples deleted
+     */
+    public int expireOlderThan(Instant cutoff) {
+        if (readWriteMode == READ_ONLY) {
+            throw new UnsupportedOperationException("Cannot delete tuples in READ_ONLY mode");
+        }
+        LOGGER.atTrace().setMessage("Expiring tuples older than {}").addArgument(cutoff).log();
+
+        var job = new ExpireTuplesJob<>(tree, cutoff);
+        return job.call();
+    }
+
+    /**
+     * Block while replacing the value of one Tuple. The Tuple keeps its id and Key, so it stays in
+     * the same DataPage and only that DataPage is rewritten.
+     *
+     * @param tupleId  The id of a Tuple in the tree
+     * @param newValue The Tuple's new value
+     *
+     * @throws IllegalArgumentException When the Tuple is not in the tree
+     */
+    public void updateValue(TimeId tupleId, V newValue) {
+        requireNonNull(tupleId);
+        if (readWriteMode == READ_ONLY) {
+            throw new UnsupportedOperationException("Cannot update tuples in READ_ONLY mode");
+        }
+
+        Map<TimeId, V> newValues = new HashMap<>();
+        newValues.put(tupleId, newValue); // the value may be null
+
+        var job = new EditTuplesJob<>(tree, Set.of(), newValues);
+        job.run();
+    }
+
     /**
      * Perform a k-Nearest-Neighbors search where k = 1.
      *
@@ -91,6 +319,62 @@ public class DistanceTree<K, V> {
         return treeSearcher.getNClosest(searchKey, k);
     }
 
+    /**
+     * Perform an approximate k-Nearest-Neighbors search. An approximate search trades recall for
+     * speed, it can cap the number of DataPages loaded (a hard limit on I/O) and/or accept results
+     * that are up to (1 + epsilon) times farther than the true nearest neighbors.
+     *
+     * @param searchKey     The point-in-space from which the closest tuples are found
+     * @param k             The number of tuples to search for
+     * @param approximation Limits how much of the tree the search explores
+     *
+     * @return A collection of n Key/Value Results that are close to the search key. Use
+     *     SearchResults.isExact() to learn if the results are guaranteed to be exact.
+     */
+    public SearchResults<K, V> knnSearch(K searchKey, int k, Approximation approximation) {
+        verifyCanSearch();
+        var treeSearcher = new TreeSearcher<>(tree);
+        return treeSearcher.getNClosest(searchKey, k, approximation);
+    }
+
+    /**
+     * Retrieve a Tuple that was already added to the tree. The Tuple's DataPage is found with the
+     * DataStore's tuple index, so the DistanceMetric is never executed.
+     *
+     * @param tupleId The id of a Tuple (i.e., the TimeId assigned when the Tuple was created)
+     *
+     * @return The Tuple with this id, or null when the Tuple is not in the tree.
+     */
+    public Tuple<K, V> get(TimeId tupleId) {
+        verifyCanSearch();
+        DataPage<K, V> page = tree.dataPageContaining(tupleId);
+        if (isNull(page)) {
+            return null;
+        }
+        return page.tuples().stream()
+                .filter(tuple -> tuple.id().equals(tupleId))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Perform a k-Nearest-Neighbors search around a Tuple that was already added to the tree. The
+     * search begins at the Tuple's own leaf, which quickly shrinks the search radius. This is much
+     * cheaper than knnSearch(tuple.key(), k).
+     *
+     * @param tupleId The id of a Tuple in the tree, its key is the search key
+     * @param k       The number of tuples to search for
+     *
+     * @return A collection of n Key/Value Results with the smallest distances to the Tuple's key
+     *     (this includes the Tuple itself).
+     * @throws IllegalArgumentException When the Tuple is not in the tree
+     */
+    public SearchResults<K, V> knnSearchFrom(TimeId tupleId, int k) {
+        verifyCanSearch();
+        var treeSearcher = new TreeSearcher<>(tree);
+        return treeSearcher.getNClosestToTuple(tupleId, k);
+    }
+
     /**
      * Perform a range query that find all Tuples within a fixed distance of the searchKey.
      *
@@ -105,6 +389,102 @@ public class DistanceTree<K, V> {
         return treeSearcher.getAllWithinRange(searchKey, range);
     }
 
+    /**
+     * Perform a k-Nearest-Neighbors search that explores independent subtrees of the tree
+     * concurrently using this ExecutorService. A parallel search helps when the DistanceMetric is
+     * expensive or the DataStore is slow (consider an ExecutorService that uses virtual threads
+     * when the DataStore is I/O bound).
+     *
+     * @param searchKey The point-in-space from which the closest tuples are found
+     * @param k         The number of tuples to search for
+     * @param executor  Runs the tasks that explore the tree, it is not shut down by this method
+     *
+     * @return A collection of n Key/Value Results with the smallest distances to the search key
+     */
+    public SearchResults<K, V> knnSearch(K searchKey, int k, ExecutorService executor) {
+        verifyCanSearch();
+        var treeSearcher = new TreeSearcher<>(tree);
+        return treeSearcher.getNClosest(searchKey, k, executor);
+    }
+
+    /**
+     * Perform a range query that explores independent subtrees of the tree concurrently using this
+     * ExecutorService.
+     *
+     * @param searchKey The point-in-space from which the closest tuples are found
+     * @param range     The distance below which all tuples are included in the output.
+     * @param executor  Runs the tasks that explore the tree, it is not shut down by this method
+     *
+     * @return A Result for all keys within this range of the key.
+     */
+    public SearchResults<K, V> rangeSearch(K searchKey, double range, ExecutorService executor) {
+        verifyCanSearch();
+        var treeSearcher = new TreeSearcher<>(tree);
+        return treeSearcher.getAllWithinRange(searchKey, range, executor);
+    }
+
+    /**
+     * Perform a k-Nearest-Neighbors search for each of these keys. The searches share one traversal
+     * of the tree, so every NodeHeader and DataPage is loaded once no matter how many of the
+     * searches need it. This is much cheaper than searching for nearby keys one at a time.
+     *
+     * @param searchKeys The points-in-space from which the closest tuples are found
+     * @param k          The number of tuples to search for (per key)
+     *
+     * @return One SearchResults for each search key (in the same order as the search keys)
+     */
+    public List<SearchResults<K, V>> knnSearchAll(List<K> searchKeys, int k) {
+        verifyCanSearch();
+        var treeSearcher = new TreeSearcher<>(tree);
+        return treeSearcher.getNClosestForAll(searchKeys, k);
+    }
+
+    /**
+     * Perform a range query for each of these keys. The searches share one traversal of the tree,
+     * so every NodeHeader and DataPage is loaded once no matter how many of the searches need it.
+     *
+     * @param searchKeys The points-in-space from which the closest tuples are found
+     * @param range      The distance below which all tuples are included in the output.
+     *
+     * @return One SearchResults for each search key (in the same order as the search keys)
+     */
+    public List<SearchResults<K, V>> rangeSearchAll(List<K> searchKeys, double range) {
+        verifyCanSearch();
+        var treeSearcher = new TreeSearcher<>(tree);
+        return treeSearcher.getAllWithinRangeForAll(searchKeys, range);
+    }
+
+    /**
+     * Lazily perform a range query. Matches are found leaf by leaf as the iterator is consumed,
+     * only one DataPage is held in memory at a time. The results are NOT sorted by distance.
+     *
+     * @param searchKey The point-in-space from which the closest tuples are found
+     * @param range     The distance below which all tuples are included in the output.
+     *
+     * @return An Iterator that throws ConcurrentModificationExceptions if a batch is added to the
+     *     Tree while it is being consumed.
+     */
+    public RangeSearchIterator<K, V> rangeSearchIterator(K searchKey, double range) {
+        verifyCanSearch();
+        return new RangeSearchIterator<>(tree, searchKey, range);
+    }
+
+    /**
+     * Lazily perform a range query. This is a Stream view of rangeSearchIterator(searchKey, range),
+     * it is ideal when the results will be counted, filtered, or forwarded (rather than sorted).
+     *
+     * @param searchKey The point-in-space from which the closest tuples are found
+     * @param range     The distance below which all tuples are included in the output.
+     *
+     * @return A sequential Stream of every Tuple within this range of the key (in no particular
+     *     order).
+     */
+    public Stream<SearchResult<K, V>> rangeSearchStream(K searchKey, double range) {
+        Spliterator<SearchResult<K, V>> spliterator = Spliterators.spliteratorUnknownSize(
+                rangeSearchIterator(searchKey, range), Spliterator.NONNULL | Spliterator.DISTINCT);
+        return StreamSupport.stream(spliterator, false);
+    }
+
     private void verifyCanSearch() {
         if (readWriteMode == ReadWriteMode.WRITE_ONLY) {
             throw new UnsupportedOperationException("Cannot run query in WRITE_ONLY mode");
@@ -124,11 +504,26 @@ public class DistanceTree<K, V> {
         return tree.config().distMetric().numExecutions();
     }
 
+    /**
+     * Open a read-only view of this tree that is pinned to the tree's current state. Searches and
+     * TreeIterators that use the snapshot see one consistent version of the tree (they never see a
+     * later, or partially applied, transaction) and are not blocked by writes to this tree. Close
+     * the snapshot promptly, the DataStore retains the data it may read until then.
+     *
+     * @return A TreeSnapshot, use it in a try-with-resources block
+     * @throws UnsupportedOperationException When the DataStore does not support snapshots (see
+     *                                       DataStores.versionedStore)
+     */
+    public TreeSnapshot<K, V> openSnapshot() {
+        verifyCanSearch();
+        return new TreeSnapshot<>(tree.config(), tree.dataStore().openSnapshot());
+    }
+
     /**
      * Equivalent to treeIterator(true)
      *
      * @return a TreeIterator that throws ConcurrentModificationExceptions if a batch is added to
-     *     the Tree.
+     *     the Tree. Iterate over an openSnapshot() to walk the tree while batches are added.
      */
     public TreeIterator<K, V> treeIterator() {
         return new TreeIterator<>(tree);
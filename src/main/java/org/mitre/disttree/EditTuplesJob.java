@@ -0,0 +1,74 @@
+package org.mitre.disttree;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.mitre.caasd.commons.ids.TimeId;
+
+/**
+ * An EditTuplesJob deletes Tuples from (and replaces the values of Tuples in) a DistanceTree when
+ * it is executed. Only the DataPages holding the edited Tuples are rewritten.
+ */
+class EditTuplesJob<K, V> implements Runnable {
+
+    final InternalTree<K, V> targetTree;
+    final Set<TimeId> deletions;
+    final Map<TimeId, V> newValues;
+
+    /**
+     * @param targetTree The DistanceTree we want to mutate
+     * @param deletions  The ids of Tuples to delete (ids that are not in the tree are ignored)
+     * @param newValues  Replacement values for Tuples that are kept (tupleId -> value)
+     */
+    EditTuplesJob(InternalTree<K, V> targetTree, Set<TimeId> deletions, Map<TimeId, V> newValues) {
+        requireNonNull(targetTree);
+        requireNonNull(deletions);
+        requireNonNull(newValues);
+        this.targetTree = targetTree;
+        this.deletions = deletions;
+        this.newValues = newValues;
+    }
+
+    @Override
+    public void run() {
+
+        // Use the DataStore's tuple index to find the only DataPages that must be rewritten
+        Map<TimeId, TimeId> pageIds = new HashMap<>();
+        for (TimeId tupleId : deletions) {
+            TimeId pageId = targetTree.pageIdOf(tupleId);
+            if (nonNull(pageId)) {
+                pageIds.put(tupleId, pageId);
+            }
+        }
+        for (TimeId tupleId : newValues.keySet()) {
+            TimeId pageId = targetTree.pageIdOf(tupleId);
+            checkArgument(nonNull(pageId), "Tuple not found: %s", tupleId);
+            pageIds.put(tupleId, pageId);
+        }
+
+        if (pageIds.isEmpty()) {
+            return;
+        }
+
+        TransactionMaker<K, V> maker = new TransactionMaker<>(targetTree, null);
+        TreeTransaction<K, V> transaction = maker.editTuples(pageIds, deletions, newValues);
+
+        execute(transaction);
+    }
+
+    /** Update the underlying DataStore, make it represent a revised DistanceTree. */
+    private void execute(TreeTransaction<K, V> transaction) {
+
+        if (transaction.expectedTreeId() != targetTree.lastTransactionId()) {
+            throw new ConcurrentModificationException();
+        }
+
+        targetTree.applyTransaction(transaction);
+    }
+}
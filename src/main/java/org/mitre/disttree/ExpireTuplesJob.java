@@ -0,0 +1,64 @@
+package org.mitre.disttree;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Instant;
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.mitre.caasd.commons.ids.TimeId;
+
+/**
+ * An ExpireTuplesJob deletes every Tuple created before a cutoff from a DistanceTree when it is
+ * executed.
+ * <p>
+ * A Tuple's TimeId encodes when the Tuple was created, so the DataStore's tuple index finds the
+ * expired Tuples without reading any DataPages. Leaves whose Tuples have all expired (and inner
+ * nodes whose children have all been removed) are dropped wholesale. Only the DataPages on the
+ * "boundary" of the retention window (i.e., pages that mix old and new Tuples) are rewritten.
+ */
+class ExpireTuplesJob<K, V> implements Callable<Integer> {
+
+    final InternalTree<K, V> targetTree;
+    final Instant cutoff;
+
+    /**
+     * @param targetTree The DistanceTree we want to mutate
+     * @param cutoff     Tuples created before this instant are deleted
+     */
+    ExpireTuplesJob(InternalTree<K, V> targetTree, Instant cutoff) {
+        requireNonNull(targetTree);
+        requireNonNull(cutoff);
+        this.targetTree = targetTree;
+        this.cutoff = cutoff;
+    }
+
+    /** @return The number of Tuples that were deleted. */
+    @Override
+    public Integer call() {
+
+        Map<TimeId, TimeId> expired = targetTree.pageIdsOfTuplesOlderThan(cutoff);
+
+        if (expired.isEmpty()) {
+            return 0;
+        }
+
+        TransactionMaker<K, V> maker = new TransactionMaker<>(targetTree, null);
+        TreeTransaction<K, V> transaction = maker.editTuples(expired, expired.keySet(), Map.of());
+
+        execute(transaction);
+
+        return expired.size();
+    }
+
+    /** Update the underlying DataStore, make it represent a revised DistanceTree. */
+    private void execute(TreeTransaction<K, V> transaction) {
+
+        if (transaction.expectedTreeId() != targetTree.lastTransactionId()) {
+            throw new ConcurrentModificationException();
+        }
+
+        targetTree.applyTransaction(transaction);
+    }
+}
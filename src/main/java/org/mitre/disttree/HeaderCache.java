@@ -0,0 +1,122 @@
+package org.mitre.disttree;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.nonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.mitre.caasd.commons.ids.TimeId;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * A HeaderCache holds deserialized NodeHeaders (i.e., the center Key has already been rebuilt from
+ * bytes). Without this cache every visit to a NodeHeader (by every search and every insert)
+ * deserializes the node's center. With this cache a Key is deserialized once per NodeHeader
+ * version.
+ * <p>
+ * This cache is independent of any byte[] caching performed by the DataStore (e.g., a
+ * CachingDataStore). That cache saves I/O, this cache saves deserialization.
+ * <p>
+ * The cache is refreshed using the TreeTransactions applied to the tree. If the cache detects it
+ * missed a TreeTransaction (e.g., the DataStore was altered by a different process) it discards
+ * its contents.
+ *
+ * @param <K> The Keys defining the Metric Space
+ */
+class HeaderCache<K> {
+
+    private final Cache<TimeId, NodeHeader<K>> cache;
+
+    /** The id of the last TreeTransaction reflected in this cache. */
+    private volatile TimeId asOfTransaction;
+
+    /** @param maxSize The maximum number of NodeHeaders kept in the cache. */
+    HeaderCache(int maxSize) {
+        checkArgument(maxSize > 0);
+        this.cache = Caffeine.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * @param lastTransactionId The id of the last TreeTransaction applied to the tree
+     * @param id                The NodeHeader to retrieve
+     * @param loader            Reads (and deserializes) a NodeHeader on a cache miss
+     *
+     * @return The NodeHeader, or null if the loader could not find it.
+     */
+    NodeHeader<K> get(TimeId lastTransactionId, TimeId id, Function<TimeId, NodeHeader<K>> loader) {
+        syncTo(lastTransactionId);
+        // null results are not cached, so missing NodeHeaders are always re-requested
+        return cache.get(id, loader);
+    }
+
+    /**
+     * @param lastTransactionId The id of the last TreeTransaction applied to the tree
+     * @param ids               The NodeHeaders to retrieve
+     * @param bulkLoader        Reads (and deserializes) all cache misses with one bulk read
+     *
+     * @return The NodeHeaders that were found, in the same order as the input ids.
+     */
+    List<NodeHeader<K>> getAll(
+            TimeId lastTransactionId,
+            Collection<TimeId> ids,
+            Function<Collection<TimeId>, List<NodeHeader<K>>> bulkLoader) {
+        syncTo(lastTransactionId);
+
+        Map<TimeId, NodeHeader<K>> found = cache.getAll(ids, missingIds -> {
+            Map<TimeId, NodeHeader<K>> loaded = new HashMap<>();
+            bulkLoader.apply(new ArrayList<>(missingIds)).forEach(node -> loaded.put(node.id(), node));
+            return loaded;
+        });
+
+        List<NodeHeader<K>> nodes = new ArrayList<>(ids.size());
+        for (TimeId id : ids) {
+            NodeHeader<K> node = found.get(id);
+            if (nonNull(node)) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Incorporate the NodeHeader changes from a TreeTransaction that was just applied to the tree.
+     * If this cache was not current when the TreeTransaction was built the cache is cleared.
+     */
+    synchronized void update(TreeTransaction<K, ?> transaction) {
+
+        if (!Objects.equals(asOfTransaction, transaction.expectedTreeId())) {
+            cache.invalidateAll();
+        } else {
+            cache.invalidateAll(transaction.deletedNodeHeaders());
+            transaction.createdNodes().forEach(node -> cache.put(node.id(), node));
+            transaction.updatedNodes().forEach(node -> cache.put(node.id(), node));
+        }
+
+        this.asOfTransaction = transaction.transactionId();
+    }
+
+    /** Discard every cached NodeHeader if the tree was altered without calling update. */
+    private void syncTo(TimeId lastTransactionId) {
+        if (Objects.equals(asOfTransaction, lastTransactionId)) {
+            return;
+        }
+        synchronized (this) {
+            if (!Objects.equals(asOfTransaction, lastTransactionId)) {
+                cache.invalidateAll();
+                this.asOfTransaction = lastTransactionId;
+            }
+        }
+    }
+
+    long size() {
+        return cache.estimatedSize();
+    }
+}
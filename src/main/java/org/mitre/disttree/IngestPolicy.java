@@ -0,0 +1,50 @@
+package org.mitre.disttree;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+
+/**
+ * An IngestPolicy controls how an IngestService groups individual Tuples into Batches. Small limits
+ * reduce the latency between put(key, value) and the Tuple becoming searchable. Large limits
+ * increase throughput because each TreeTransaction carries more Tuples.
+ *
+ * @param maxBatchSize    A Batch is committed as soon as it holds this many Tuples
+ * @param maxBatchBytes   A Batch is committed before the serialized Keys and Values it holds would
+ *                        exceed this many bytes (a single oversized Tuple becomes its own Batch)
+ * @param maxLinger       A Batch is committed once its oldest Tuple has waited this long
+ * @param maxQueuedTuples put(key, value) blocks while this many Tuples are waiting to be batched
+ *                        (i.e., backpressure when producers outpace the tree)
+ */
+public record IngestPolicy(int maxBatchSize, long maxBatchBytes, Duration maxLinger, int maxQueuedTuples) {
+
+    public IngestPolicy {
+        checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+        checkArgument(maxBatchBytes > 0, "maxBatchBytes must be positive");
+        requireNonNull(maxLinger);
+        checkArgument(!maxLinger.isNegative(), "maxLinger cannot be negative");
+        checkArgument(maxQueuedTuples > 0, "maxQueuedTuples must be positive");
+    }
+
+    /** @return Batches of up to 1,000 Tuples (or 4MB), that wait at most 100ms, with 10,000 queued Tuples. */
+    public static IngestPolicy defaults() {
+        return new IngestPolicy(1_000, 4L * 1024 * 1024, Duration.ofMillis(100), 10_000);
+    }
+
+    public IngestPolicy withMaxBatchSize(int n) {
+        return new IngestPolicy(n, maxBatchBytes, maxLinger, maxQueuedTuples);
+    }
+
+    public IngestPolicy withMaxBatchBytes(long numBytes) {
+        return new IngestPolicy(maxBatchSize, numBytes, maxLinger, maxQueuedTuples);
+    }
+
+    public IngestPolicy withMaxLinger(Duration linger) {
+        return new IngestPolicy(maxBatchSize, maxBatchBytes, linger, maxQueuedTuples);
+    }
+
+    public IngestPolicy withMaxQueuedTuples(int n) {
+        return new IngestPolicy(maxBatchSize, maxBatchBytes, maxLinger, n);
+    }
+}
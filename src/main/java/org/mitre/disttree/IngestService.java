@@ -0,0 +1,301 @@
+package org.mitre.disttree;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.mitre.caasd.commons.ids.TimeId;
+import org.mitre.disttree.Batch.BatchAccumulator;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An IngestService accepts individual Key/Value pairs from any number of producer threads and adds
+ * them to a DistanceTree in Batches. A dedicated writer thread forms each Batch (see IngestPolicy)
+ * and commits it to the tree. When the tree's DataStore writes asynchronously (e.g.,
+ * DataStores.pipelinedStore) the writer computes the next Batch while the prior Batch is persisted.
+ * <p>
+ * The IngestService should be the only thing writing to its DistanceTree while it is running.
+ * Tuples are searchable once their Batch is committed (call flush() to commit everything now).
+ * <p>
+ * If a Batch cannot be committed the IngestService stops accepting Tuples, put and flush throw an
+ * IllegalStateException whose cause is the original failure.
+ */
+public class IngestService<K, V> implements AutoCloseable {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(IngestService.class);
+
+    private final DistanceTree<K, V> tree;
+
+    private final IngestPolicy policy;
+
+    private final Serde<K> keySerde;
+
+    private final Serde<V> valueSerde;
+
+    /** Tuples (and flush requests) waiting for the writer thread, bounded for backpressure. */
+    private final BlockingQueue<Item<K, V>> queue;
+
+    private final Thread writer;
+
+    private volatile Throwable failure;
+
+    /**
+     * put and flush hold the read lock while they check that this service is open and queue their
+     * item. close holds the write lock while it queues the writer's last item, so nothing can be
+     * queued after it.
+     */
+    private final ReentrantReadWriteLock acceptLock = new ReentrantReadWriteLock();
+
+    /** Guarded by acceptLock. */
+    private boolean closed;
+
+    /** Completes when the writer's last item is done (null until close is called). Guarded by acceptLock. */
+    private CompletableFuture<Void> lastFlush;
+
+    /**
+     * Something for the writer thread to do: add a Tuple to the current Batch, or commit the current
+     * Batch and complete the flushed future once every earlier Batch is durable. A Tuple's linger
+     * time starts when put accepts it (arrivalNanos), not when the writer dequeues it.
+     */
+    private record Item<K, V>(
+            Tuple<K, V> tuple, long numBytes, long arrivalNanos, CompletableFuture<Void> flushed, boolean isLast) {
+
+        static <K, V> Item<K, V> tuple(Tuple<K, V> tuple, long numBytes) {
+            return new Item<>(tuple, numBytes, System.nanoTime(), null, false);
+        }
+
+        static <K, V> Item<K, V> flush(boolean isLast) {
+            return new Item<>(null, 0, System.nanoTime(), new CompletableFuture<>(), isLast);
+        }
+
+        boolean isFlush() {
+            return nonNull(flushed);
+        }
+    }
+
+    IngestService(DistanceTree<K, V> tree, IngestPolicy policy) {
+        requireNonNull(tree);
+        requireNonNull(policy);
+        this.tree = tree;
+        this.policy = policy;
+        this.keySerde = tree.tree.config().keySerde;
+        this.valueSerde = tree.tree.config().valueSerde;
+        this.queue = new LinkedBlockingQueue<>(policy.maxQueuedTuples());
+
+        this.writer = new Thread(this::writeBatches, "ingest-service-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queue a Key/Value pair to be added to the tree. This method blocks while the queue is full.
+     *
+     * @return The id of the Tuple that will be added to the tree
+     * @throws IllegalStateException When this service is closed or a prior Batch failed
+     */
+    public TimeId put(K key, V value) {
+        requireNonNull(key);
+
+        Tuple<K, V> tuple = Tuple.newTuple(key, value);
+        Item<K, V> item = Item.tuple(tuple, numBytes(tuple));
+
+        Lock lock = acceptLock.readLock();
+        lock.lock();
+        try {
+            checkAccepting();
+            Uninterruptibles.putUninterruptibly(queue, item);
+        } finally {
+            lock.unlock();
+        }
+
+        return tuple.id();
+    }
+
+    /**
+     * Block until every Tuple that was put before this call is committed to the tree (and durable).
+     *
+     * @throws IllegalStateException When a Batch failed
+     */
+    public void flush() {
+        CompletableFuture<Void> flushed;
+
+        Lock lock = acceptLock.readLock();
+        lock.lock();
+        try {
+            checkAccepting();
+            flushed = enqueueFlush(false);
+        } finally {
+            lock.unlock();
+        }
+
+        await(flushed);
+    }
+
+    /**
+     * Commit every queued Tuple, then stop the writer thread. Every call (from any thread) blocks
+     * until the writer thread has stopped.
+     */
+    @Override
+    public void close() {
+        CompletableFuture<Void> flushed;
+
+        Lock lock = acceptLock.writeLock();
+        lock.lock();
+        try {
+            if (!closed) {
+                closed = true;
+                lastFlush = enqueueFlush(true);
+            }
+            flushed = lastFlush;
+        } finally {
+            lock.unlock();
+        }
+
+        Uninterruptibles.joinUninterruptibly(writer);
+        await(flushed);
+    }
+
+    private CompletableFuture<Void> enqueueFlush(boolean isLast) {
+        Item<K, V> flush = Item.flush(isLast);
+        Uninterruptibles.putUninterruptibly(queue, flush);
+        return flush.flushed();
+    }
+
+    private void checkAccepting() {
+        if (nonNull(failure)) {
+            throw new IllegalStateException("A batch could not be committed", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("This IngestService is closed");
+        }
+    }
+
+    private long numBytes(Tuple<K, V> tuple) {
+        long valueBytes = isNull(tuple.value()) ? 0 : valueSerde.toBytes(tuple.value()).length;
+        return keySerde.toBytes(tuple.key()).length + valueBytes;
+    }
+
+    /** The writer thread's loop. */
+    private void writeBatches() {
+
+        BatchAccumulator<K, V> accumulator = new BatchAccumulator<>();
+        CompletableFuture<TimeId> lastWrite = CompletableFuture.completedFuture(null);
+
+        while (true) {
+            Item<K, V> item = nextItem(accumulator);
+
+            if (isNull(item)) {
+                // The oldest Tuple has lingered long enough
+                lastWrite = commit(accumulator, lastWrite);
+                continue;
+            }
+
+            if (item.isFlush()) {
+                lastWrite = commit(accumulator, lastWrite);
+                lastWrite.whenComplete((id, error) -> {
+                    if (isNull(error)) {
+                        item.flushed().complete(null);
+                    } else {
+                        item.flushed().completeExceptionally(error);
+                    }
+                });
+                if (item.isLast()) {
+                    return;
+                }
+                continue;
+            }
+
+            // Commit first if this Tuple would push the Batch over its byte limit
+            if (accumulator.currentBatchSize() > 0
+                    && accumulator.currentBatchBytes() + item.numBytes() > policy.maxBatchBytes()) {
+                lastWrite = commit(accumulator, lastWrite);
+            }
+
+            accumulator.addToBatch(item.tuple(), item.numBytes(), item.arrivalNanos());
+
+            if (accumulator.currentBatchSize() >= policy.maxBatchSize()) {
+                lastWrite = commit(accumulator, lastWrite);
+            }
+        }
+    }
+
+    /** @return The next queued item, or null when the current Batch's linger time expired first. */
+    private Item<K, V> nextItem(BatchAccumulator<K, V> accumulator) {
+
+        if (accumulator.currentBatchSize() == 0) {
+            return Uninterruptibles.takeUninterruptibly(queue);
+        }
+
+        long lingerNanos = policy.maxLinger().minus(accumulator.oldestTupleAge()).toNanos();
+        try {
+            return queue.poll(Math.max(lingerNanos, 0), NANOSECONDS);
+        } catch (InterruptedException ex) {
+            // Only this class controls the writer thread, treat an interrupt as "commit now"
+            return null;
+        }
+    }
+
+    /** Commit the accumulated Tuples (if any), return a future that completes when they are durable. */
+    private CompletableFuture<TimeId> commit(
+            BatchAccumulator<K, V> accumulator, CompletableFuture<TimeId> lastWrite) {
+
+        if (accumulator.currentBatchSize() == 0) {
+            return lastWrite;
+        }
+
+        Batch<K, V> batch = accumulator.drainToBatch();
+
+        if (nonNull(failure)) {
+            // Tuples that arrive after a failure are dropped, the producers were already told
+            return CompletableFuture.failedFuture(failure);
+        }
+
+        LOGGER.atTrace()
+                .setMessage("Committing a batch of {} tuples")
+                .addArgument(batch.size())
+                .log();
+
+        try {
+            CompletableFuture<TimeId> write = tree.addBatchAsync(batch);
+            write.whenComplete((id, error) -> {
+                if (nonNull(error)) {
+                    recordFailure(error);
+                }
+            });
+            return write;
+        } catch (RuntimeException ex) {
+            recordFailure(ex);
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    private void recordFailure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && nonNull(error.getCause()) ? error.getCause() : error;
+        if (isNull(failure)) {
+            failure = cause;
+            LOGGER.atError()
+                    .setMessage("IngestService failed to commit a batch")
+                    .setCause(cause)
+                    .log();
+        }
+    }
+
+    private void await(CompletableFuture<Void> flushed) {
+        try {
+            flushed.join();
+        } catch (CompletionException ex) {
+            throw new IllegalStateException("A batch could not be committed", failure);
+        }
+    }
+}
@@ -3,6 +3,9 @@ package org.mitre.disttree;
 import static java.util.Objects.requireNonNull;
 
 import java.util.ConcurrentModificationException;
+import java.util.concurrent.CompletableFuture;
+
+import org.mitre.caasd.commons.ids.TimeId;
 
 /**
  * An InsertBatchJob attempts to mutate a DistanceTree when it is executed.
@@ -48,16 +51,35 @@ class InsertBatchJob<K, V> implements Runnable {
         execute(transaction);
     }
 
+    /**
+     * Write a batch of data to the target DistanceTree without waiting for the DataStore to make
+     * the write durable. The tree reflects the batch when this method returns, so the next batch's
+     * transaction can be computed while this batch is still being written.
+     *
+     * @return A future that completes with the id of the batch's transaction once it is durable
+     */
+    CompletableFuture<TimeId> runAsync() {
+
+        TransactionMaker<K, V> maker = new TransactionMaker<>(targetTree, batch);
+
+        TreeTransaction<K, V> transaction = maker.computeTransaction();
+
+        checkTreeIsUnchanged(transaction);
+
+        return targetTree.applyTransactionAsync(transaction);
+    }
+
     /** Update the underlying DataStore, make it represent a revised DistanceTree. */
     private void execute(TreeTransaction<K, V> transaction) {
 
+        checkTreeIsUnchanged(transaction);
+
+        targetTree.applyTransaction(transaction);
+    }
+
+    private void checkTreeIsUnchanged(TreeTransaction<K, V> transaction) {
         if (transaction.expectedTreeId() != targetTree.lastTransactionId()) {
             throw new ConcurrentModificationException();
         }
-
-        var serdePair = targetTree.config().serdePair();
-        var binaryTransaction = serdePair.serializeTransaction(transaction);
-
-        targetTree.dataStore().applyTransaction(binaryTransaction);
     }
 }
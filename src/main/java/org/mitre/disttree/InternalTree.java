@@ -6,11 +6,16 @@ import static java.util.Collections.emptyList;
 import static java.util.Objects.*;
 import static java.util.stream.Collectors.toSet;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 
 import org.mitre.caasd.commons.ids.TimeId;
 
@@ -46,6 +51,15 @@ class InternalTree<K, V> {
     /** Handles I/O with raw byte[]. */
     private final DataStore binaryDataStore;
 
+    /** Keeps the upper inner nodes in memory, null when this optional feature is disabled. */
+    private final ResidentNodeIndex<K> residentIndex;
+
+    /** Caches deserialized NodeHeaders, null when this optional feature is disabled. */
+    private final HeaderCache<K> headerCache;
+
+    /** The ids of every leaf node, this index is only built when it is first needed. */
+    private final LeafIndex leafIndex;
+
     InternalTree(TreeConfig<K, V> config) {
 
         requireNonNull(config);
@@ -55,6 +69,9 @@ class InternalTree<K, V> {
         this.config = config;
         this.serdePair = config.serdePair();
         this.binaryDataStore = config.dataStore;
+        this.residentIndex = config.residentLevels > 0 ? new ResidentNodeIndex<>(config.residentLevels) : null;
+        this.headerCache = config.headerCacheSize > 0 ? new HeaderCache<>(config.headerCacheSize) : null;
+        this.leafIndex = new LeafIndex();
     }
 
     TreeConfig<K, V> config() {
@@ -94,26 +111,193 @@ class InternalTree<K, V> {
         return isNull(rawEntries) ? null : serdePair.deserialize(rawEntries);
     }
 
+    /**
+     * Use the DataStore's secondary index to find the DataPage that contains a Tuple.
+     *
+     * @return The DataPage containing this Tuple, or null when the Tuple is not in the tree.
+     */
+    DataPage<K, V> dataPageContaining(TimeId tupleId) {
+        TimeId pageId = pageIdOf(tupleId);
+        return isNull(pageId) ? null : dataPageAt(pageId);
+    }
+
+    /** @return The id of the DataPage holding this Tuple (or null if the Tuple is not in the tree). */
+    TimeId pageIdOf(TimeId tupleId) {
+        requireNonNull(tupleId);
+        return binaryDataStore.pageIdOf(tupleId);
+    }
+
+    /** @return The id of the DataPage holding each Tuple created before the cutoff (tupleId -> pageId). */
+    Map<TimeId, TimeId> pageIdsOfTuplesOlderThan(Instant cutoff) {
+        requireNonNull(cutoff);
+        return binaryDataStore.pageIdsOfTuplesOlderThan(cutoff);
+    }
+
     NodeHeader<K> nodeAt(TimeId id) {
         if (isNull(id)) {
             return null;
         }
 
+        NodeHeader<K> resident = residentNodeAt(id);
+        if (nonNull(resident)) {
+            return resident;
+        }
+
+        return isNull(headerCache)
+                ? loadNode(id)
+                : headerCache.get(lastTransactionId(), id, this::loadNode);
+    }
+
+    /** Read (and deserialize) one NodeHeader from the DataStore. */
+    private NodeHeader<K> loadNode(TimeId id) {
         var rawHeader = binaryDataStore.nodeAt(id);
 
         return nonNull(rawHeader) ? serdePair.deserializeHeader(rawHeader) : null;
     }
 
+    /**
+     * Retrieve multiple NodeHeaders using a single bulk read from the DataStore. Resident
+     * NodeHeaders do not require I/O.
+     *
+     * @return The NodeHeaders that were found, in the same order as the input ids.
+     */
+    List<NodeHeader<K>> nodesAt(Collection<TimeId> ids) {
+        requireNonNull(ids);
+
+        if (isNull(residentIndex)) {
+            return cachedNodes(ids);
+        }
+
+        List<TimeId> nonResidentIds =
+                ids.stream().filter(id -> isNull(residentNodeAt(id))).toList();
+
+        if (nonResidentIds.isEmpty()) {
+            return ids.stream().map(id -> residentIndex.nodeAt(id)).toList();
+        }
+
+        Map<TimeId, NodeHeader<K>> loaded = new HashMap<>();
+        cachedNodes(nonResidentIds).forEach(node -> loaded.put(node.id(), node));
+
+        List<NodeHeader<K>> nodes = new ArrayList<>(ids.size());
+        for (TimeId id : ids) {
+            NodeHeader<K> node = loaded.containsKey(id) ? loaded.get(id) : residentIndex.nodeAt(id);
+            if (nonNull(node)) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    /** Retrieve these NodeHeaders from the HeaderCache, cache misses are loaded with one bulk read. */
+    private List<NodeHeader<K>> cachedNodes(Collection<TimeId> ids) {
+        return isNull(headerCache) ? loadNodes(ids) : headerCache.getAll(lastTransactionId(), ids, this::loadNodes);
+    }
+
+    /** Read (and deserialize) these NodeHeaders from the DataStore. */
+    private List<NodeHeader<K>> loadNodes(Collection<TimeId> ids) {
+        return binaryDataStore.nodesAt(ids).stream()
+                .map(rawHeader -> serdePair.deserializeHeader(rawHeader))
+                .toList();
+    }
+
+    /** @return The resident copy of this NodeHeader, or null if it isn't resident. */
+    private NodeHeader<K> residentNodeAt(TimeId id) {
+        if (isNull(residentIndex)) {
+            return null;
+        }
+
+        // The index falls out of sync if the DataStore is altered without calling applyTransaction
+        TimeId lastTransactionId = lastTransactionId();
+        if (!residentIndex.isCurrent(lastTransactionId)) {
+            residentIndex.rebuild(lastTransactionId, loadRoot(), this::loadNodes);
+        }
+
+        return residentIndex.nodeAt(id);
+    }
+
+    /** @return The root node, read directly from the DataStore (bypasses all in-memory state). */
+    private NodeHeader<K> loadRoot() {
+        TimeId rootId = rootId();
+        return isNull(rootId) ? null : loadNodes(List.of(rootId)).stream().findFirst().orElse(null);
+    }
+
+    /**
+     * @return An index of every leaf node in the tree. The index is rebuilt by walking the entire
+     *     tree when it is used for the first time (or after the DataStore is altered by something
+     *     other than this InternalTree). Otherwise, it is maintained by applyTransaction.
+     */
+    LeafIndex leafIndex() {
+        TimeId lastTransactionId = lastTransactionId();
+        if (!leafIndex.isCurrent(lastTransactionId)) {
+            leafIndex.rebuild(lastTransactionId, loadRoot(), this::loadNodes);
+        }
+        return leafIndex;
+    }
+
+    /**
+     * Write a TreeTransaction to the DataStore, then refresh any in-memory state (i.e., resident
+     * NodeHeaders, cached NodeHeaders, and the LeafIndex) using the NodeHeaders in the transaction.
+     */
+    void applyTransaction(TreeTransaction<K, V> transaction) {
+        requireNonNull(transaction);
+
+        binaryDataStore.applyTransaction(serdePair.serializeTransaction(transaction));
+
+        refreshInMemoryState(transaction);
+    }
+
+    /**
+     * Hand a TreeTransaction to the DataStore without waiting for it to become durable. The tree
+     * (and its in-memory state) reflects the transaction as soon as this method returns.
+     *
+     * @return A future that completes with the transaction's id once the transaction is durable
+     */
+    CompletableFuture<TimeId> applyTransactionAsync(TreeTransaction<K, V> transaction) {
+        requireNonNull(transaction);
+
+        CompletableFuture<TimeId> write =
+                binaryDataStore.applyTransactionAsync(serdePair.serializeTransaction(transaction));
+
+        refreshInMemoryState(transaction);
+
+        return write;
+    }
+
+    private void refreshInMemoryState(TreeTransaction<K, V> transaction) {
+        if (nonNull(residentIndex)) {
+            residentIndex.update(transaction);
+        }
+        if (nonNull(headerCache)) {
+            headerCache.update(transaction);
+        }
+        leafIndex.update(transaction);
+    }
+
+    /**
+     * Retrieve multiple DataPages using a single bulk read from the DataStore.
+     *
+     * @return The DataPages that were found, in the same order as the input ids.
+     */
+    List<DataPage<K, V>> dataPagesAt(Collection<TimeId> ids) {
+        requireNonNull(ids);
+
+        return binaryDataStore.dataPagesAt(ids).stream()
+                .map(rawPage -> serdePair.deserialize(rawPage))
+                .toList();
+    }
+
     List<NodeHeader<K>> nodesBelow(TimeId nodeId) {
+        return nodesBelow(nodeAt(nodeId));
+    }
+
+    /** @return The children of this node (all children are fetched with one bulk read). */
+    List<NodeHeader<K>> nodesBelow(NodeHeader<K> node) {
 
-        NodeHeader<K> node = nodeAt(nodeId);
         if (node.isLeafNode()) {
             return emptyList();
         }
 
-        List<TimeId> childIds = node.childNodes();
-
-        return childIds.stream().map(id -> nodeAt(id)).filter(Objects::nonNull).toList();
+        return nodesAt(node.childNodes());
     }
 
     /** @return Stats on the tree's size and shape. This scans the NodeHeader dataset once. */
@@ -136,6 +320,11 @@ class InternalTree<K, V> {
             }
         }
 
+        // An empty tree (e.g., every Tuple was deleted) has no radii to summarize
+        if (leafNodes == 0) {
+            return new TreeStats(0, 0, 0, 0, 0);
+        }
+
         // When the tree has 1 leaf node sampleStandardDeviation() will fail, avoid this
         double sigma = (leafNodes != 1) ? radiusStats.sampleStandardDeviation() : 0;
 
@@ -148,14 +337,19 @@ class InternalTree<K, V> {
 
         TreeMap<TimeId, NodeHeader<K>> uniqueNodes = new TreeMap<>();
 
+        NodeHeader<K> root = rootNode();
+        if (isNull(root)) {
+            return newArrayList();
+        }
+
         LinkedList<NodeHeader<K>> nodesToExplore = newLinkedList();
-        nodesToExplore.add(nodeAt(rootId()));
+        nodesToExplore.add(root);
 
         while (!nodesToExplore.isEmpty()) {
             NodeHeader<K> current = nodesToExplore.removeFirst();
             uniqueNodes.putIfAbsent(current.id(), current);
 
-            nodesToExplore.addAll(nodesBelow(current.id()));
+            nodesToExplore.addAll(nodesBelow(current));
         }
 
         return newArrayList(uniqueNodes.values());
@@ -164,11 +358,12 @@ class InternalTree<K, V> {
     /** Not Suitable for large trees because you'll get OutOfMemoryExceptions. */
     @VisibleForTesting
     List<DataPage<K, V>> allDataPages() {
-        return allNodes().stream()
+        List<TimeId> leafIds = allNodes().stream()
                 .filter(node -> node.isLeafNode())
-                .map(node -> dataPageAt(node.id()))
-                .filter(Objects::nonNull)
+                .map(node -> node.id())
                 .toList();
+
+        return dataPagesAt(leafIds);
     }
 
     /** Not Suitable for large trees because you'll get OutOfMemoryExceptions. */
@@ -0,0 +1,119 @@
+package org.mitre.disttree;
+
+import static java.util.Objects.isNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.mitre.caasd.commons.ids.TimeId;
+
+/**
+ * A LeafIndex holds the ids of every leaf node in a DistanceTree in sorted order. TimeIds are
+ * ordered by creation time, so the first id in the index is always the oldest leaf. This lets
+ * incremental repacking find the oldest leaves, and count the leaves, without walking the tree.
+ * <p>
+ * The index is refreshed using the TreeTransactions applied to the tree. When the index detects it
+ * missed a TreeTransaction (e.g., the DataStore was altered by a different process) it reports
+ * itself as stale, and it must be rebuilt from scratch.
+ */
+class LeafIndex {
+
+    private final TreeSet<TimeId> leafIds;
+
+    /** The id of the last TreeTransaction reflected in this index. */
+    private TimeId asOfTransaction;
+
+    /** False until the index is built for the first time (or after it falls out of sync). */
+    private boolean isSynced;
+
+    LeafIndex() {
+        this.leafIds = new TreeSet<>();
+        this.isSynced = false;
+    }
+
+    /** @return True when this index reflects the tree state produced by this TreeTransaction. */
+    synchronized boolean isCurrent(TimeId lastTransactionId) {
+        return isSynced && Objects.equals(asOfTransaction, lastTransactionId);
+    }
+
+    synchronized int numLeaves() {
+        return leafIds.size();
+    }
+
+    synchronized boolean isLeaf(TimeId id) {
+        return leafIds.contains(id);
+    }
+
+    /** @return The oldest leaf that passes this filter (or null if no leaf passes). */
+    synchronized TimeId oldestLeafWhere(Predicate<TimeId> filter) {
+        for (TimeId id : leafIds) {
+            if (filter.test(id)) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Discard the current contents and find every leaf by walking the tree (one bulk read per
+     * level).
+     *
+     * @param lastTransactionId The id of the last TreeTransaction applied to the tree
+     * @param root              The tree's root node (may be null when the tree is empty)
+     * @param bulkLoader        Retrieves NodeHeaders directly from the tree
+     */
+    synchronized <K> void rebuild(
+            TimeId lastTransactionId, NodeHeader<K> root, Function<List<TimeId>, List<NodeHeader<K>>> bulkLoader) {
+
+        leafIds.clear();
+
+        List<NodeHeader<K>> curLevel = isNull(root) ? List.of() : List.of(root);
+
+        while (!curLevel.isEmpty()) {
+
+            List<TimeId> nextLevelIds = new ArrayList<>();
+            for (NodeHeader<K> node : curLevel) {
+                if (node.isLeafNode()) {
+                    leafIds.add(node.id());
+                } else {
+                    nextLevelIds.addAll(node.childNodes());
+                }
+            }
+
+            curLevel = nextLevelIds.isEmpty() ? List.of() : bulkLoader.apply(nextLevelIds);
+        }
+
+        this.asOfTransaction = lastTransactionId;
+        this.isSynced = true;
+    }
+
+    /**
+     * Incorporate the NodeHeader changes from a TreeTransaction that was just applied to the tree.
+     * If this index was not current when the TreeTransaction was built the index becomes stale.
+     */
+    synchronized void update(TreeTransaction<?, ?> transaction) {
+
+        if (!isSynced || !Objects.equals(asOfTransaction, transaction.expectedTreeId())) {
+            this.isSynced = false;
+            return;
+        }
+
+        leafIds.removeAll(transaction.deletedNodeHeaders());
+        transaction.createdNodes().forEach(node -> track(node));
+        transaction.updatedNodes().forEach(node -> track(node));
+
+        this.asOfTransaction = transaction.transactionId();
+    }
+
+    private void track(NodeHeader<?> node) {
+        if (node.isLeafNode()) {
+            leafIds.add(node.id());
+        } else {
+            leafIds.remove(node.id());
+        }
+    }
+}
@@ -20,21 +20,38 @@ import org.mitre.caasd.commons.ids.TimeId;
  * @param center     The Key at the "center" of this node
  * @param radius     The current radius of this node
  * @param childNodes When leaf node = null, When inner node = Lists the ids of all child nodes
- * @param numTuples  When leaf node = n, When inner node = 0 (and failure to access)
- * @param <K>        The Keys defining the Metric Space
+ * @param numTuples    When leaf node = n, When inner node = 0 (and failure to access)
+ * @param distToParent The distance between this node's center and its parent's center (NaN when
+ *                     unknown, e.g., at the root or before the transaction is finalized). Searches
+ *                     use this distance and the triangle inequality to prune nodes without
+ *                     executing the DistanceMetric.
+ * @param <K>          The Keys defining the Metric Space
  */
-public record NodeHeader<K>(TimeId id, TimeId parent, K center, double radius, List<TimeId> childNodes, int numTuples) {
+public record NodeHeader<K>(
+        TimeId id,
+        TimeId parent,
+        K center,
+        double radius,
+        List<TimeId> childNodes,
+        int numTuples,
+        double distToParent) {
 
     public NodeHeader {
         requireNonNull(id);
         requireNonNull(center);
         checkArgument(radius >= 0);
+        checkArgument(Double.isNaN(distToParent) || distToParent >= 0);
         boolean hasChildNodes = nonNull(childNodes);
         boolean hasData = numTuples > 0;
 
         checkArgument(!(hasChildNodes && hasData), "Cannot have both child nodes AND tuples");
     }
 
+    /** Create a NodeHeader whose distance to its parent is not known yet. */
+    public NodeHeader(TimeId id, TimeId parent, K center, double radius, List<TimeId> childNodes, int numTuples) {
+        this(id, parent, center, radius, childNodes, numTuples, Double.NaN);
+    }
+
     /** @return A new NodeHeader that corresponds to a leaf node (the DataPage is made separately). */
     public static <K> NodeHeader<K> newLeafNodeHeader(
             TimeId id, TimeId parent, K center, double radius, int numDataEntries) {
@@ -48,7 +65,16 @@ public record NodeHeader<K>(TimeId id, TimeId parent, K center, double radius, L
      */
     public NodeHeader<K> zeroRadiusZeroTupleCopy() {
         checkState(this.isLeafNode());
-        return new NodeHeader<>(id, parent, center, 0.0, childNodes, 0);
+        return new NodeHeader<>(id, parent, center, 0.0, childNodes, 0, distToParent);
+    }
+
+    /**
+     * Used when Tuples are deleted from a leaf. The radius may shrink when the remaining Tuples'
+     * distances to the center are known.
+     */
+    public NodeHeader<K> withTupleCount(int numTuples, double radius) {
+        checkState(this.isLeafNode());
+        return new NodeHeader<>(id, parent, center, radius, childNodes, numTuples, distToParent);
     }
 
     /**
@@ -70,7 +96,7 @@ public record NodeHeader<K>(TimeId id, TimeId parent, K center, double radius, L
 
         double updatedRadius = updatedChildren.isEmpty() ? 0 : radius;
 
-        return newInnerNodeHeader(id, parent, center, updatedRadius, updatedChildren);
+        return new NodeHeader<>(id, parent, center, updatedRadius, updatedChildren, 0, distToParent);
     }
 
     /** @return A copy of the NodeHeader but with one child replaced. */
@@ -89,7 +115,7 @@ public record NodeHeader<K>(TimeId id, TimeId parent, K center, double radius, L
         updatedChildren.remove(deletedChild);
         updatedChildren.add(newChild);
 
-        return newInnerNodeHeader(id, parent, center, radius, updatedChildren);
+        return new NodeHeader<>(id, parent, center, radius, updatedChildren, 0, distToParent);
     }
 
     /** @return A new NodeHeader corresponding to an InnerNode with a List of childNodes. */
@@ -101,14 +127,24 @@ public record NodeHeader<K>(TimeId id, TimeId parent, K center, double radius, L
         return new NodeHeader<>(id, parent, center, radius, childNodes, 0);
     }
 
-    /** @return A copy of this NodeHeader that has a new parent. */
+    /**
+     * @return A copy of this NodeHeader that has a new parent. The distance to the parent is reset
+     *     to unknown (it is recomputed when the TreeTransaction is finalized).
+     */
     public NodeHeader<K> withParent(TimeId newParent) {
         return new NodeHeader<>(id, newParent, center, radius, childNodes, numTuples);
     }
 
+    /** @return A copy of this NodeHeader whose distance to its parent's center is known. */
+    public NodeHeader<K> withDistToParent(double dist) {
+        return new NodeHeader<>(id, parent, center, radius, childNodes, numTuples, dist);
+    }
+
     /** @return A copy of this NodeHeader with one more child node. */
     public NodeHeader<K> addChild(TimeId childId) {
-        return newInnerNodeHeader(id, parent, center, radius, combineLists(childNodes, List.of(childId)));
+        requireNonNull(childNodes);
+        return new NodeHeader<>(
+                id, parent, center, radius, combineLists(childNodes, List.of(childId)), 0, distToParent);
     }
 
     /**
@@ -137,6 +173,11 @@ public record NodeHeader<K>(TimeId id, TimeId parent, K center, double radius, L
         return nonNull(childNodes);
     }
 
+    /** @return True when distToParent is known (and can be used to prune search). */
+    boolean hasDistToParent() {
+        return !Double.isNaN(distToParent);
+    }
+
     /** Any NodeHeader whose parent is null is a root node. */
     boolean isRoot() {
         return isNull(parent);
@@ -92,7 +92,7 @@ public class OpList<K, V> {
     /** Convert these CreateTuple ops to TupleAssignments. */
     public static <K, V> List<TupleAssignment<K, V>> asAssignments(List<Ops.TupleOp<K, V>> tupleOps) {
         return tupleOps.stream()
-                .map(op -> new TupleAssignment<>(op.tuple(), op.pageId()))
+                .map(op -> new TupleAssignment<>(op.tuple(), op.pageId(), op.distToCenter()))
                 .toList();
     }
 
@@ -46,7 +46,7 @@ public class Ops {
             List<TimeId> children = node.isLeafNode() ? null : combineLists(node.childNodes(), newChildren);
 
             // written this way to meet NodeHeader record restrictions about the leaf node's having null lists
-            return new NodeHeader<>(node.id(), node.parent(), node.center(), rad, children, newN);
+            return new NodeHeader<>(node.id(), node.parent(), node.center(), rad, children, newN, node.distToParent());
         }
 
         /** Create an TreeOp that increases the radius of this Node. */
@@ -78,18 +78,23 @@ public class Ops {
     }
 
     /**
-     * Assigns a Tuple to a specific leaf node. Can be used to CREATE or MOVE a tuple from one
-     * DataPage to another.
+     * A TupleOp adds a Tuple to a leaf node.
      *
-     * @param node  The node where this Tuple goes (must be a leaf node)
-     * @param tuple The Tuple
+     * @param node         The leaf node receiving the Tuple
+     * @param tuple        The Tuple being added
+     * @param distToCenter The distance between the Tuple's key and the leaf's center (NaN if unknown)
      */
-    public record TupleOp<K, V>(NodeHeader<K> node, Tuple<K, V> tuple) implements TreeOperation<K, V> {
+    public record TupleOp<K, V>(NodeHeader<K> node, Tuple<K, V> tuple, double distToCenter)
+            implements TreeOperation<K, V> {
 
         public TupleOp {
             checkArgument(node.isLeafNode());
         }
 
+        public TupleOp(NodeHeader<K> node, Tuple<K, V> tuple) {
+            this(node, tuple, Double.NaN);
+        }
+
         public TimeId pageId() {
             return node.id();
         }
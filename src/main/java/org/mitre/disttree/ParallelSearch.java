@@ -0,0 +1,256 @@
+package org.mitre.disttree;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+import static org.mitre.disttree.SearchSteps.lowerBound;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A ParallelSearch is a Search that explores independent subtrees of a DistanceTree concurrently.
+ * Each task descends towards the child closest to the search key and hands every other child that
+ * overlaps the query sphere to an ExecutorService.
+ * <p>
+ * This helps when a search touches many leaves. Each leaf costs one DataStore round trip plus one
+ * distance computation per Tuple, so a parallel search scales with CPU cores when the
+ * DistanceMetric is expensive and with the number of outstanding reads when the DataStore is slow.
+ * For I/O bound DataStores an ExecutorService that uses virtual threads is a good choice.
+ * <p>
+ * The results of a kNN search are shared by every task. The current search radius (i.e., the k-th
+ * best distance so far) is published whenever the results improve, so every task prunes with the
+ * best bound found by any thread. The result distances are always identical to a sequential
+ * Search (when several Tuples tie for the k-th distance any one of them may be returned).
+ *
+ * @param <K> The "Key" class is used to measure distance between two objects
+ * @param <V> The "Value" class
+ */
+class ParallelSearch<K, V> {
+
+    private final K searchKey;
+
+    private final int maxNumResults; // only used for kNN searches
+
+    private final InternalTree<K, V> tree;
+
+    private final ExecutorService executor;
+
+    /** The worst result is on top. Guarded by itself (NOT "this", executeQuery holds "this"). */
+    private final PriorityQueue<SearchResult<K, V>> resultsQueue;
+
+    /** The current search radius, tasks read this without locking to prune nodes and tuples. */
+    private volatile double radius;
+
+    /** The number of submitted tasks that have not finished. The search ends when this hits 0. */
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    private boolean isDone = false;
+
+    /** Measures, prunes, and loads nodes and DataPages for every task (and counts the work). */
+    private final SearchSteps<K, V> steps;
+
+    private final LongAdder nodesVisited = new LongAdder();
+
+    private ParallelSearch(
+            K searchKey, int maxNumResults, double radius, InternalTree<K, V> tree, ExecutorService executor) {
+        requireNonNull(searchKey);
+        requireNonNull(tree);
+        requireNonNull(executor);
+
+        this.searchKey = searchKey;
+        this.maxNumResults = maxNumResults;
+        this.radius = radius;
+        this.tree = tree;
+        this.executor = executor;
+        this.resultsQueue = new PriorityQueue<>();
+        this.steps = new SearchSteps<>(tree, searchKey);
+    }
+
+    /**
+     * Create a kNN search query that runs on this ExecutorService.
+     *
+     * @param searchKey Search for this
+     * @param k         The "k" in k-Nearest-Neighbors
+     * @param tree      The source of information about the DistanceTree
+     * @param executor  Runs the tasks that explore the tree
+     */
+    static <K, V> ParallelSearch<K, V> knnSearch(
+            K searchKey, int k, InternalTree<K, V> tree, ExecutorService executor) {
+        checkArgument(k >= 1, "k must be at least 1");
+        return new ParallelSearch<>(searchKey, k, Double.POSITIVE_INFINITY, tree, executor);
+    }
+
+    /**
+     * Create a range query that runs on this ExecutorService.
+     *
+     * @param searchKey Search for this
+     * @param range     Include results within this distance
+     * @param tree      The source of information about the DistanceTree
+     * @param executor  Runs the tasks that explore the tree
+     */
+    static <K, V> ParallelSearch<K, V> rangeSearch(
+            K searchKey, double range, InternalTree<K, V> tree, ExecutorService executor) {
+        checkArgument(range > 0, "The range must be strictly positive :{}", range);
+        return new ParallelSearch<>(searchKey, Integer.MAX_VALUE, range, tree, executor);
+    }
+
+    /**
+     * Execute the search, this method blocks until every task has finished. Do not call this method
+     * from a task running on a bounded ExecutorService that the search also uses (every thread
+     * could end up waiting).
+     */
+    synchronized void executeQuery() {
+        checkState(!isDone, "Search was already executed");
+
+        NodeHeader<K> rootNode = tree.rootNode();
+
+        if (isNull(rootNode)) {
+            isDone = true;
+            return;
+        }
+        steps.headersLoadedElsewhere(1);
+
+        submit(steps.measure(rootNode));
+
+        try {
+            completion.join();
+        } catch (CompletionException ce) {
+            // Rethrow the failure of the task (e.g., a DistanceMetric or DataStore exception)
+            if (ce.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw ce;
+        }
+
+        isDone = true;
+    }
+
+    /** Explore the subtree below this node on the ExecutorService. */
+    private void submit(DistBtw<K> node) {
+        pendingTasks.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    explore(node);
+                } catch (Throwable t) {
+                    completion.completeExceptionally(t);
+                } finally {
+                    taskFinished();
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            completion.completeExceptionally(ree);
+            taskFinished();
+        }
+    }
+
+    private void taskFinished() {
+        if (pendingTasks.decrementAndGet() == 0) {
+            completion.complete(null);
+        }
+    }
+
+    /*
+     * Descend towards the closest child while forking the other children. Forked children are
+     * checked against the search radius when they run, a kNN search's radius will likely have
+     * shrunk by then.
+     */
+    private void explore(DistBtw<K> start) {
+
+        DistBtw<K> current = start;
+
+        while (nonNull(current) && !completion.isDone()) {
+            nodesVisited.increment();
+
+            if (lowerBound(current) > radius) {
+                return; // This node (and all its subtrees) cannot improve the current result
+            }
+
+            NodeHeader<K> currentNode = current.node();
+
+            if (currentNode.isLeafNode()) {
+                ingestLeafTuples(steps.loadPage(currentNode), current);
+                return;
+            }
+
+            List<DistBtw<K>> children = steps.measureChildren(current, steps.loadChildren(currentNode), radius);
+            children.sort(Comparator.comparingDouble(child -> lowerBound(child)));
+
+            for (int i = 1; i < children.size(); i++) {
+                submit(children.get(i));
+            }
+            current = children.isEmpty() ? null : children.get(0);
+        }
+    }
+
+    /**
+     * Measure the tuples in a leaf's DataPage without holding the lock, then merge the candidates
+     * into the shared results.
+     */
+    private void ingestLeafTuples(DataPage<K, V> page, DistBtw<K> leaf) {
+
+        List<SearchResult<K, V>> candidates = new ArrayList<>();
+
+        for (Tuple<K, V> tuple : page.tuples()) {
+            SearchResult<K, V> candidate = steps.measure(tuple, page, leaf, radius);
+            if (nonNull(candidate)) {
+                candidates.add(candidate);
+            }
+        }
+
+        if (!candidates.isEmpty()) {
+            offer(candidates);
+        }
+    }
+
+    /** Add these candidates to the results, then publish the (possibly smaller) search radius. */
+    private void offer(List<SearchResult<K, V>> candidates) {
+        synchronized (resultsQueue) {
+            offerLocked(candidates);
+        }
+    }
+
+    private void offerLocked(List<SearchResult<K, V>> candidates) {
+
+        for (SearchResult<K, V> candidate : candidates) {
+            if (candidate.distance() <= radius) {
+                resultsQueue.offer(candidate);
+            }
+        }
+
+        // enforce the "k" in kNN search, while too big - remove the worst result
+        while (resultsQueue.size() > maxNumResults) {
+            resultsQueue.poll();
+        }
+
+        if (resultsQueue.size() == maxNumResults) {
+            this.radius = resultsQueue.peek().distance(); // must beat this to improve
+        }
+    }
+
+    synchronized SearchResults<K, V> results() {
+        checkState(isDone, "Search was not executed");
+
+        synchronized (resultsQueue) {
+            return new SearchResults<>(searchKey, resultsQueue, stats());
+        }
+    }
+
+    /** @return Counters that describe how much of the tree this search touched. */
+    SearchStats stats() {
+        return steps.stats(nodesVisited.intValue());
+    }
+}
@@ -0,0 +1,149 @@
+package org.mitre.disttree;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+import static org.mitre.disttree.SearchSteps.lowerBound;
+
+import java.util.ArrayDeque;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.mitre.caasd.commons.ids.TimeId;
+
+/**
+ * A RangeSearchIterator lazily performs a range search. Matching Tuples are provided one at a time
+ * as the DataPages that contain them are loaded.
+ * <p>
+ * Unlike a regular range search (which collects and sorts every match before returning) only the
+ * DataPage currently being scanned is held in memory. Therefore, callers that count, filter, or
+ * forward results get their first result quickly and use a constant amount of memory no matter
+ * how many Tuples match. The results are NOT sorted by distance.
+ * <p>
+ * Like a TreeIterator, a RangeSearchIterator throws a ConcurrentModificationException if the tree
+ * is altered while the search is in progress.
+ *
+ * @param <K> The Key type from the DistanceTree
+ * @param <V> The Value type from the DistanceTree
+ */
+public class RangeSearchIterator<K, V> implements Iterator<SearchResult<K, V>> {
+
+    /** The DistanceTree backing this Iterator. */
+    private final InternalTree<K, V> tree;
+
+    private final double range;
+
+    /** Measures, prunes, and loads nodes and DataPages. */
+    private final SearchSteps<K, V> steps;
+
+    /** The last transactionId from the tree -- used to detect tree mutation. */
+    private final TimeId expectedTreeId;
+
+    /** Contains Leaf and Inner Nodes (already measured) that have not yet been processed. */
+    private final Deque<DistBtw<K>> nodesToSearch;
+
+    /** The leaf whose DataPage is being scanned (null between DataPages). */
+    private DistBtw<K> currentLeaf;
+
+    /** The DataPage being scanned (null between DataPages). */
+    private DataPage<K, V> currentPage;
+
+    /** The Tuples in the current DataPage that have not been measured yet. */
+    private Iterator<Tuple<K, V>> unscannedTuples;
+
+    /** The next result to return (null when it hasn't been found yet). */
+    private SearchResult<K, V> nextResult;
+
+    RangeSearchIterator(InternalTree<K, V> tree, K searchKey, double range) {
+        requireNonNull(tree);
+        requireNonNull(searchKey);
+        checkArgument(range > 0, "The range must be strictly positive :{}", range);
+        this.tree = tree;
+        this.range = range;
+        this.steps = new SearchSteps<>(tree, searchKey);
+        this.expectedTreeId = tree.lastTransactionId();
+        this.nodesToSearch = new ArrayDeque<>();
+
+        NodeHeader<K> root = tree.rootNode();
+        if (nonNull(root)) {
+            nodesToSearch.push(steps.measure(root));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (isNull(nextResult)) {
+            nextResult = findNextResult();
+        }
+        return nonNull(nextResult);
+    }
+
+    @Override
+    public SearchResult<K, V> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        SearchResult<K, V> result = nextResult;
+        nextResult = null;
+        return result;
+    }
+
+    private SearchResult<K, V> findNextResult() {
+
+        while (true) {
+
+            // Finish scanning the current DataPage before loading another one
+            while (nonNull(unscannedTuples) && unscannedTuples.hasNext()) {
+                SearchResult<K, V> match = steps.measure(unscannedTuples.next(), currentPage, currentLeaf, range);
+                if (nonNull(match)) {
+                    return match;
+                }
+            }
+            releaseCurrentPage();
+
+            if (nodesToSearch.isEmpty()) {
+                return null;
+            }
+
+            detectMutation();
+
+            DistBtw<K> current = nodesToSearch.pop();
+
+            // Ignore this node (and all its subtrees). It cannot contain any results
+            if (lowerBound(current) > range) {
+                continue;
+            }
+
+            if (current.node().isLeafNode()) {
+                currentLeaf = current;
+                currentPage = steps.loadPage(current.node());
+                unscannedTuples = currentPage.tuples().iterator();
+            } else {
+                pushChildren(current);
+            }
+        }
+    }
+
+    /** Measure and push the children of an inner node that can overlap the query sphere. */
+    private void pushChildren(DistBtw<K> parent) {
+        for (DistBtw<K> child : steps.measureChildren(parent, steps.loadChildren(parent.node()), range)) {
+            nodesToSearch.push(child);
+        }
+    }
+
+    /** Drop all references to the scanned DataPage so it can be garbage collected. */
+    private void releaseCurrentPage() {
+        currentLeaf = null;
+        currentPage = null;
+        unscannedTuples = null;
+    }
+
+    private void detectMutation() {
+        if (!expectedTreeId.equals(tree.lastTransactionId())) {
+            throw new ConcurrentModificationException("DistanceTree has changed");
+        }
+    }
+}
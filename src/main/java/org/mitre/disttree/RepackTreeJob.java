@@ -40,9 +40,6 @@ public class RepackTreeJob<K, V> implements Runnable {
             throw new ConcurrentModificationException();
         }
 
-        var serdePair = targetTree.config().serdePair();
-        var binaryTransaction = serdePair.serializeTransaction(transaction);
-
-        targetTree.dataStore().applyTransaction(binaryTransaction);
+        targetTree.applyTransaction(transaction);
     }
 }
@@ -0,0 +1,161 @@
+package org.mitre.disttree;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.isNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.mitre.caasd.commons.ids.TimeId;
+
+/**
+ * A ResidentNodeIndex keeps the inner NodeHeaders at the top of a DistanceTree deserialized and in
+ * memory. Every insert and every search starts at the root and walks down, so these NodeHeaders
+ * are read constantly. Keeping them resident means descending the tree only requires I/O (and
+ * deserialization) once the walk reaches the leaf nodes.
+ * <p>
+ * The index is refreshed using the TreeTransactions applied to the tree. When the index detects
+ * it missed a TreeTransaction (e.g., the DataStore was altered by a different process) it reports
+ * itself as stale, and it must be rebuilt from scratch.
+ *
+ * @param <K> The Keys defining the Metric Space
+ */
+class ResidentNodeIndex<K> {
+
+    /** Inner nodes with a depth less than this are kept resident (the root has depth 0). */
+    private final int numLevels;
+
+    private final Map<TimeId, NodeHeader<K>> residentNodes;
+
+    /** The id of the last TreeTransaction reflected in this index. */
+    private TimeId asOfTransaction;
+
+    /** False until the index is built for the first time (or after it falls out of sync). */
+    private boolean isSynced;
+
+    /**
+     * @param numLevels Keep inner nodes in this many levels of the tree resident. Use
+     *                  Integer.MAX_VALUE to keep every inner node resident.
+     */
+    ResidentNodeIndex(int numLevels) {
+        checkArgument(numLevels > 0);
+        this.numLevels = numLevels;
+        this.residentNodes = new ConcurrentHashMap<>();
+        this.isSynced = false;
+    }
+
+    /** @return True when this index reflects the tree state produced by this TreeTransaction. */
+    synchronized boolean isCurrent(TimeId lastTransactionId) {
+        return isSynced && Objects.equals(asOfTransaction, lastTransactionId);
+    }
+
+    /** @return The resident NodeHeader with this id, or null if this NodeHeader isn't resident. */
+    NodeHeader<K> nodeAt(TimeId id) {
+        return residentNodes.get(id);
+    }
+
+    int size() {
+        return residentNodes.size();
+    }
+
+    /**
+     * Discard the current contents and reload the top levels of the tree (one bulk read per
+     * level).
+     *
+     * @param lastTransactionId The id of the last TreeTransaction applied to the tree
+     * @param root              The tree's root node (may be null when the tree is empty)
+     * @param bulkLoader        Retrieves NodeHeaders directly from the tree
+     */
+    synchronized void rebuild(
+            TimeId lastTransactionId, NodeHeader<K> root, Function<List<TimeId>, List<NodeHeader<K>>> bulkLoader) {
+
+        residentNodes.clear();
+
+        List<NodeHeader<K>> curLevel = isNull(root) ? List.of() : List.of(root);
+        int depth = 0;
+
+        while (!curLevel.isEmpty() && depth < numLevels) {
+
+            List<TimeId> nextLevelIds = new ArrayList<>();
+            for (NodeHeader<K> node : curLevel) {
+                if (node.isInnerNode()) {
+                    residentNodes.put(node.id(), node);
+                    nextLevelIds.addAll(node.childNodes());
+                }
+            }
+
+            depth++;
+            boolean needNextLevel = !nextLevelIds.isEmpty() && depth < numLevels;
+            curLevel = needNextLevel ? bulkLoader.apply(nextLevelIds) : List.of();
+        }
+
+        this.asOfTransaction = lastTransactionId;
+        this.isSynced = true;
+    }
+
+    /**
+     * Incorporate the NodeHeader changes from a TreeTransaction that was just applied to the tree.
+     * If this index was not current when the TreeTransaction was built the index becomes stale.
+     */
+    synchronized void update(TreeTransaction<K, ?> transaction) {
+
+        if (!isSynced || !Objects.equals(asOfTransaction, transaction.expectedTreeId())) {
+            this.isSynced = false;
+            return;
+        }
+
+        transaction.deletedNodeHeaders().forEach(id -> residentNodes.remove(id));
+
+        Map<TimeId, NodeHeader<K>> staged = new HashMap<>();
+        transaction.createdNodes().forEach(node -> staged.put(node.id(), node));
+        transaction.updatedNodes().forEach(node -> staged.put(node.id(), node));
+
+        for (NodeHeader<K> node : staged.values()) {
+            if (node.isInnerNode() && depthOf(node, staged) < numLevels) {
+                residentNodes.put(node.id(), node);
+            } else {
+                residentNodes.remove(node.id());
+            }
+        }
+
+        // A new root pushes every node down one level, some resident nodes may now be too deep
+        if (transaction.hasNewRoot()) {
+            residentNodes.values().removeIf(node -> depthOf(node, Map.of()) >= numLevels);
+        }
+
+        this.asOfTransaction = transaction.transactionId();
+    }
+
+    /**
+     * @return The depth of this node (root = 0), capped at numLevels. A node whose ancestors are not
+     *     all resident (or staged) is too deep to be resident.
+     */
+    private int depthOf(NodeHeader<K> node, Map<TimeId, NodeHeader<K>> staged) {
+
+        if (numLevels == Integer.MAX_VALUE) {
+            return 0; // every inner node is resident, depth does not matter
+        }
+
+        int depth = 0;
+        NodeHeader<K> cur = node;
+
+        while (!cur.isRoot()) {
+            depth++;
+            NodeHeader<K> parent = staged.containsKey(cur.parent())
+                    ? staged.get(cur.parent())
+                    : residentNodes.get(cur.parent());
+
+            if (isNull(parent) || depth >= numLevels) {
+                return numLevels;
+            }
+            cur = parent;
+        }
+
+        return depth;
+    }
+}
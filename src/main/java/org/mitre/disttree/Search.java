@@ -3,10 +3,15 @@ package org.mitre.disttree;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
+import static org.mitre.disttree.SearchSteps.lowerBound;
 
 import java.util.*;
 
+import org.mitre.caasd.commons.ids.TimeId;
+import org.mitre.disttree.TreeConfig.SearchStrategy;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,16 +53,42 @@ class Search<K, V> {
 
     private final InternalTree<K, V> dataStore;
 
+    private final SearchStrategy strategy;
+
+    /** Approximate searches may stop before they prove their results are exact. */
+    private final Approximation approximation;
+
     private boolean isDone = false;
 
-    private Search(SearchType type, K searchKey, InternalTree<K, V> dataStore, double limit) {
+    /** Becomes false when an approximation skipped a node that could have improved the results. */
+    private boolean isExact = true;
+
+    /** The leaf whose DataPage was ingested before the traversal began (see startFromLeaf). */
+    private TimeId seededLeafId;
+
+    /** Measures, prunes, and loads nodes and DataPages (and counts the work it does). */
+    private final SearchSteps<K, V> steps;
+
+    private int nodesVisited = 0;
+
+    private Search(
+            SearchType type,
+            K searchKey,
+            InternalTree<K, V> dataStore,
+            double limit,
+            SearchStrategy strategy,
+            Approximation approximation) {
         requireNonNull(type);
         requireNonNull(searchKey);
         requireNonNull(dataStore);
+        requireNonNull(strategy);
+        requireNonNull(approximation);
         checkArgument(limit > 0);
 
         this.searchKey = searchKey;
         this.type = type;
+        this.strategy = strategy;
+        this.approximation = approximation;
 
         if (type == SearchType.K_NEAREST_NEIGHBORS) {
             this.maxNumResults = (int) limit;
@@ -69,6 +100,7 @@ class Search<K, V> {
 
         this.resultsQueue = new PriorityQueue<>();
         this.dataStore = dataStore;
+        this.steps = new SearchSteps<>(dataStore, searchKey);
     }
 
     /**
@@ -79,7 +111,27 @@ class Search<K, V> {
      * @param dataStore The source of information about the DurableMetricTree
      */
     static <K, V> Search<K, V> knnSearch(K searchKey, int k, InternalTree<K, V> dataStore) {
-        return new Search<>(SearchType.K_NEAREST_NEIGHBORS, searchKey, dataStore, k);
+        return knnSearch(searchKey, k, dataStore, dataStore.config().searchStrategy);
+    }
+
+    /** Create a kNN search query that explores the tree using a specific SearchStrategy. */
+    static <K, V> Search<K, V> knnSearch(K searchKey, int k, InternalTree<K, V> dataStore, SearchStrategy strategy) {
+        return new Search<>(SearchType.K_NEAREST_NEIGHBORS, searchKey, dataStore, k, strategy, Approximation.EXACT);
+    }
+
+    /**
+     * Create an approximate kNN search query. The search may stop before it proves its results
+     * are the true k-nearest neighbors (see SearchResults.isExact()).
+     *
+     * @param searchKey     Search for this
+     * @param k             The "k" in k-Nearest-Neighbors
+     * @param dataStore     The source of information about the DurableMetricTree
+     * @param approximation Limits how much of the tree the search explores
+     */
+    static <K, V> Search<K, V> knnSearch(
+            K searchKey, int k, InternalTree<K, V> dataStore, Approximation approximation) {
+        SearchStrategy strategy = dataStore.config().searchStrategy;
+        return new Search<>(SearchType.K_NEAREST_NEIGHBORS, searchKey, dataStore, k, strategy, approximation);
     }
 
     /**
@@ -90,7 +142,13 @@ class Search<K, V> {
      * @param dataStore The source of information about the DurableMetricTree
      */
     static <K, V> Search<K, V> rangeSearch(K searchKey, double range, InternalTree<K, V> dataStore) {
-        return new Search<>(SearchType.RANGE, searchKey, dataStore, range);
+        return rangeSearch(searchKey, range, dataStore, dataStore.config().searchStrategy);
+    }
+
+    /** Create a range query that explores the tree using a specific SearchStrategy. */
+    static <K, V> Search<K, V> rangeSearch(
+            K searchKey, double range, InternalTree<K, V> dataStore, SearchStrategy strategy) {
+        return new Search<>(SearchType.RANGE, searchKey, dataStore, range, strategy, Approximation.EXACT);
     }
 
     /*
@@ -111,6 +169,18 @@ class Search<K, V> {
             isDone = true;
             return;
         }
+        steps.headersLoadedElsewhere(1);
+
+        switch (strategy) {
+            case DEPTH_FIRST -> searchDepthFirst(rootNode);
+            case BEST_FIRST -> searchBestFirst(rootNode);
+        }
+
+        isDone = true;
+        // @todo -- Make this "set" the results field...
+    }
+
+    private void searchDepthFirst(NodeHeader<K> rootNode) {
 
         /*
          * As we descend the tree towards a leaf node we'll push "nodes that need to be explored"
@@ -119,47 +189,107 @@ class Search<K, V> {
          * solution" is found earlier. Thus, we'll correctly skip more data and reduce the number
          *  of operations needed to find the solution.
          */
-        Deque<NodeHeader<K>> stackOfNodesToSearch = new ArrayDeque<>();
-        stackOfNodesToSearch.push(rootNode);
+        Deque<DistBtw<K>> stackOfNodesToSearch = new ArrayDeque<>();
+        stackOfNodesToSearch.push(steps.measure(rootNode));
 
         while (!stackOfNodesToSearch.isEmpty()) {
 
-            NodeHeader<K> currentNode = stackOfNodesToSearch.pop();
+            DistBtw<K> current = stackOfNodesToSearch.pop();
+            nodesVisited++;
 
             // Ignore this node (and all its subtrees). It cannot improve the current result
-            if (!this.overlapsWith(currentNode)) {
+            if (!this.overlapsWith(current)) {
+                continue;
+            }
+
+            // Ignore this node (and all its subtrees). It cannot improve the result enough
+            if (!this.overlapsWithApproximateSphere(current)) {
+                isExact = false;
                 continue;
             }
 
+            NodeHeader<K> currentNode = current.node();
+
             if (currentNode.isLeafNode()) {
-                DataPage<K, V> leafEntries = dataStore.dataPageAt(currentNode.id());
-                ingestLeafTuples(leafEntries.tuples());
+                if (currentNode.id().equals(seededLeafId)) {
+                    continue; // already ingested
+                }
+                if (!hasLeafBudget()) {
+                    isExact = false;
+                    break;
+                }
+                ingestLeafTuples(steps.loadPage(currentNode), current);
             } else {
 
-                List<NodeHeader<K>> childNodes = dataStore.nodesBelow(currentNode.id());
+                // Measure each child exactly once, the distance is reused for sorting and pruning
+                List<DistBtw<K>> childNodes =
+                        steps.measureChildren(current, steps.loadChildren(currentNode), this.radius());
 
                 /*
                  * IMPORTANT: Add the nodes from "worst" to "best".  This way we'll reduce total
                  * work done because we'll be more likely to skip spheres that are "far away".
                  */
                 childNodes.stream()
-                        .sorted(sortByDistanceToKey(searchKey))
-                        .forEach(nodeHeader -> stackOfNodesToSearch.push(nodeHeader));
+                        .sorted(sortByDistanceToKey())
+                        .forEach(child -> stackOfNodesToSearch.push(child));
             }
         }
-
-        isDone = true;
-        // @todo -- Make this "set" the results field...
     }
 
-    /* Update the "working solution" with these tuples. */
-    private void ingestLeafTuples(Set<Tuple<K, V>> tuples) {
+    /*
+     * Explore nodes in order of their "lower bound distance" (i.e., the smallest distance any Tuple
+     * inside a node's sphere could have to the search key). The first node whose lower bound
+     * exceeds the current search radius ends the search because every unexplored node is at least
+     * as far away.
+     */
+    private void searchBestFirst(NodeHeader<K> rootNode) {
+
+        PriorityQueue<DistBtw<K>> frontier = new PriorityQueue<>(sortByLowerBound());
+        frontier.add(steps.measure(rootNode));
 
-        for (Tuple<K, V> tuple : tuples) {
+        while (!frontier.isEmpty()) {
 
-            SearchResult<K, V> r = new SearchResult<>(tuple, distanceBtw(searchKey, tuple.key()));
+            DistBtw<K> current = frontier.poll();
+            nodesVisited++;
 
-            if (r.distance() <= this.radius()) {
+            if (lowerBound(current) > this.radius()) {
+                break; // no remaining node can improve the current result
+            }
+
+            if (lowerBound(current) > this.approximateRadius()) {
+                isExact = false;
+                break; // no remaining node can improve the current result enough
+            }
+
+            NodeHeader<K> currentNode = current.node();
+
+            if (currentNode.isLeafNode()) {
+                if (currentNode.id().equals(seededLeafId)) {
+                    continue; // already ingested
+                }
+                if (!hasLeafBudget()) {
+                    isExact = false;
+                    break;
+                }
+                ingestLeafTuples(steps.loadPage(currentNode), current);
+            } else {
+                List<NodeHeader<K>> childNodes = steps.loadChildren(currentNode);
+                for (DistBtw<K> childDist : steps.measureChildren(current, childNodes, this.radius())) {
+                    if (lowerBound(childDist) <= this.radius()) {
+                        frontier.add(childDist);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Update the "working solution" with the tuples in a leaf's DataPage. */
+    private void ingestLeafTuples(DataPage<K, V> page, DistBtw<K> leaf) {
+
+        for (Tuple<K, V> tuple : page.tuples()) {
+            // Measure against the current radius, a kNN search's radius shrinks as results arrive
+            SearchResult<K, V> r = steps.measure(tuple, page, leaf, this.radius());
+            if (nonNull(r)) {
                 this.resultsQueue.offer(r);
             }
         }
@@ -171,14 +301,33 @@ class Search<K, V> {
     }
 
     /** @return True when the "query sphere" and this node's "sphere" overlap. */
-    private boolean overlapsWith(NodeHeader<K> node) {
+    private boolean overlapsWith(DistBtw<K> nodeDist) {
+        steps.distanceCalcsSaved(1); // the carried distance replaces re-measuring the node
+
 
-        double distance = distanceBtw(node.center(), this.searchKey);
-        double overlap = node.radius() + this.radius() - distance;
+        double overlap = nodeDist.node().radius() + this.radius() - nodeDist.distance();
 
         return overlap >= 0;
     }
 
+    /**
+     * @return True when this node's "sphere" overlaps the query sphere after it is shrunk by the
+     *     approximation's epsilon factor. Exact searches never shrink the query sphere.
+     */
+    private boolean overlapsWithApproximateSphere(DistBtw<K> nodeDist) {
+        return nodeDist.node().radius() + this.approximateRadius() - nodeDist.distance() >= 0;
+    }
+
+    /** @return The search radius shrunk by the approximation's (1 + epsilon) factor. */
+    private double approximateRadius() {
+        return this.radius() / (1 + approximation.epsilon());
+    }
+
+    /** @return True when the approximation permits loading another DataPage. */
+    private boolean hasLeafBudget() {
+        return steps.pagesLoaded() < approximation.maxLeaves();
+    }
+
     /**
      * @return The "inclusion radius" based on the type of query being executed and the quality of
      *     the current results (so we can avoid processing spheres that cannot contain better
@@ -200,18 +349,105 @@ class Search<K, V> {
         }
     }
 
+    /*
+     * The methods below let a BatchSearch drive this Search through a traversal that is shared
+     * with other Searches. The BatchSearch loads each NodeHeader and DataPage once, this Search
+     * still decides which nodes it needs and maintains its own results.
+     */
+
+    /** @return The search key measured against the root node. */
+    DistBtw<K> startAt(NodeHeader<K> rootNode) {
+        checkState(!isDone, "Search was already executed");
+        steps.headersLoadedElsewhere(1);
+        return steps.measure(rootNode);
+    }
+
+    /** @return True when this Search must explore this node (given its current results). */
+    boolean needsToVisit(DistBtw<K> nodeDist) {
+        nodesVisited++;
+        return overlapsWith(nodeDist);
+    }
+
+    /** @return The children (already loaded by the caller) this Search must explore. */
+    List<DistBtw<K>> visitChildren(DistBtw<K> parent, List<NodeHeader<K>> childNodes) {
+        steps.headersLoadedElsewhere(childNodes.size());
+        return steps.measureChildren(parent, childNodes, this.radius());
+    }
+
+    /** Update the "working solution" with a DataPage that was loaded by the caller. */
+    void visitLeaf(DistBtw<K> leaf, DataPage<K, V> page) {
+        steps.pageLoadedElsewhere();
+        ingestLeafTuples(page, leaf);
+    }
+
+    /**
+     * Ingest the DataPage of a leaf that is known to be close to the search key BEFORE the
+     * traversal begins. The search key is usually a Tuple stored in this leaf, so a kNN search
+     * starts with a small search radius and prunes almost every other node on its way down from
+     * the root. The traversal does not load this DataPage again.
+     *
+     * @param leaf        A leaf node
+     * @param page        The leaf's DataPage
+     * @param keyToCenter The distance between the search key and the leaf's center
+     */
+    Search<K, V> startFromLeaf(NodeHeader<K> leaf, DataPage<K, V> page, double keyToCenter) {
+        checkState(!isDone, "Search was already executed");
+        checkArgument(leaf.isLeafNode() && leaf.id().equals(page.id()), "The page must belong to the leaf");
+
+        this.seededLeafId = leaf.id();
+        steps.pageLoadedElsewhere();
+        ingestLeafTuples(page, new DistBtw<>(leaf, searchKey, keyToCenter));
+        return this;
+    }
+
+    /**
+     * Keep every node distance this Search measures. These distances let an insertion of the search
+     * key route through the same (unaltered) tree without re-running the DistanceMetric on the
+     * nodes this Search already measured.
+     */
+    Search<K, V> rememberNodeDistances() {
+        checkState(!isDone, "Search was already executed");
+        steps.rememberNodeDistances();
+        return this;
+    }
+
+    /** @return The distance between the search key and each node this Search measured (by node id). */
+    Map<TimeId, Double> nodeDistances() {
+        checkState(isDone, "Search was not executed");
+        return steps.nodeDistances();
+    }
+
+    /** Mark this Search as executed, afterward its results can be retrieved. */
+    void markDone() {
+        isDone = true;
+    }
+
     SearchResults<K, V> results() {
         checkState(isDone, "Search was not executed");
 
-        return new SearchResults<>(searchKey, resultsQueue);
+        return new SearchResults<>(searchKey, resultsQueue, stats(), isExact);
     }
 
-    private double distanceBtw(K one, K two) {
-        return dataStore.config().distMetric().distanceBtw(one, two);
+    /** @return Counters that describe how much of the tree this search touched. */
+    SearchStats stats() {
+        return steps.stats(nodesVisited);
+    }
+
+    /**
+     * Sorts nodes from "farthest" to "closest" using each node's precomputed distance. Each
+     * comparison would otherwise measure both nodes.
+     */
+    private Comparator<DistBtw<K>> sortByDistanceToKey() {
+
+        return (node1, node2) -> {
+            steps.distanceCalcsSaved(2);
+            return Double.compare(node2.distance(), node1.distance());
+        };
     }
 
-    private Comparator<NodeHeader<K>> sortByDistanceToKey(K key) {
+    /** Sorts nodes by lower bound distance using each node's precomputed distance. */
+    private Comparator<DistBtw<K>> sortByLowerBound() {
 
-        return (node1, node2) -> Double.compare(distanceBtw(key, node2.center()), distanceBtw(key, node1.center()));
+        return (node1, node2) -> Double.compare(lowerBound(node1), lowerBound(node2));
     }
 }
@@ -0,0 +1,77 @@
+package org.mitre.disttree;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+
+import org.mitre.caasd.commons.ids.TimeId;
+
+/**
+ * A SearchAndInsertJob finds the k-nearest neighbors of every Tuple in a Batch and then adds the
+ * Batch to the DistanceTree.
+ * <p>
+ * Searching for a key and then inserting it walks the same root-to-leaf path twice. Here the
+ * searches remember every node distance they measure and the insertion routes each Tuple with
+ * those distances, so the DistanceMetric is only run on nodes the searches did not measure.
+ * <p>
+ * The neighbors are found among the Tuples that were in the tree BEFORE the batch was added (i.e.,
+ * the Tuples in a batch do not find each other).
+ */
+class SearchAndInsertJob<K, V> implements Callable<List<SearchResults<K, V>>> {
+
+    final InternalTree<K, V> targetTree;
+    final Batch<K, V> batch;
+    final int k;
+
+    /**
+     * @param targetTree The DistanceTree we want to search and mutate
+     * @param batch      The data we want to search for and add
+     * @param k          The number of neighbors to find for each Tuple
+     */
+    SearchAndInsertJob(InternalTree<K, V> targetTree, Batch<K, V> batch, int k) {
+        requireNonNull(targetTree);
+        requireNonNull(batch);
+        checkArgument(k >= 1, "k must be at least 1");
+        this.targetTree = targetTree;
+        this.batch = batch;
+        this.k = k;
+    }
+
+    /** @return One SearchResults for each Tuple in the Batch (in the same order as the Batch). */
+    @Override
+    public List<SearchResults<K, V>> call() {
+
+        List<Tuple<K, V>> tuples = batch.tuples();
+
+        // The measured distances are only valid for the tree state that was searched
+        TimeId searchedTreeId = targetTree.lastTransactionId();
+
+        List<Search<K, V>> searches = tuples.stream()
+                .map(tuple -> Search.knnSearch(tuple.key(), k, targetTree).rememberNodeDistances())
+                .toList();
+
+        searches.forEach(search -> search.executeQuery());
+
+        Map<TimeId, Map<TimeId, Double>> knownDistances = new HashMap<>();
+        for (int i = 0; i < tuples.size(); i++) {
+            knownDistances.put(tuples.get(i).id(), searches.get(i).nodeDistances());
+        }
+
+        TransactionMaker<K, V> maker = new TransactionMaker<>(targetTree, batch, knownDistances);
+        TreeTransaction<K, V> transaction = maker.computeTransaction();
+
+        if (!Objects.equals(transaction.expectedTreeId(), searchedTreeId)
+                || transaction.expectedTreeId() != targetTree.lastTransactionId()) {
+            throw new ConcurrentModificationException();
+        }
+        targetTree.applyTransaction(transaction);
+
+        return searches.stream().map(search -> search.results()).toList();
+    }
+}
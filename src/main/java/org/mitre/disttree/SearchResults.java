@@ -25,10 +25,23 @@ public class SearchResults<K, V> {
     /** All result found during the Search operation. */
     private final ArrayList<SearchResult<K, V>> results;
 
-    SearchResults(K searchKey, Collection<SearchResult<K, V>> c) {
+    /** Counters describing the work performed to find these results. */
+    private final SearchStats stats;
+
+    /** False when an approximate search stopped before proving these results are exact. */
+    private final boolean isExact;
+
+    SearchResults(K searchKey, Collection<SearchResult<K, V>> c, SearchStats stats) {
+        this(searchKey, c, stats, true);
+    }
+
+    SearchResults(K searchKey, Collection<SearchResult<K, V>> c, SearchStats stats, boolean isExact) {
         requireNonNull(searchKey);
+        requireNonNull(stats);
         this.searchKey = searchKey;
         this.results = new ArrayList<>(c);
+        this.stats = stats;
+        this.isExact = isExact;
         results.sort(reverseOrder());
     }
 
@@ -37,6 +50,19 @@ public class SearchResults<K, V> {
         return searchKey;
     }
 
+    /** @return Counters describing how many NodeHeaders and DataPages the search touched. */
+    public SearchStats stats() {
+        return stats;
+    }
+
+    /**
+     * @return True when these results are guaranteed to be exact. Only approximate searches return
+     *     false (i.e., the search skipped part of the tree that could have improved the results).
+     */
+    public boolean isExact() {
+        return isExact;
+    }
+
     /** @return True, when there is no data to report. */
     public boolean isEmpty() {
         return results.isEmpty();
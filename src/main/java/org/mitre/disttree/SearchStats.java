@@ -0,0 +1,29 @@
+package org.mitre.disttree;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Counts the work a single Search performed. Comparing these counters across search strategies
+ * (or tree configurations) shows which approach touches the least data.
+ *
+ * @param nodesVisited       The number of NodeHeaders that were popped from the search frontier
+ * @param headersLoaded      The number of NodeHeaders retrieved from the tree (children of visited
+ *                           inner nodes)
+ * @param pagesLoaded        The number of DataPages retrieved from the tree
+ * @param distanceCalcs      The number of times the DistanceMetric was executed
+ * @param distanceCalcsSaved The number of DistanceMetric executions skipped, i.e., child nodes
+ *                           pruned using their distToParent, Tuples pruned using their
+ *                           distToCenter, and node distances reused (instead of re-measured)
+ *                           when checking overlap and sorting children
+ */
+public record SearchStats(
+        int nodesVisited, int headersLoaded, int pagesLoaded, int distanceCalcs, int distanceCalcsSaved) {
+
+    public SearchStats {
+        checkArgument(nodesVisited >= 0);
+        checkArgument(headersLoaded >= 0);
+        checkArgument(pagesLoaded >= 0);
+        checkArgument(distanceCalcs >= 0);
+        checkArgument(distanceCalcsSaved >= 0);
+    }
+}
@@ -0,0 +1,157 @@
+package org.mitre.disttree;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mitre.caasd.commons.ids.TimeId;
+
+/**
+ * The steps every search of a DistanceTree is built from: measuring nodes and Tuples against the
+ * search key, pruning them with the triangle inequality, and loading NodeHeaders and DataPages.
+ * Search, ParallelSearch, and RangeSearchIterator share these steps (and the counters they
+ * update) so the pruning rules are written once.
+ * <p>
+ * The counters are thread-safe, the tasks of a ParallelSearch share one SearchSteps.
+ *
+ * @param <K> The "Key" class is used to measure distance between two objects
+ * @param <V> The "Value" class
+ */
+class SearchSteps<K, V> {
+
+    private final InternalTree<K, V> tree;
+
+    private final K searchKey;
+
+    /** Every node distance measured, null unless rememberNodeDistances() was called. */
+    private Map<TimeId, Double> nodeDistances;
+
+    private final LongAdder headersLoaded = new LongAdder();
+    private final LongAdder pagesLoaded = new LongAdder();
+    private final LongAdder distanceCalcs = new LongAdder();
+    private final LongAdder distanceCalcsSaved = new LongAdder();
+
+    SearchSteps(InternalTree<K, V> tree, K searchKey) {
+        this.tree = requireNonNull(tree);
+        this.searchKey = requireNonNull(searchKey);
+    }
+
+    /** Compute the distance between this node's center and the search key (exactly once). */
+    DistBtw<K> measure(NodeHeader<K> node) {
+        double dist = distanceBtw(searchKey, node.center());
+        if (nonNull(nodeDistances)) {
+            nodeDistances.put(node.id(), dist);
+        }
+        return new DistBtw<>(node, searchKey, dist);
+    }
+
+    /**
+     * Measure the children of an inner node. A child whose distToParent is known is skipped without
+     * running the DistanceMetric when the triangle inequality proves its sphere cannot overlap the
+     * query sphere, i.e., when |d(q, parent) - d(child, parent)| - r_child is larger than the search
+     * radius.
+     */
+    List<DistBtw<K>> measureChildren(DistBtw<K> parent, List<NodeHeader<K>> childNodes, double radius) {
+
+        List<DistBtw<K>> children = new ArrayList<>();
+
+        for (NodeHeader<K> child : childNodes) {
+            if (child.hasDistToParent()) {
+                double lowerBound = Math.abs(parent.distance() - child.distToParent()) - child.radius();
+                if (lowerBound > radius) {
+                    distanceCalcsSaved.increment();
+                    continue;
+                }
+            }
+            children.add(measure(child));
+        }
+        return children;
+    }
+
+    /**
+     * Measure one Tuple from a leaf's DataPage. A Tuple whose distance to the leaf's center is known
+     * is skipped without running the DistanceMetric when the triangle inequality proves it is
+     * outside the query sphere, i.e., when |d(q, center) - d(tuple, center)| is larger than the
+     * search radius.
+     *
+     * @return A SearchResult when the Tuple is within the radius, otherwise null
+     */
+    SearchResult<K, V> measure(Tuple<K, V> tuple, DataPage<K, V> page, DistBtw<K> leaf, double radius) {
+
+        double distToCenter = page.distToCenter(tuple.id());
+        if (!Double.isNaN(distToCenter) && Math.abs(leaf.distance() - distToCenter) > radius) {
+            distanceCalcsSaved.increment();
+            return null;
+        }
+
+        double dist = distanceBtw(searchKey, tuple.key());
+        return dist <= radius ? new SearchResult<>(tuple, dist) : null;
+    }
+
+    /** @return The smallest distance any Tuple inside this node could have to the search key. */
+    static double lowerBound(DistBtw<?> dist) {
+        return Math.max(0, dist.distance() - dist.node().radius());
+    }
+
+    DataPage<K, V> loadPage(NodeHeader<K> leaf) {
+        pagesLoaded.increment();
+        return tree.dataPageAt(leaf.id());
+    }
+
+    List<NodeHeader<K>> loadChildren(NodeHeader<K> innerNode) {
+        List<NodeHeader<K>> children = tree.nodesBelow(innerNode);
+        headersLoaded.add(children.size());
+        return children;
+    }
+
+    /** Count NodeHeaders that were loaded by the caller (e.g., the root or a BatchSearch). */
+    void headersLoadedElsewhere(int numHeaders) {
+        headersLoaded.add(numHeaders);
+    }
+
+    /** Count a DataPage that was loaded by the caller (e.g., a BatchSearch). */
+    void pageLoadedElsewhere() {
+        pagesLoaded.increment();
+    }
+
+    /** Count DistanceMetric executions the caller avoided by reusing a measured distance. */
+    void distanceCalcsSaved(int numSaved) {
+        distanceCalcsSaved.add(numSaved);
+    }
+
+    int pagesLoaded() {
+        return pagesLoaded.intValue();
+    }
+
+    /** Keep every node distance measured from now on. */
+    void rememberNodeDistances() {
+        this.nodeDistances = new HashMap<>();
+    }
+
+    /** @return The distance between the search key and each node measured (by node id). */
+    Map<TimeId, Double> nodeDistances() {
+        return isNull(nodeDistances) ? Map.of() : Collections.unmodifiableMap(nodeDistances);
+    }
+
+    /** @return Counters that describe how much of the tree the search touched. */
+    SearchStats stats(int nodesVisited) {
+        return new SearchStats(
+                nodesVisited,
+                headersLoaded.intValue(),
+                pagesLoaded.intValue(),
+                distanceCalcs.intValue(),
+                distanceCalcsSaved.intValue());
+    }
+
+    private double distanceBtw(K one, K two) {
+        distanceCalcs.increment();
+        return tree.config().distMetric().distanceBtw(one, two);
+    }
+}
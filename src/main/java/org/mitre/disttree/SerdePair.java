@@ -42,7 +42,8 @@ public record SerdePair<K, V>(Serde<K> keySerde, Serde<V> valueSerde) {
                 typedPage.id(),
                 typedPage.tuples().stream()
                         .map(typedTuple -> serialize(typedTuple))
-                        .collect(toSet()));
+                        .collect(toSet()),
+                typedPage.centerDists());
     }
 
     public List<TupleAssignment<byte[], byte[]>> serializeAssignments(List<TupleAssignment<K, V>> assignments) {
@@ -52,12 +53,14 @@ public record SerdePair<K, V>(Serde<K> keySerde, Serde<V> valueSerde) {
     }
 
     public TupleAssignment<byte[], byte[]> serializeAssignment(TupleAssignment<K, V> ta) {
-        return new TupleAssignment<>(serialize(ta.tuple()), ta.pageId());
+        return new TupleAssignment<>(serialize(ta.tuple()), ta.pageId(), ta.distToCenter());
     }
 
     public DataPage<K, V> deserialize(DataPage<byte[], byte[]> binary) {
         return new DataPage<>(
-                binary.id(), binary.tuples().stream().map(e -> deserialize(e)).collect(toSet()));
+                binary.id(),
+                binary.tuples().stream().map(e -> deserialize(e)).collect(toSet()),
+                binary.centerDists());
     }
 
     public NodeHeader<byte[]> serializeHeader(NodeHeader<K> node) {
@@ -75,12 +78,14 @@ public record SerdePair<K, V>(Serde<K> keySerde, Serde<V> valueSerde) {
                 keySerde.fromBytes(node.center()),
                 node.radius(),
                 node.childNodes(),
-                node.numTuples());
+                node.numTuples(),
+                node.distToParent());
     }
 
     public TreeTransaction<byte[], byte[]> serializeTransaction(TreeTransaction<K, V> typedTransaction) {
 
         return new TreeTransaction<>(
+                typedTransaction.transactionId(),
                 typedTransaction.expectedTreeId(),
                 serializeHeaders(typedTransaction.createdNodes()),
                 serializeHeaders(typedTransaction.updatedNodes()),
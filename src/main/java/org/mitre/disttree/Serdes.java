@@ -82,6 +82,7 @@ public class Serdes {
                 keySerde.toBytes(node.center()),
                 node.radius(),
                 node.childNodes(),
-                node.numTuples());
+                node.numTuples(),
+                node.distToParent());
     }
 }
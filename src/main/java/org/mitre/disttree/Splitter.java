@@ -1,11 +1,19 @@
 package org.mitre.disttree;
 
 import static java.lang.Math.max;
+import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import org.mitre.caasd.commons.ids.TimeId;
 
 /**
  * A Splitter hides the implementation responsible for selecting the center point of new Nodes in
@@ -13,17 +21,39 @@ import java.util.TreeSet;
  */
 public class Splitter<K, V> {
 
+    /**
+     * When a Splitter has a ForkJoinPool, splits with at least this many Tuples measure the Tuples
+     * against the new centers in parallel.
+     */
+    static final int PARALLEL_SPLIT_THRESHOLD = 10_000;
+
     private final DistanceMetric<K> distMetric;
 
     private final CenterSelector<K> centerSelectorStrategy;
 
+    /**
+     * Runs big splits in parallel, null means every split happens on the calling thread. A
+     * DistanceMetric is not required to be thread-safe, so only callers that opt in provide a pool.
+     */
+    private final ForkJoinPool pool;
+
     public Splitter(DistanceMetric<K> metric) {
         this(metric, CenterSelectors.maxOfRandomSamples());
     }
 
     public Splitter(DistanceMetric<K> metric, CenterSelector<K> strategy) {
+        this(metric, strategy, null);
+    }
+
+    /**
+     * @param metric   Measures the distance between keys
+     * @param strategy Selects the center points of the new groups
+     * @param pool     Measures big splits in parallel (null = use the calling thread)
+     */
+    Splitter(DistanceMetric<K> metric, CenterSelector<K> strategy, ForkJoinPool pool) {
         this.distMetric = requireNonNull(metric);
         this.centerSelectorStrategy = requireNonNull(strategy);
+        this.pool = pool;
     }
 
     public List<K> split(List<K> keys) {
@@ -32,8 +62,19 @@ public class Splitter<K, V> {
 
     public record SplitResult<K, V>(Stub<K, V> left, Stub<K, V> right) {}
 
-    /** A Stub provides enough info to make a NodeHeader and DataPage for each Split. */
-    public record Stub<K, V>(K center, Set<Tuple<K, V>> tuples, double radius) {}
+    /**
+     * A Stub provides enough info to make a NodeHeader and DataPage for each Split. The centerDists
+     * map (tuple id to distance from the stub's center) is empty when the distances were not
+     * computed.
+     */
+    public record Stub<K, V>(K center, Set<Tuple<K, V>> tuples, double radius, Map<TimeId, Double> centerDists) {
+
+        /** @return The distance between this tuple's key and the stub's center (NaN when unknown). */
+        public double distToCenter(Tuple<K, V> tuple) {
+            Double dist = centerDists.get(tuple.id());
+            return dist == null ? Double.NaN : dist;
+        }
+    }
 
     /**
      * Split a DataPage that is too big to be "legally" retain in the tree.
@@ -41,8 +82,19 @@ public class Splitter<K, V> {
      * @return A SplitResult which contains the stubs of the new DataPages.
      */
     public SplitResult<K, V> splitCarefully(DataPage<K, V> overflowingNode) {
+        return splitCarefully(overflowingNode.tuples());
+    }
 
-        List<K> newCenters = centerSelectorStrategy.selectCenterPoints(overflowingNode.keyList(), distMetric);
+    /**
+     * Split a collection of Tuples into two groups (each with its own center point). Each Tuple is
+     * assigned to the group whose center is closest.
+     *
+     * @return A SplitResult which contains the stubs of the two groups.
+     */
+    public SplitResult<K, V> splitCarefully(Collection<Tuple<K, V>> tuples) {
+
+        List<K> keys = tuples.stream().map(Tuple::key).toList();
+        List<K> newCenters = centerSelectorStrategy.selectCenterPoints(keys, distMetric);
 
         /*
          * This helper record gathers the info we need to correctly, and efficiently, choose which
@@ -50,17 +102,20 @@ public class Splitter<K, V> {
          */
         record DistanceInfoPair<K, V>(Tuple<K, V> tuple, double leftDist, double rightDist) {}
 
-        // Collect the distance info we need....
-        List<DistanceInfoPair<K, V>> distInfo = overflowingNode.tuples().stream()
-                .map(tuple -> new DistanceInfoPair<>(
-                        tuple,
-                        distMetric.distanceBtw(newCenters.get(0), tuple.key()),
-                        distMetric.distanceBtw(newCenters.get(1), tuple.key())))
-                .toList();
+        // Collect the distance info we need (in parallel for big splits, the output order is unchanged)
+        Function<Tuple<K, V>, DistanceInfoPair<K, V>> measure = tuple -> new DistanceInfoPair<>(
+                tuple,
+                distMetric.distanceBtw(newCenters.get(0), tuple.key()),
+                distMetric.distanceBtw(newCenters.get(1), tuple.key()));
+        List<DistanceInfoPair<K, V>> distInfo = nonNull(pool) && tuples.size() >= PARALLEL_SPLIT_THRESHOLD
+                ? pool.submit(() -> tuples.parallelStream().map(measure).toList()).join()
+                : tuples.stream().map(measure).toList();
 
         // Now that we have the info we need create the components of left and right child
         TreeSet<Tuple<K, V>> leftTuples = new TreeSet<>();
         TreeSet<Tuple<K, V>> rightTuples = new TreeSet<>();
+        Map<TimeId, Double> leftDists = new HashMap<>();
+        Map<TimeId, Double> rightDists = new HashMap<>();
         double leftRadius = 0;
         double rightRadius = 0;
         boolean tieBreaker = false;
@@ -71,24 +126,28 @@ public class Splitter<K, V> {
                 // use the tiebreaker when distances are equal
                 if (tieBreaker) {
                     leftTuples.add(distPair.tuple);
+                    leftDists.put(distPair.tuple.id(), distPair.leftDist);
                     leftRadius = max(leftRadius, distPair.leftDist);
                 } else {
                     rightTuples.add(distPair.tuple);
+                    rightDists.put(distPair.tuple.id(), distPair.rightDist);
                     rightRadius = max(rightRadius, distPair.rightDist);
                 }
                 tieBreaker = !tieBreaker; // alternate the tiebreaker
 
             } else if (distPair.leftDist < distPair.rightDist) {
                 leftTuples.add(distPair.tuple);
+                leftDists.put(distPair.tuple.id(), distPair.leftDist);
                 leftRadius = max(leftRadius, distPair.leftDist);
             } else {
                 rightTuples.add(distPair.tuple);
+                rightDists.put(distPair.tuple.id(), distPair.rightDist);
                 rightRadius = max(rightRadius, distPair.rightDist);
             }
         }
 
-        Stub<K, V> left = new Stub<>(newCenters.get(0), leftTuples, leftRadius);
-        Stub<K, V> right = new Stub<>(newCenters.get(1), rightTuples, rightRadius);
+        Stub<K, V> left = new Stub<>(newCenters.get(0), leftTuples, leftRadius, leftDists);
+        Stub<K, V> right = new Stub<>(newCenters.get(1), rightTuples, rightRadius, rightDists);
 
         return new SplitResult<>(left, right);
     }
@@ -117,8 +176,8 @@ public class Splitter<K, V> {
             tieBreaker = !tieBreaker; // alternate the tiebreaker
         }
 
-        Stub<K, V> left = new Stub<>(newCenters.get(0), leftTuples, 0);
-        Stub<K, V> right = new Stub<>(newCenters.get(1), rightTuples, 0);
+        Stub<K, V> left = new Stub<>(newCenters.get(0), leftTuples, 0, Map.of());
+        Stub<K, V> right = new Stub<>(newCenters.get(1), rightTuples, 0, Map.of());
 
         return new SplitResult<>(left, right);
     }
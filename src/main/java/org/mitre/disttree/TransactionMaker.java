@@ -13,7 +13,9 @@ import static org.mitre.disttree.Ops.TreeOperation;
 import static org.mitre.disttree.TupleAssignment.assign;
 import static org.mitre.disttree.VerifyingDistanceMetric.verifyDistances;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
@@ -35,6 +37,9 @@ class TransactionMaker<K, V> {
 
     static final Logger LOGGER = LoggerFactory.getLogger(TransactionMaker.class);
 
+    /** A leaf is underfull when it holds less than 1/4th of the maxTuplesPerPage. */
+    private static final int MIN_FILL_DIVISOR = 4;
+
     private final Batch<K, V> batch;
 
     // How many "old DataPages" should this transaction refresh?
@@ -44,6 +49,12 @@ class TransactionMaker<K, V> {
 
     private final DistanceMetric<K> distMetric;
 
+    // Distances between the batch's keys and node centers measured on the unaltered tree
+    private final Map<TimeId, Map<TimeId, Double>> knownDistances;
+
+    // Leaves that shrink below this size (after Tuples are deleted) are merged into their neighbors
+    private final int minTuplesPerLeaf;
+
     // If we ever change up the Splitting strategy this field will need to be injected
     private final Splitter<K, V> splitter;
 
@@ -54,6 +65,19 @@ class TransactionMaker<K, V> {
      * @param batch The data being added to the Tree
      */
     TransactionMaker(InternalTree<K, V> tree, Batch<K, V> batch) {
+        this(tree, batch, Map.of());
+    }
+
+    /**
+     * Create a TransactionMaker that routes the batch's tuples using node distances that were
+     * already measured (e.g., by Searches for the same tuples).
+     *
+     * @param tree           The Tree this TransactionMaker will mutate
+     * @param batch          The data being added to the Tree
+     * @param knownDistances Measured distances between tuples and node centers (tupleId -> nodeId
+     *                       -> distance)
+     */
+    TransactionMaker(InternalTree<K, V> tree, Batch<K, V> batch, Map<TimeId, Map<TimeId, Double>> knownDistances) {
         requireNonNull(tree);
         // commenting this out to support "repack transactions" ... might be a better way
         //        requireNonNull(batch);
@@ -63,6 +87,8 @@ class TransactionMaker<K, V> {
         this.treeDiff = new TreeDiffTracker<>(tree);
         this.distMetric = verifyDistances(tree.config().distMetric());
         this.splitter = new Splitter<>(distMetric);
+        this.knownDistances = requireNonNull(knownDistances);
+        this.minTuplesPerLeaf = tree.config().maxTuplesPerPage() / MIN_FILL_DIVISOR;
     }
 
     TreeTransaction<K, V> computeTransaction() {
@@ -76,7 +102,7 @@ class TransactionMaker<K, V> {
         // (so it know when to use CREATE instead of UPDATE)
         treeDiff.setIdsOfNewTuples(batch.entryIds());
 
-        OpList<K, V> opList = treeDiff.basicOpsFor(batch);
+        OpList<K, V> opList = treeDiff.basicOpsFor(batch, knownDistances);
         return asTreeTransaction(opList);
     }
 
@@ -124,8 +150,7 @@ class TransactionMaker<K, V> {
         leavesToRepack.forEach(id -> LOGGER.atTrace().log("Repacking: {} ", id));
 
         // Get a list of all the tuples across all the leaves that need to be repacked
-        List<Tuple<K, V>> tuplesToRepack = leavesToRepack.stream()
-                .map(id -> treeDiff.curDataPageAt(id))
+        List<Tuple<K, V>> tuplesToRepack = treeDiff.curDataPagesAt(leavesToRepack).stream()
                 .flatMap(page -> page.tuples().stream())
                 .toList();
 
@@ -270,6 +295,132 @@ class TransactionMaker<K, V> {
         return treeDiff.asTransaction();
     }
 
+    /**
+     * Compute a TreeTransaction that deletes some Tuples and replaces the values of others. Only the
+     * DataPages holding these Tuples are rewritten, so the cost of this transaction is proportional
+     * to the number of edited Tuples (not the size of the tree).
+     * <p>
+     * A leaf that loses all its Tuples is removed from the tree without reading its DataPage (so
+     * whole subtrees of expired data can be dropped cheaply). A leaf that becomes underfull is
+     * merged into its neighbors (i.e., the leaf is removed and its remaining Tuples are reinserted).
+     * The radius of a shrinking leaf is tightened when the distances to its center are known. The
+     * radii of inner nodes are left alone, they are still valid (just loose) and will shrink when
+     * the leaves below them are rebuilt.
+     *
+     * @param pageIds   The id of the DataPage holding each edited Tuple (tupleId -> pageId)
+     * @param deletions The ids of the Tuples being deleted
+     * @param newValues The replacement values of the Tuples being updated (tupleId -> value)
+     */
+    TreeTransaction<K, V> editTuples(Map<TimeId, TimeId> pageIds, Set<TimeId> deletions, Map<TimeId, V> newValues) {
+        checkState(!treeDiff.wasBuilt, "Can use exactly once");
+
+        Map<TimeId, Integer> numDeletedFromPage = new HashMap<>();
+        pageIds.forEach((tupleId, pageId) -> {
+            if (deletions.contains(tupleId)) {
+                numDeletedFromPage.merge(pageId, 1, Integer::sum);
+            }
+        });
+
+        Set<TimeId> underfullLeaves = new TreeSet<>();
+
+        for (TimeId pageId : new TreeSet<>(pageIds.values())) {
+
+            NodeHeader<K> leaf = treeDiff.curNodeAt(pageId);
+
+            if (numDeletedFromPage.getOrDefault(pageId, 0) == leaf.numTuples()) {
+                // Every Tuple is deleted, so the DataPage can be dropped without reading it
+                treeDiff.deletePage(pageId);
+                removeNodeFromTree(leaf);
+                continue;
+            }
+
+            DataPage<K, V> page = treeDiff.curDataPageAt(pageId);
+
+            // The DataPage is rebuilt from scratch using only the surviving Tuples
+            treeDiff.deletePage(pageId);
+
+            List<TupleAssignment<K, V>> survivors = page.tuples().stream()
+                    .filter(tuple -> !deletions.contains(tuple.id()))
+                    .map(tuple -> assign(withNewValue(tuple, newValues), pageId, page.distToCenter(tuple.id())))
+                    .toList();
+            treeDiff.putAllTuples(survivors);
+
+            if (survivors.size() == page.size()) {
+                // Only values changed, the leaf's NodeHeader is still correct
+                continue;
+            }
+
+            if (survivors.isEmpty()) {
+                removeNodeFromTree(leaf);
+                continue;
+            }
+
+            NodeHeader<K> smallerLeaf = leaf.withTupleCount(survivors.size(), tightRadius(leaf, survivors));
+            treeDiff.putNode(smallerLeaf);
+
+            if (smallerLeaf.numTuples() < minTuplesPerLeaf) {
+                underfullLeaves.add(pageId);
+            }
+        }
+
+        mergeLeaves(underfullLeaves);
+
+        return treeDiff.asTransaction();
+    }
+
+    private static <K, V> Tuple<K, V> withNewValue(Tuple<K, V> tuple, Map<TimeId, V> newValues) {
+        if (!newValues.containsKey(tuple.id())) {
+            return tuple;
+        }
+        return new Tuple<>(tuple.id(), tuple.key(), newValues.get(tuple.id()));
+    }
+
+    /** @return The largest distToCenter of these Tuples, or the leaf's radius when any distance is unknown. */
+    private static <K, V> double tightRadius(NodeHeader<K> leaf, List<TupleAssignment<K, V>> assignments) {
+        double radius = 0;
+        for (TupleAssignment<K, V> ta : assignments) {
+            if (!ta.hasDistToCenter()) {
+                return leaf.radius();
+            }
+            radius = Math.max(radius, ta.distToCenter());
+        }
+        return radius;
+    }
+
+    /**
+     * Remove these leaves from the tree and reinsert their Tuples into the remaining leaves. Nothing
+     * happens when these are the only leaves in the tree (the Tuples would have nowhere to go).
+     */
+    private void mergeLeaves(Set<TimeId> leavesToMerge) {
+
+        if (leavesToMerge.isEmpty() || treeDiff.numLeafNodes() <= leavesToMerge.size()) {
+            return;
+        }
+
+        LOGGER.atTrace()
+                .setMessage("Merging {} underfull leaves")
+                .addArgument(leavesToMerge.size())
+                .log();
+
+        List<Tuple<K, V>> tuplesToMove = treeDiff.curDataPagesAt(leavesToMerge).stream()
+                .flatMap(page -> page.tuples().stream())
+                .toList();
+
+        leavesToMerge.forEach(id -> removeNodeFromTree(treeDiff.curNodeAt(id)));
+
+        // Generate the TreeOperation required to "reinsert" these tuples into the tree
+        List<TreeOperation<K, V>> rawOps = tuplesToMove.stream()
+                .flatMap(entry -> treeDiff.basicOpsFor(entry).stream())
+                .toList();
+
+        OpList<K, V> opList = new OpList<>(rawOps);
+
+        treeDiff.putAllNodes(opList.resultingHeaders());
+        treeDiff.putAllTuples(opList.tupleAssignments());
+
+        splitNodesCarefully();
+    }
+
     /**
      * This is a recursive function, it will remove a node's parent node when necessary.
      *
@@ -283,6 +434,11 @@ class TransactionMaker<K, V> {
 
         treeDiff.deleteNode(deleteMe.id());
 
+        if (deleteMe.isRoot()) {
+            // Every Tuple was deleted, the tree is now empty
+            return;
+        }
+
         NodeHeader<K> parent = treeDiff.curNodeAt(deleteMe.parent());
         NodeHeader<K> smallerParent = parent.removeChild(deleteMe.id());
         // ^^^^ This is the mutation that gets lost if we just use TimeIds
@@ -466,8 +622,10 @@ class TransactionMaker<K, V> {
         //  Reinsert the entry data...
         var leftEntries = split.left().tuples();
         var rightEntries = split.right().tuples();
-        leftEntries.forEach(tuple -> treeDiff.putTupleAssignment(assign(tuple, leftLeaf.id())));
-        rightEntries.forEach(tuple -> treeDiff.putTupleAssignment(assign(tuple, rightLeaf.id())));
+        leftEntries.forEach(tuple -> treeDiff.putTupleAssignment(
+                assign(tuple, leftLeaf.id(), split.left().distToCenter(tuple))));
+        rightEntries.forEach(tuple -> treeDiff.putTupleAssignment(
+                assign(tuple, rightLeaf.id(), split.right().distToCenter(tuple))));
     }
 
     /**
@@ -538,7 +696,8 @@ class TransactionMaker<K, V> {
             // @todo -- these nodes MAY OR MAY NOT have been altered, this is "writing too much"
             // Some child nodes may not change parent node didn't change don't need to be sent (because they didn't
             // change!)
-            treeDiff.putNode(node);
+            // The parent keeps its id but gets a new center, so each child's distToParent is reset
+            treeDiff.putNode(node.withParent(replacement.id()));
         }
 
         // The children of the sibling need to have their parent node updated...
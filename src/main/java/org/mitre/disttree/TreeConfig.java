@@ -36,6 +36,17 @@ public class TreeConfig<K, V> {
         READ_AND_WRITE
     }
 
+    /**
+     * Controls the order in which a Search explores the tree. DEPTH_FIRST = Explore the children
+     * of the most recently visited node first (closest child first). BEST_FIRST = Always explore
+     * the node (anywhere in the tree) whose sphere is closest to the search key. BEST_FIRST
+     * usually reaches the k-th nearest neighbor sooner, so kNN searches load fewer DataPages.
+     */
+    public enum SearchStrategy {
+        DEPTH_FIRST,
+        BEST_FIRST
+    }
+
     static final Logger LOGGER = LoggerFactory.getLogger(TreeConfig.class);
 
     /** The maximum number of childNodes each RoutingNode may have. */
@@ -62,6 +73,17 @@ public class TreeConfig<K, V> {
 
     final ReadWriteMode readWriteMode;
 
+    final SearchStrategy searchStrategy;
+
+    /** Inner NodeHeaders in this many levels of the tree are kept in memory (0 = disabled). */
+    final int residentLevels;
+
+    /** The max number of deserialized NodeHeaders InternalTree caches (0 = disabled). */
+    final int headerCacheSize;
+
+    /** Batches with at least this many Tuples are routed to their leaves in parallel (0 = disabled). */
+    final int parallelRoutingThreshold;
+
     public TreeConfig() {
         this(builder());
     }
@@ -76,6 +98,10 @@ public class TreeConfig<K, V> {
         this.serde = new SerdePair<>(keySerde, valueSerde);
         this.repackingMode = builder.repackingMode;
         this.readWriteMode = builder.readWriteMode;
+        this.searchStrategy = builder.searchStrategy;
+        this.residentLevels = builder.residentLevels;
+        this.headerCacheSize = builder.headerCacheSize;
+        this.parallelRoutingThreshold = builder.parallelRoutingThreshold;
 
         LOGGER.atInfo()
                 .setMessage("TreeConfig.branchingFactor: {}")
@@ -94,6 +120,22 @@ public class TreeConfig<K, V> {
                 .setMessage("TreeConfig.readWriteMode: {}")
                 .addArgument(readWriteMode)
                 .log();
+        LOGGER.atInfo()
+                .setMessage("TreeConfig.searchStrategy: {}")
+                .addArgument(searchStrategy)
+                .log();
+        LOGGER.atInfo()
+                .setMessage("TreeConfig.residentLevels: {}")
+                .addArgument(residentLevels)
+                .log();
+        LOGGER.atInfo()
+                .setMessage("TreeConfig.headerCacheSize: {}")
+                .addArgument(headerCacheSize)
+                .log();
+        LOGGER.atInfo()
+                .setMessage("TreeConfig.parallelRoutingThreshold: {}")
+                .addArgument(parallelRoutingThreshold)
+                .log();
         LOGGER.atInfo()
                 .setMessage("TreeConfig.distMetric: {}")
                 .addArgument(distMetric.innerMetric().getClass().getSimpleName())
@@ -112,6 +154,33 @@ public class TreeConfig<K, V> {
                 .log();
     }
 
+    /**
+     * Copy a TreeConfig for a read-only TreeSnapshot. The copy shares the DistanceMetric (and its
+     * execution count) but reads from the Snapshot. Resident NodeHeaders are disabled because each
+     * TreeSnapshot would otherwise eagerly load its own copy of the upper levels of the tree.
+     */
+    private TreeConfig(TreeConfig<K, V> source, DataStore.Snapshot snapshot) {
+        this.branchingFactor = source.branchingFactor;
+        this.maxTuplesPerPage = source.maxTuplesPerPage;
+        this.distMetric = source.distMetric;
+        this.dataStore = snapshot;
+        this.keySerde = source.keySerde;
+        this.valueSerde = source.valueSerde;
+        this.serde = source.serde;
+        this.repackingMode = source.repackingMode;
+        this.readWriteMode = READ_ONLY;
+        this.searchStrategy = source.searchStrategy;
+        this.residentLevels = 0;
+        this.headerCacheSize = source.headerCacheSize;
+        this.parallelRoutingThreshold = source.parallelRoutingThreshold;
+    }
+
+    /** @return A READ_ONLY copy of this TreeConfig that reads from this Snapshot. */
+    TreeConfig<K, V> forSnapshot(DataStore.Snapshot snapshot) {
+        requireNonNull(snapshot);
+        return new TreeConfig<>(this, snapshot);
+    }
+
     public int branchingFactor() {
         return branchingFactor;
     }
@@ -138,6 +207,10 @@ public class TreeConfig<K, V> {
         int maxTuplesPerPage = 50;
         RepackingMode repackingMode = INCREMENTAL_LN;
         ReadWriteMode readWriteMode = READ_AND_WRITE;
+        SearchStrategy searchStrategy = SearchStrategy.BEST_FIRST;
+        int residentLevels = 0;
+        int headerCacheSize = 10_000;
+        int parallelRoutingThreshold = 0;
         DataStore dataStore = null; // A default DuckDbStore is loaded at "build()" if this is null
 
         DistanceMetric<K> distMetric;
@@ -215,6 +288,60 @@ public class TreeConfig<K, V> {
             return this;
         }
 
+        /** Searches always explore the node closest to the search key next. */
+        public Builder<K, V> bestFirstSearch() {
+            return searchStrategy(SearchStrategy.BEST_FIRST);
+        }
+
+        /** Searches explore the children of the most recently visited node next. */
+        public Builder<K, V> depthFirstSearch() {
+            return searchStrategy(SearchStrategy.DEPTH_FIRST);
+        }
+
+        public Builder<K, V> searchStrategy(SearchStrategy strategy) {
+            requireNonNull(strategy);
+            this.searchStrategy = strategy;
+            return this;
+        }
+
+        /**
+         * Keep the inner NodeHeaders in the top n levels of the tree deserialized and in memory.
+         * Every insert and search walks these nodes, so this removes most header I/O. Use 0 to
+         * disable.
+         */
+        public Builder<K, V> residentLevels(int n) {
+            checkArgument(n >= 0);
+            this.residentLevels = n;
+            return this;
+        }
+
+        /** Keep every inner NodeHeader deserialized and in memory (only leaf nodes require I/O). */
+        public Builder<K, V> residentInnerNodes() {
+            return residentLevels(Integer.MAX_VALUE);
+        }
+
+        /**
+         * Cache up to n deserialized NodeHeaders so a NodeHeader's center Key is not rebuilt from
+         * bytes every time the node is visited. Use 0 to disable.
+         */
+        public Builder<K, V> headerCacheSize(int n) {
+            checkArgument(n >= 0);
+            this.headerCacheSize = n;
+            return this;
+        }
+
+        /**
+         * Route the Tuples in a Batch to their leaf nodes in parallel (using the common ForkJoinPool)
+         * when the Batch has at least n Tuples. Routing dominates insertion cost when the
+         * DistanceMetric is expensive. Parallel routing is disabled by default (0) because it
+         * requires a thread-safe DistanceMetric.
+         */
+        public Builder<K, V> parallelRoutingThreshold(int n) {
+            checkArgument(n >= 0);
+            this.parallelRoutingThreshold = n;
+            return this;
+        }
+
         public TreeConfig<K, V> build() {
             requireNonNull(distMetric, "The distMetric was not specified");
             requireNonNull(keySerde, "The keySerde was not specified");
@@ -1,10 +1,11 @@
 package org.mitre.disttree;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Lists.newArrayList;
-import static com.google.common.collect.Lists.newLinkedList;
 import static java.util.Collections.emptyList;
 import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toCollection;
 import static org.mitre.disttree.DataPage.merge;
@@ -13,7 +14,8 @@ import static org.mitre.disttree.DistBtw.measureDistBtw;
 import static org.mitre.disttree.Misc.last;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.mitre.caasd.commons.ids.TimeId;
 import org.mitre.disttree.Ops.TupleOp;
@@ -59,6 +61,23 @@ class TreeDiffTracker<K, V> {
     /** All the tuples that will be touched (i.e. created or updated) during the transaction. */
     public final Map<TimeId, TupleAssignment<K, V>> tupleAssignments;
 
+    /** The same TupleAssignments as above, indexed by DataPage (pageId -> tupleId -> tuple). */
+    private final Map<TimeId, Map<TimeId, Tuple<K, V>>> tuplesByPage;
+
+    /**
+     * The ids of every NodeHeader in nodeUpdates that "isSplittable". This is the work queue used
+     * by TransactionMaker.splitNodes, it is maintained as NodeHeaders are put and deleted.
+     */
+    private final TreeSet<TimeId> splittableNodes;
+
+    /** The id of the root node in nodeUpdates (null when the root has not been altered). */
+    private TimeId alteredRootId;
+
+    /** The tree's root before this transaction (loaded at most once because the tree is fixed). */
+    private NodeHeader<K> initialRoot;
+
+    private boolean initialRootLoaded;
+
     /** The Ids of DataPages that are deleted during the transaction. */
     private final Set<TimeId> deletedPages;
 
@@ -96,6 +115,8 @@ class TreeDiffTracker<K, V> {
         this.nodeUpdates = new TreeMap<>();
 
         this.tupleAssignments = new TreeMap<>();
+        this.tuplesByPage = new HashMap<>();
+        this.splittableNodes = new TreeSet<>();
 
         this.deletedPages = new TreeSet<>();
         this.deletedNodes = new TreeSet<>();
@@ -130,6 +151,18 @@ class TreeDiffTracker<K, V> {
 
     void putNode(NodeHeader<K> node) {
         nodeUpdates.put(node.id(), node);
+
+        if (node.isSplittable(tree.config().branchingFactor(), tree.config().maxTuplesPerPage())) {
+            splittableNodes.add(node.id());
+        } else {
+            splittableNodes.remove(node.id());
+        }
+
+        if (node.isRoot()) {
+            alteredRootId = node.id();
+        } else if (node.hasId(alteredRootId)) {
+            alteredRootId = null; // the altered root was pushed down a level
+        }
     }
 
     void putAllNodes(Collection<NodeHeader<K>> nodes) {
@@ -139,10 +172,23 @@ class TreeDiffTracker<K, V> {
     void deleteNode(TimeId id) {
         deletedNodes.add(id);
         nodeUpdates.remove(id);
+        splittableNodes.remove(id);
+        if (id.equals(alteredRootId)) {
+            alteredRootId = null;
+        }
     }
 
     void putTupleAssignment(TupleAssignment<K, V> ta) {
-        tupleAssignments.put(ta.tuple().id(), ta);
+        TupleAssignment<K, V> replaced = tupleAssignments.put(ta.tuple().id(), ta);
+
+        if (nonNull(replaced)) {
+            Map<TimeId, Tuple<K, V>> oldPage = tuplesByPage.get(replaced.pageId());
+            oldPage.remove(replaced.tupleId());
+            if (oldPage.isEmpty()) {
+                tuplesByPage.remove(replaced.pageId());
+            }
+        }
+        tuplesByPage.computeIfAbsent(ta.pageId(), id -> new HashMap<>()).put(ta.tupleId(), ta.tuple());
     }
 
     void putAllTuples(Collection<TupleAssignment<K, V>> assignments) {
@@ -171,6 +217,12 @@ class TreeDiffTracker<K, V> {
 
         wasBuilt = true;
 
+        // Every new (or re-parented) node needs to know how far its center is from its parent's center
+        nodeUpdates.replaceAll((id, node) -> withDistToParent(node));
+
+        // Every assigned tuple needs to know how far its key is from its leaf's center
+        tupleAssignments.replaceAll((id, ta) -> withDistToCenter(ta));
+
         List<NodeHeader<K>> createdNodes = new ArrayList<>();
         List<NodeHeader<K>> updatedNodes = new ArrayList<>();
         nodeUpdates.values().forEach(node -> {
@@ -191,6 +243,24 @@ class TreeDiffTracker<K, V> {
                 deletedNodes);
     }
 
+    /** @return This node with a known distToParent (the DistanceMetric is only run when necessary). */
+    private NodeHeader<K> withDistToParent(NodeHeader<K> node) {
+        if (node.isRoot() || node.hasDistToParent()) {
+            return node;
+        }
+        NodeHeader<K> parent = curNodeAt(node.parent());
+        return node.withDistToParent(tree.config().distMetric.distanceBtw(node.center(), parent.center()));
+    }
+
+    /** @return This assignment with a known distToCenter (the DistanceMetric is only run when necessary). */
+    private TupleAssignment<K, V> withDistToCenter(TupleAssignment<K, V> ta) {
+        if (ta.hasDistToCenter()) {
+            return ta;
+        }
+        NodeHeader<K> leaf = curNodeAt(ta.pageId());
+        return ta.withDistToCenter(tree.config().distMetric.distanceBtw(ta.tuple().key(), leaf.center()));
+    }
+
     /**
      * Find the current version of a particular NodeHeader.  The node returned here will reflect any
      * changes that were submitted via the "putNode" methods.
@@ -202,10 +272,9 @@ class TreeDiffTracker<K, V> {
     NodeHeader<K> curNodeAt(TimeId id) {
         requireNonNull(id);
 
-        Optional<NodeHeader<K>> optHeader =
-                nodeUpdates.values().stream().filter(header -> header.hasId(id)).findFirst();
+        NodeHeader<K> altered = nodeUpdates.get(id);
 
-        return optHeader.isPresent() ? optHeader.get() : tree.nodeAt(id);
+        return nonNull(altered) ? altered : tree.nodeAt(id);
     }
 
     /**
@@ -220,12 +289,7 @@ class TreeDiffTracker<K, V> {
     DataPage<K, V> curDataPageAt(TimeId id) {
         requireNonNull(id);
 
-        Set<Tuple<K, V>> tuplesInThisPage = tupleAssignments.values().stream()
-                .filter(ta -> ta.hasPageId(id))
-                .map(ta -> ta.tuple())
-                .collect(Collectors.toSet());
-
-        DataPage<K, V> page = new DataPage<>(id, tuplesInThisPage); // may be empty
+        DataPage<K, V> page = new DataPage<>(id, newTuplesAt(id)); // may be empty
 
         if (deletedPages.contains(id)) {
             // This leaf was deleted earlier in this transaction (probably during a split),
@@ -239,16 +303,20 @@ class TreeDiffTracker<K, V> {
         }
     }
 
+    /** @return The Tuples assigned to this DataPage during this transaction. */
+    private Set<Tuple<K, V>> newTuplesAt(TimeId pageId) {
+        Map<TimeId, Tuple<K, V>> tuples = tuplesByPage.get(pageId);
+        return isNull(tuples) ? new HashSet<>() : new HashSet<>(tuples.values());
+    }
+
     /** @return A NodeHeader where "isSplittable" is true */
     NodeHeader<K> findOneSplittableNode() {
 
-        int maxChildren = tree.config().branchingFactor();
-        int maxTuples = tree.config().maxTuplesPerPage();
+        if (splittableNodes.isEmpty()) {
+            throw new AssertionError(); // it's a logic error to call when there is no splittable node
+        }
 
-        NodeHeader<K> bigNode = nodeUpdates.values().stream()
-                .filter(header -> header.isSplittable(maxChildren, maxTuples))
-                .findFirst()
-                .orElseThrow(AssertionError::new); // it's a logic error to call when there is no splittable node
+        NodeHeader<K> bigNode = nodeUpdates.get(splittableNodes.first());
 
         LOGGER.atTrace()
                 .setMessage("Splitting {}: {} because it has {} {}")
@@ -263,11 +331,7 @@ class TreeDiffTracker<K, V> {
 
     /** @return True if the "working set" of NodeHeaders contains a NodeHeader that isSplittable. */
     boolean hasSplittableHeader() {
-
-        int branchingFactor = tree.config().branchingFactor();
-        int maxTuplesPerPage = tree.config().maxTuplesPerPage();
-
-        return nodeUpdates.values().stream().anyMatch(node -> node.isSplittable(branchingFactor, maxTuplesPerPage));
+        return !splittableNodes.isEmpty();
     }
 
     /**
@@ -282,14 +346,46 @@ class TreeDiffTracker<K, V> {
      *     node, or increasing the "child count" of a leaf node)
      */
     OpList<K, V> basicOpsFor(Batch<K, V> batch) {
+        return basicOpsFor(batch, Map.of());
+    }
 
-        List<Ops.TreeOperation<K, V>> basicOps = batch.tuples().stream()
-                .flatMap(tuple -> basicOpsFor(tuple).stream())
-                .toList();
+    /**
+     * Deduces the TreeOperations needed to insert a batch of tuples while reusing distances that
+     * were measured on this tree's initial state (e.g., by Searches for the same tuples).
+     * <p>
+     * WARNING: The known distances are only valid before this transaction alters any NodeHeader
+     * (splitting a node can give an existing node id a new center).
+     *
+     * @param batch          A batch of Tuples being added to the tree
+     * @param knownDistances Distances between tuple keys and node centers measured on the initial
+     *                       tree (tupleId -> nodeId -> distance)
+     */
+    OpList<K, V> basicOpsFor(Batch<K, V> batch, Map<TimeId, Map<TimeId, Double>> knownDistances) {
+        checkState(nodeUpdates.isEmpty(), "Known distances require the unaltered tree");
+
+        // Every descent reads the same unaltered tree, so the tuples can be routed independently
+        List<Tuple<K, V>> tuples = batch.tuples();
+        List<List<DistBtw<K>>> paths = pathsToLeavesFor(
+                tuples.stream().map(Tuple::key).toList(),
+                tuples.stream()
+                        .map(tuple -> knownDistances.getOrDefault(tuple.id(), Map.of()))
+                        .toList(),
+                routeInParallel(batch));
+
+        List<Ops.TreeOperation<K, V>> basicOps = new ArrayList<>();
+        for (int i = 0; i < tuples.size(); i++) {
+            basicOps.addAll(basicOpsFor(tuples.get(i), paths.get(i)));
+        }
 
         return new OpList<>(basicOps);
     }
 
+    /** @return True when this Batch is big enough to route in parallel (and the tree has a root). */
+    private boolean routeInParallel(Batch<K, V> batch) {
+        int threshold = tree.config().parallelRoutingThreshold;
+        return threshold > 0 && batch.tuples().size() >= threshold && nonNull(curRootNode());
+    }
+
     /**
      * Deduces the TreeOperations needed to insert a Tuple into this DistanceTree. Naively
      * performing this work causes a CASCADE of read operations to the underlying DataStore that is
@@ -303,9 +399,16 @@ class TreeDiffTracker<K, V> {
      *     node, or increasing the "child count" of a leaf node)
      */
     List<Ops.TreeOperation<K, V>> basicOpsFor(Tuple<K, V> tuple) {
+        return basicOpsFor(tuple, Map.of());
+    }
 
+    private List<Ops.TreeOperation<K, V>> basicOpsFor(Tuple<K, V> tuple, Map<TimeId, Double> knownDists) {
         // the IO reads necessary to build this path better be cached!
-        List<DistBtw<K>> path = pathToLeafFor(tuple.key());
+        return basicOpsFor(tuple, pathToLeafFor(tuple.key(), knownDists));
+    }
+
+    /** Convert the path a Tuple took to its leaf into TreeOperations. */
+    private List<Ops.TreeOperation<K, V>> basicOpsFor(Tuple<K, V> tuple, List<DistBtw<K>> path) {
 
         // the tree is completely empty!
         if (path.isEmpty()) {
@@ -319,8 +422,9 @@ class TreeDiffTracker<K, V> {
                 .collect(toCollection((ArrayList::new))); // (not toList() for mutability)
 
         // At the leafNode: Add the Tuple to the Tree & increase the size of the leaf
+        // The distance to the leaf's center was measured while routing, keep it so searches can use it
         NodeHeader<K> leafNode = last(path).node();
-        treeOps.add(new TupleOp<>(leafNode, tuple));
+        treeOps.add(new TupleOp<>(leafNode, tuple, last(path).distance()));
         treeOps.add(Ops.NodeOp.incrementTupleCount(leafNode));
 
         return treeOps;
@@ -339,6 +443,20 @@ class TreeDiffTracker<K, V> {
      *     distance of the node
      */
     List<DistBtw<K>> pathToLeafFor(K key) {
+        return pathToLeafFor(key, Map.of());
+    }
+
+    /**
+     * Compute the path to the leaf node whose center is closest to this key while reusing
+     * distances that were already measured (e.g., by a Search for this key).
+     *
+     * @param key        A Search Key
+     * @param knownDists Previously measured distances between this key and node centers (by node
+     *                   id)
+     *
+     * @return The list of Distance measurements for each step in the path.
+     */
+    List<DistBtw<K>> pathToLeafFor(K key, Map<TimeId, Double> knownDists) {
 
         NodeHeader<K> curNode = curRootNode();
 
@@ -350,72 +468,210 @@ class TreeDiffTracker<K, V> {
         List<DistBtw<K>> path = newArrayList();
 
         // handle root node
-        path.add(measureDistBtw(tree.config().distMetric, curNode, key));
+        Double rootDist = knownDists.get(curNode.id());
+        path.add(
+                nonNull(rootDist)
+                        ? new DistBtw<>(curNode, key, rootDist)
+                        : measureDistBtw(tree.config().distMetric, curNode, key));
 
-        List<NodeHeader<K>> nextLevelInTree = nodesBelow(curNode.id());
+        List<NodeHeader<K>> nextLevelInTree = nodesBelow(curNode);
 
         // now append a RouteDist object for each child node
         while (!nextLevelInTree.isEmpty()) {
-            DistBtw<K> bestChild = chooseClosest(tree.config().distMetric, nextLevelInTree, key);
+            // The parent's distance lets chooseClosest skip children that cannot be the closest
+            DistBtw<K> bestChild = chooseClosest(
+                    tree.config().distMetric, nextLevelInTree, key, last(path).distance(), knownDists);
             path.add(bestChild);
 
-            nextLevelInTree = nodesBelow(bestChild.node().id());
+            nextLevelInTree = nodesBelow(bestChild.node());
         }
 
         return path;
     }
 
+    /**
+     * Compute the path to the leaf node for every key in a batch. The keys descend the tree
+     * together, level by level. At each level the keys are grouped by the node they reached, the
+     * children of each of those nodes are fetched once, and then each group is routed against its
+     * shared list of children. Consequently, the number of header reads is the number of distinct
+     * nodes touched (not keys x depth).
+     * <p>
+     * Every key gets exactly the path pathToLeafFor would give it.
+     *
+     * @param keys       The keys being routed
+     * @param knownDists Previously measured distances for each key (in the same order as keys)
+     * @param inParallel When true, the keys in each level are routed concurrently (this requires
+     *                   the unaltered tree and a thread-safe DistanceMetric)
+     *
+     * @return The path for each key (in the same order as keys). Every path is empty when the tree
+     *     is empty.
+     */
+    List<List<DistBtw<K>>> pathsToLeavesFor(List<K> keys, List<Map<TimeId, Double>> knownDists, boolean inParallel) {
+        checkArgument(keys.size() == knownDists.size());
+
+        NodeHeader<K> root = curRootNode();
+
+        if (isNull(root)) {
+            return keys.stream().map(key -> List.<DistBtw<K>>of()).toList();
+        }
+
+        DistanceMetric<K> metric = tree.config().distMetric;
+
+        List<List<DistBtw<K>>> paths = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            K key = keys.get(i);
+            Double rootDist = knownDists.get(i).get(root.id());
+            List<DistBtw<K>> path = new ArrayList<>();
+            path.add(nonNull(rootDist) ? new DistBtw<>(root, key, rootDist) : measureDistBtw(metric, root, key));
+            paths.add(path);
+        }
+
+        // The indices of the keys that may not have reached a leaf yet
+        List<Integer> descending = IntStream.range(0, keys.size()).boxed().toList();
+
+        while (!descending.isEmpty()) {
+
+            // Fetch the children of each node this level's keys reached (once per node)
+            Map<TimeId, List<NodeHeader<K>>> childrenOf = new HashMap<>();
+            for (int i : descending) {
+                NodeHeader<K> node = last(paths.get(i)).node();
+                if (!childrenOf.containsKey(node.id())) {
+                    childrenOf.put(node.id(), nodesBelow(node));
+                }
+            }
+
+            // Keys whose node has no children (i.e., a leaf) are done
+            descending = descending.stream()
+                    .filter(i -> !childrenOf.get(last(paths.get(i)).node().id()).isEmpty())
+                    .toList();
+
+            // Each key only appends to its own path, so keys can be routed concurrently
+            Stream<Integer> indices = inParallel ? descending.parallelStream() : descending.stream();
+            indices.forEach(i -> {
+                List<DistBtw<K>> path = paths.get(i);
+                DistBtw<K> parent = last(path);
+                List<NodeHeader<K>> children = childrenOf.get(parent.node().id());
+                path.add(chooseClosest(metric, children, keys.get(i), parent.distance(), knownDists.get(i)));
+            });
+        }
+
+        return paths;
+    }
+
     List<NodeHeader<K>> nodesBelow(TimeId nodeId) {
+        return nodesBelow(curNodeAt(nodeId));
+    }
+
+    /**
+     * @return The current version of each child of this node. Children that were not altered
+     *     during this transaction are fetched from the tree with a single bulk read.
+     */
+    List<NodeHeader<K>> nodesBelow(NodeHeader<K> node) {
 
-        NodeHeader<K> node = curNodeAt(nodeId);
         if (node.isLeafNode()) {
             return emptyList();
         }
 
         List<TimeId> childIds = node.childNodes();
 
-        return childIds.stream()
-                .map(id -> curNodeAt(id))
-                .filter(Objects::nonNull)
-                .toList();
-    }
+        List<TimeId> unalteredIds =
+                childIds.stream().filter(id -> !nodeUpdates.containsKey(id)).toList();
 
-    NodeHeader<K> curRootNode() {
+        Map<TimeId, NodeHeader<K>> unalteredNodes = new HashMap<>();
+        tree.nodesAt(unalteredIds).forEach(child -> unalteredNodes.put(child.id(), child));
 
-        return nodeUpdates.values().stream()
-                .filter(node -> node.isRoot())
-                .findFirst()
-                .orElse(tree.rootNode());
+        List<NodeHeader<K>> children = new ArrayList<>(childIds.size());
+        for (TimeId id : childIds) {
+            NodeHeader<K> child = nodeUpdates.containsKey(id) ? nodeUpdates.get(id) : unalteredNodes.get(id);
+            if (nonNull(child)) {
+                children.add(child);
+            }
+        }
+        return children;
     }
 
-    List<NodeHeader<K>> leafNodes() {
+    /**
+     * Builds a view of the current version of several DataPages. The "preexisting" portion of
+     * these pages is fetched from the tree with a single bulk read.
+     *
+     * @param ids The ids of the DataPages being retrieved
+     *
+     * @return The "most up-to-date" edition of each requested DataPage (in the same order as ids)
+     */
+    List<DataPage<K, V>> curDataPagesAt(Collection<TimeId> ids) {
+        requireNonNull(ids);
+
+        List<TimeId> idsWithPriors =
+                ids.stream().filter(id -> !deletedPages.contains(id)).toList();
 
-        TreeMap<TimeId, NodeHeader<K>> uniqueNodes = new TreeMap<>();
+        Map<TimeId, DataPage<K, V>> priors = new HashMap<>();
+        tree.dataPagesAt(idsWithPriors).forEach(page -> priors.put(page.id(), page));
 
-        LinkedList<NodeHeader<K>> nodesToExplore = newLinkedList();
-        nodesToExplore.add(curRootNode());
+        List<DataPage<K, V>> pages = new ArrayList<>(ids.size());
+        for (TimeId id : ids) {
+            DataPage<K, V> page = new DataPage<>(id, newTuplesAt(id)); // may be empty
+            DataPage<K, V> prior = priors.get(id);
+            pages.add(isNull(prior) ? page : merge(page, prior));
+        }
+        return pages;
+    }
 
-        while (!nodesToExplore.isEmpty()) {
-            NodeHeader<K> current = nodesToExplore.removeFirst();
-            uniqueNodes.putIfAbsent(current.id(), current);
+    NodeHeader<K> curRootNode() {
 
-            nodesToExplore.addAll(nodesBelow(current.id()));
+        if (nonNull(alteredRootId)) {
+            return nodeUpdates.get(alteredRootId);
         }
 
-        return newArrayList(uniqueNodes.values()).stream()
-                .filter(node -> node.isLeafNode())
-                .toList();
+        if (!initialRootLoaded) {
+            initialRoot = tree.rootNode();
+            initialRootLoaded = true;
+        }
+        return initialRoot;
     }
 
+    /** @return The number of leaf nodes in the current version of the tree. */
     int numLeafNodes() {
-        return leafNodes().size();
+
+        // Start with the tree's leaf count, then apply the changes made during this transaction
+        LeafIndex leafIndex = tree.leafIndex();
+        int count = leafIndex.numLeaves();
+
+        for (TimeId id : deletedNodes) {
+            if (leafIndex.isLeaf(id)) {
+                count--;
+            }
+        }
+        for (NodeHeader<K> node : nodeUpdates.values()) {
+            boolean wasLeaf = leafIndex.isLeaf(node.id());
+            if (node.isLeafNode() && !wasLeaf) {
+                count++;
+            } else if (!node.isLeafNode() && wasLeaf) {
+                count--;
+            }
+        }
+        return count;
     }
 
+    /** @return The id of the oldest leaf node in the current version of the tree. */
     TimeId oldestLeafNode() {
 
-        return leafNodes().stream()
+        // The oldest leaf that already existed and was not deleted (or altered into an inner node)
+        TimeId oldestPriorLeaf = tree.leafIndex().oldestLeafWhere(id -> {
+            NodeHeader<K> altered = nodeUpdates.get(id);
+            return !deletedNodes.contains(id) && (isNull(altered) || altered.isLeafNode());
+        });
+
+        // Leaves created (or altered) during this transaction
+        Optional<TimeId> oldestAlteredLeaf = nodeUpdates.values().stream()
+                .filter(node -> node.isLeafNode())
                 .map(node -> node.id())
-                .min(Comparator.naturalOrder())
-                .get();
+                .min(Comparator.naturalOrder());
+
+        if (oldestAlteredLeaf.isEmpty()) {
+            return requireNonNull(oldestPriorLeaf);
+        }
+        return isNull(oldestPriorLeaf) || oldestAlteredLeaf.get().compareTo(oldestPriorLeaf) < 0
+                ? oldestAlteredLeaf.get()
+                : oldestPriorLeaf;
     }
 }
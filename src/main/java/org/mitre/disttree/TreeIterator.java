@@ -1,6 +1,7 @@
 package org.mitre.disttree;
 
 import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
 import java.util.ConcurrentModificationException;
@@ -41,7 +42,12 @@ public class TreeIterator<K, V> implements Iterator<DataPage<K, V>> {
         this.expectedTreeId = tree.lastTransactionId();
         this.preventMutation = preventMutation;
         this.nodesToTraverse = new Stack<>();
-        nodesToTraverse.push(tree.nodeAt(tree.rootId()));
+
+        // An empty tree (never filled, or every Tuple was deleted) has no root and no DataPages
+        NodeHeader<K> root = tree.rootNode();
+        if (nonNull(root)) {
+            nodesToTraverse.push(root);
+        }
     }
 
     @Override
@@ -65,8 +71,7 @@ public class TreeIterator<K, V> implements Iterator<DataPage<K, V>> {
                 return tree.dataPageAt(top.id());
             } else {
                 // top is an innerNode -- It should have children (otherwise it is malformed)
-                var childNodes =
-                        top.childNodes().stream().map(id -> tree.nodeAt(id)).toList();
+                var childNodes = tree.nodesAt(top.childNodes());
                 childNodes.forEach(child -> nodesToTraverse.push(child));
 
                 checkState(!nodesToTraverse.isEmpty(), "Stack should never be empty");
@@ -1,8 +1,14 @@
 package org.mitre.disttree;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.mitre.caasd.commons.ids.TimeId;
+
 /**
  * A TreeSearcher is a convenient, but non-public launch point for DistanceTree Searches.
  * <p>
@@ -51,6 +57,63 @@ class TreeSearcher<K, V> {
         return search.results();
     }
 
+    /**
+     * Perform an approximate k-Nearest-Neighbors search.
+     *
+     * @param searchKey     The point-in-space from which the closest tuples are found
+     * @param k             The number of tuples to search for
+     * @param approximation Limits how much of the tree the search explores
+     *
+     * @return A collection of n Key/Value Results that are close to the search key
+     */
+    SearchResults<K, V> getNClosest(K searchKey, int k, Approximation approximation) {
+        requireNonNull(searchKey);
+        requireNonNull(approximation);
+        checkArgument(k >= 1, "n must be at least 1");
+
+        Search<K, V> search = Search.knnSearch(searchKey, k, tree, approximation);
+        search.executeQuery();
+
+        return search.results();
+    }
+
+    /**
+     * Perform a k-Nearest-Neighbors search around a Tuple that is already in the tree. The search
+     * begins by ingesting the Tuple's own DataPage (found with the DataStore's tuple index), so it
+     * starts with a small search radius and prunes almost every other node.
+     *
+     * @param tupleId The id of a Tuple in the tree, its key is the search key
+     * @param k       The number of tuples to search for
+     *
+     * @return A collection of n Key/Value Results with the smallest distances to the Tuple's key
+     *     (this includes the Tuple itself).
+     * @throws IllegalArgumentException When the Tuple is not in the tree
+     */
+    SearchResults<K, V> getNClosestToTuple(TimeId tupleId, int k) {
+        requireNonNull(tupleId);
+        checkArgument(k >= 1, "n must be at least 1");
+
+        DataPage<K, V> page = tree.dataPageContaining(tupleId);
+        checkArgument(nonNull(page), "Tuple not found: %s", tupleId);
+
+        Tuple<K, V> tuple = page.tuples().stream()
+                .filter(t -> t.id().equals(tupleId))
+                .findFirst()
+                .orElseThrow();
+        NodeHeader<K> leaf = tree.nodeAt(page.id());
+
+        // The distance to the leaf's center is usually stored in the DataPage
+        double keyToCenter = page.distToCenter(tupleId);
+        if (Double.isNaN(keyToCenter)) {
+            keyToCenter = tree.config().distMetric().distanceBtw(tuple.key(), leaf.center());
+        }
+
+        Search<K, V> search = Search.knnSearch(tuple.key(), k, tree).startFromLeaf(leaf, page, keyToCenter);
+        search.executeQuery();
+
+        return search.results();
+    }
+
     /**
      * Perform a range query that find all Tuples within a fixed distance of the searchKey.
      *
@@ -69,4 +132,79 @@ class TreeSearcher<K, V> {
 
         return search.results();
     }
+
+    /**
+     * Perform a k-Nearest-Neighbors search for each of these keys using one shared traversal of
+     * the tree.
+     *
+     * @param searchKeys The points-in-space from which the closest tuples are found
+     * @param k          The number of tuples to search for (per key)
+     *
+     * @return One SearchResults for each search key (in the same order as the search keys)
+     */
+    List<SearchResults<K, V>> getNClosestForAll(List<K> searchKeys, int k) {
+        requireNonNull(searchKeys);
+        checkArgument(k >= 1, "n must be at least 1");
+
+        BatchSearch<K, V> batch = BatchSearch.knnSearches(searchKeys, k, tree);
+        batch.executeQueries();
+
+        return batch.results();
+    }
+
+    /**
+     * Perform a range query for each of these keys using one shared traversal of the tree.
+     *
+     * @param searchKeys The points-in-space from which the closest tuples are found
+     * @param range      The distance below which all tuples are included in the output.
+     *
+     * @return One SearchResults for each search key (in the same order as the search keys)
+     */
+    List<SearchResults<K, V>> getAllWithinRangeForAll(List<K> searchKeys, double range) {
+        requireNonNull(searchKeys);
+        checkArgument(range > 0, "The range must be strictly positive :{}", range);
+
+        BatchSearch<K, V> batch = BatchSearch.rangeSearches(searchKeys, range, tree);
+        batch.executeQueries();
+
+        return batch.results();
+    }
+
+    /**
+     * Perform a k-Nearest-Neighbors search that explores independent subtrees concurrently.
+     *
+     * @param searchKey The point-in-space from which the closest tuples are found
+     * @param k         The number of tuples to search for
+     * @param executor  Runs the tasks that explore the tree
+     *
+     * @return A collection of n Key/Value Results with the smallest distances to the search key
+     */
+    SearchResults<K, V> getNClosest(K searchKey, int k, ExecutorService executor) {
+        requireNonNull(searchKey);
+        checkArgument(k >= 1, "n must be at least 1");
+
+        ParallelSearch<K, V> search = ParallelSearch.knnSearch(searchKey, k, tree, executor);
+        search.executeQuery();
+
+        return search.results();
+    }
+
+    /**
+     * Perform a range query that explores independent subtrees concurrently.
+     *
+     * @param searchKey The point-in-space from which the closest tuples are found
+     * @param range     The distance below which all tuples are included in the output.
+     * @param executor  Runs the tasks that explore the tree
+     *
+     * @return A Result for all keys within this range of the key.
+     */
+    SearchResults<K, V> getAllWithinRange(K searchKey, double range, ExecutorService executor) {
+        requireNonNull(searchKey);
+        checkArgument(range > 0, "The range must be strictly positive :{}", range);
+
+        ParallelSearch<K, V> search = ParallelSearch.rangeSearch(searchKey, range, tree, executor);
+        search.executeQuery();
+
+        return search.results();
+    }
 }
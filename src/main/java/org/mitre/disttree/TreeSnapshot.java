@@ -0,0 +1,34 @@
+package org.mitre.disttree;
+
+import static java.util.Objects.requireNonNull;
+
+import org.mitre.caasd.commons.ids.TimeId;
+
+/**
+ * A TreeSnapshot is a read-only DistanceTree that is pinned to one state of a live DistanceTree
+ * (see DistanceTree.openSnapshot). Every search and TreeIterator sees the tree exactly as it was
+ * when the snapshot was opened, even while the live tree is being altered.
+ * <p>
+ * A TreeSnapshot rejects every operation that would alter the tree. Close the snapshot when it is
+ * no longer needed so the DataStore can discard the superseded data it retains.
+ */
+public class TreeSnapshot<K, V> extends DistanceTree<K, V> implements AutoCloseable {
+
+    private final DataStore.Snapshot snapshot;
+
+    TreeSnapshot(TreeConfig<K, V> liveConfig, DataStore.Snapshot snapshot) {
+        super(new InternalTree<>(liveConfig.forSnapshot(snapshot)));
+        requireNonNull(snapshot);
+        this.snapshot = snapshot;
+    }
+
+    /** @return The id of the last TreeTransaction this snapshot reflects. */
+    public TimeId transactionId() {
+        return snapshot.lastTransactionId();
+    }
+
+    @Override
+    public void close() {
+        snapshot.close();
+    }
+}
@@ -17,9 +17,11 @@ public record TreeStats(
         int numTuples, int numLeafNodes, int numInnerNodes, double meanPageRadius, double stdDevPageRadius) {
 
     public TreeStats {
-        checkArgument(numTuples > 0);
-        checkArgument(numLeafNodes > 0);
-        checkArgument(numInnerNodes > 0);
+        // An empty tree (e.g., every Tuple was deleted) has no Tuples and no nodes
+        boolean isEmpty = numTuples == 0 && numLeafNodes == 0 && numInnerNodes == 0;
+        checkArgument(isEmpty || numTuples > 0);
+        checkArgument(isEmpty || numLeafNodes > 0);
+        checkArgument(isEmpty || numInnerNodes > 0);
         checkArgument(meanPageRadius >= 0);
         checkArgument(stdDevPageRadius >= 0);
     }
@@ -74,8 +74,33 @@ public class TreeTransaction<K, V> {
             List<TupleAssignment<K, V>> updatedTuples,
             Set<TimeId> deletedPages,
             Set<TimeId> deletedNodes) {
+        this(
+                newId(),
+                expectedTreeId,
+                createdNodes,
+                updatedNodes,
+                createdTuples,
+                updatedTuples,
+                deletedPages,
+                deletedNodes);
+    }
+
+    /**
+     * Create a TreeTransaction with a predetermined id. This allows a serialized copy of a
+     * transaction to share the id of the original (so in-memory state that tracks the tree's
+     * lastTransactionId stays in sync with the DataStore).
+     */
+    TreeTransaction(
+            TimeId transactionId,
+            TimeId expectedTreeId,
+            List<NodeHeader<K>> createdNodes,
+            List<NodeHeader<K>> updatedNodes,
+            List<TupleAssignment<K, V>> createdTuples,
+            List<TupleAssignment<K, V>> updatedTuples,
+            Set<TimeId> deletedPages,
+            Set<TimeId> deletedNodes) {
 
-        this.transactionId = newId();
+        this.transactionId = transactionId;
         this.expectedTreeId = expectedTreeId;
 
         this.createdNodes = createdNodes;
@@ -179,6 +204,19 @@ public class TreeTransaction<K, V> {
         return newRoot;
     }
 
+    /**
+     * @param currentRoot The root of the tree before this transaction is applied
+     *
+     * @return The root of the tree after this transaction is applied. This is null when the
+     *     transaction deletes the root (i.e., every Tuple was deleted and the tree is now empty).
+     */
+    public TimeId rootAfter(TimeId currentRoot) {
+        if (hasNewRoot()) {
+            return newRoot;
+        }
+        return nonNull(currentRoot) && deletedNodes.contains(currentRoot) ? null : currentRoot;
+    }
+
     public String describe() {
         StringBuilder builder = new StringBuilder("This transaction will:\n");
 
@@ -1,5 +1,6 @@
 package org.mitre.disttree;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Objects.requireNonNull;
 
 import org.mitre.caasd.commons.ids.TimeId;
@@ -8,18 +9,42 @@ import org.mitre.caasd.commons.ids.TimeId;
  * A TupleAssignment corresponds to either a CREATE operation where a Tuple is added to a
  * DistanceTree for the first time OR an UPDATE operation where a Tuple is moved from one DataPage
  * to another.
+ *
+ * @param tuple        The Tuple being assigned
+ * @param pageId       The DataPage (i.e., leaf node) receiving the Tuple
+ * @param distToCenter The distance between the Tuple's key and the leaf's center (NaN if unknown)
  */
-public record TupleAssignment<K, V>(Tuple<K, V> tuple, TimeId pageId) {
+public record TupleAssignment<K, V>(Tuple<K, V> tuple, TimeId pageId, double distToCenter) {
 
     public TupleAssignment {
         requireNonNull(tuple);
         requireNonNull(pageId);
+        checkArgument(Double.isNaN(distToCenter) || distToCenter >= 0, "distToCenter cannot be negative");
+    }
+
+    /** Create a TupleAssignment whose distance to the leaf's center is unknown. */
+    public TupleAssignment(Tuple<K, V> tuple, TimeId pageId) {
+        this(tuple, pageId, Double.NaN);
     }
 
     public static <K, V> TupleAssignment<K, V> assign(Tuple<K, V> tuple, TimeId pageId) {
         return new TupleAssignment<>(tuple, pageId);
     }
 
+    public static <K, V> TupleAssignment<K, V> assign(Tuple<K, V> tuple, TimeId pageId, double distToCenter) {
+        return new TupleAssignment<>(tuple, pageId, distToCenter);
+    }
+
+    /** @return True when distToCenter is known (and can be used to prune search). */
+    boolean hasDistToCenter() {
+        return !Double.isNaN(distToCenter);
+    }
+
+    /** @return A copy of this TupleAssignment with a known distToCenter. */
+    TupleAssignment<K, V> withDistToCenter(double dist) {
+        return new TupleAssignment<>(tuple, pageId, dist);
+    }
+
     public TimeId tupleId() {
         return tuple.id();
     }
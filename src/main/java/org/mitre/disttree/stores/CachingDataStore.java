@@ -0,0 +1,295 @@
+package org.mitre.disttree.stores;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.mitre.caasd.commons.ids.TimeId;
+import org.mitre.disttree.DataPage;
+import org.mitre.disttree.DataStore;
+import org.mitre.disttree.NodeHeader;
+import org.mitre.disttree.TreeTransaction;
+import org.mitre.disttree.Tuple;
+import org.mitre.disttree.TupleAssignment;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * CachingDataStore decorates a DataStore with a cache for both read and write operations.
+ * <p>
+ * All read operations are "read-through" (i.e., you access the cache first, then fall back to the
+ * wrapped DataStore on a cache miss).
+ * <p>
+ * All write operations are "write-through" (i.e., the TreeTransaction is applied to the wrapped
+ * DataStore, then the NodeHeaders and DataPages the transaction touched are updated or invalidated
+ * in the cache). Consequently, the cache never serves data from an older version of the tree.
+ * <p>
+ * NodeHeaders and DataPages are kept in separate caches whose size limits are measured in
+ * (estimated) bytes. NodeHeaders are small and read on every tree descent, so they should be
+ * cached liberally. DataPages will be the primary contributor to memory usage.
+ */
+public class CachingDataStore implements DataStore {
+
+    static final long DEFAULT_HEADER_CACHE_BYTES = 64L * 1024 * 1024;
+
+    static final long DEFAULT_PAGE_CACHE_BYTES = 256L * 1024 * 1024;
+
+    /** A rough estimate of the JVM overhead of a NodeHeader (object headers, id, parent, etc.). */
+    private static final int HEADER_OVERHEAD_BYTES = 96;
+
+    /** A rough estimate of the JVM overhead of a Tuple (object headers, id, set entry, etc.). */
+    private static final int TUPLE_OVERHEAD_BYTES = 80;
+
+    /** A rough estimate of the JVM overhead of one TimeId in a list of child nodes. */
+    private static final int CHILD_ID_BYTES = 32;
+
+    /** A DataStore that is usually launching I/O operations to read and store data. */
+    private final DataStore innerDataStore;
+
+    private final Cache<TimeId, NodeHeader<byte[]>> nodeCache;
+
+    private final Cache<TimeId, DataPage<byte[], byte[]>> pageCache;
+
+    private volatile TimeId cachedRootId;
+
+    private volatile TimeId cachedLastTransactionId;
+
+    /**
+     * @param dataStore           A DataStore that performs I/O operations to read and write data
+     * @param maxHeaderCacheBytes The max number of bytes of NodeHeaders that can be stored in the
+     *                            cache
+     * @param maxPageCacheBytes   The max number of bytes of DataPages that can be stored in the
+     *                            cache
+     */
+    CachingDataStore(DataStore dataStore, long maxHeaderCacheBytes, long maxPageCacheBytes) {
+        requireNonNull(dataStore);
+        checkArgument(maxHeaderCacheBytes > 0);
+        checkArgument(maxPageCacheBytes > 0);
+
+        this.innerDataStore = dataStore;
+
+        this.cachedRootId = innerDataStore.rootId();
+        this.cachedLastTransactionId = innerDataStore.lastTransactionId();
+
+        this.nodeCache = Caffeine.newBuilder()
+                .maximumWeight(maxHeaderCacheBytes)
+                .weigher(CachingDataStore::headerWeight)
+                .build();
+
+        this.pageCache = Caffeine.newBuilder()
+                .maximumWeight(maxPageCacheBytes)
+                .weigher(CachingDataStore::pageWeight)
+                .build();
+    }
+
+    /** Wrap a DataStore with a cache that uses 64MB for NodeHeaders and 256MB for DataPages. */
+    CachingDataStore(DataStore dataStore) {
+        this(dataStore, DEFAULT_HEADER_CACHE_BYTES, DEFAULT_PAGE_CACHE_BYTES);
+    }
+
+    /** @return An estimate of how many bytes of memory this NodeHeader requires. */
+    static int headerWeight(TimeId id, NodeHeader<byte[]> node) {
+        int numChildren = isNull(node.childNodes()) ? 0 : node.childNodes().size();
+        return HEADER_OVERHEAD_BYTES + node.center().length + numChildren * CHILD_ID_BYTES;
+    }
+
+    /** @return An estimate of how many bytes of memory this DataPage requires. */
+    static int pageWeight(TimeId id, DataPage<byte[], byte[]> page) {
+        long bytes = 0;
+        for (Tuple<byte[], byte[]> tuple : page.tuples()) {
+            bytes += TUPLE_OVERHEAD_BYTES + tuple.key().length;
+            bytes += isNull(tuple.value()) ? 0 : tuple.value().length;
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public TimeId lastTransactionId() {
+        return cachedLastTransactionId;
+    }
+
+    @Override
+    public TimeId rootId() {
+        return cachedRootId;
+    }
+
+    @Override
+    public DataPage<byte[], byte[]> dataPageAt(TimeId id) {
+        requireNonNull(id);
+        // null results are not cached, so missing DataPages are always re-requested
+        return pageCache.get(id, innerDataStore::dataPageAt);
+    }
+
+    @Override
+    public NodeHeader<byte[]> nodeAt(TimeId id) {
+        requireNonNull(id);
+        // null results are not cached, so missing NodeHeaders are always re-requested
+        return nodeCache.get(id, innerDataStore::nodeAt);
+    }
+
+    @Override
+    public List<NodeHeader<byte[]>> nodesAt(Collection<TimeId> ids) {
+
+        // Cache misses are loaded with ONE bulk read from the wrapped DataStore
+        Map<TimeId, NodeHeader<byte[]>> found = nodeCache.getAll(ids, missingIds -> {
+            Map<TimeId, NodeHeader<byte[]>> loaded = new HashMap<>();
+            innerDataStore.nodesAt(new ArrayList<>(missingIds)).forEach(node -> loaded.put(node.id(), node));
+            return loaded;
+        });
+
+        return inOrder(ids, found);
+    }
+
+    @Override
+    public List<DataPage<byte[], byte[]>> dataPagesAt(Collection<TimeId> ids) {
+
+        // Cache misses are loaded with ONE bulk read from the wrapped DataStore
+        Map<TimeId, DataPage<byte[], byte[]>> found = pageCache.getAll(ids, missingIds -> {
+            Map<TimeId, DataPage<byte[], byte[]>> loaded = new HashMap<>();
+            innerDataStore.dataPagesAt(new ArrayList<>(missingIds)).forEach(page -> loaded.put(page.id(), page));
+            return loaded;
+        });
+
+        return inOrder(ids, found);
+    }
+
+    /** Tuples move between DataPages, so this lookup is not cached. */
+    @Override
+    public TimeId pageIdOf(TimeId tupleId) {
+        requireNonNull(tupleId);
+        return innerDataStore.pageIdOf(tupleId);
+    }
+
+    @Override
+    public Map<TimeId, TimeId> pageIdsOfTuplesOlderThan(Instant cutoff) {
+        requireNonNull(cutoff);
+        return innerDataStore.pageIdsOfTuplesOlderThan(cutoff);
+    }
+
+    /** @return The values in this map, in the same order as the ids (missing ids are skipped). */
+    private static <T> List<T> inOrder(Collection<TimeId> ids, Map<TimeId, T> map) {
+        List<T> list = new ArrayList<>(ids.size());
+        for (TimeId id : ids) {
+            T item = map.get(id);
+            if (nonNull(item)) {
+                list.add(item);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public synchronized void applyTransaction(TreeTransaction<byte[], byte[]> transaction) {
+
+        // Execute the I/O operations in the wrapped DataStore FIRST...
+        // If this fails, the cache still reflects the (unaltered) state of the wrapped DataStore
+        innerDataStore.applyTransaction(transaction);
+
+        updateNodeCache(transaction);
+        updatePageCache(transaction);
+
+        // applying a transaction changes the rootId and lastTransactionId
+        cachedRootId = transaction.rootAfter(cachedRootId);
+        cachedLastTransactionId = transaction.transactionId();
+    }
+
+    /**
+     * The wrapped DataStore reflects the transaction as soon as applyTransactionAsync returns (even
+     * before the transaction is durable), so the caches are updated immediately.
+     */
+    @Override
+    public synchronized CompletableFuture<TimeId> applyTransactionAsync(TreeTransaction<byte[], byte[]> transaction) {
+
+        CompletableFuture<TimeId> write = innerDataStore.applyTransactionAsync(transaction);
+
+        updateNodeCache(transaction);
+        updatePageCache(transaction);
+
+        cachedRootId = transaction.rootAfter(cachedRootId);
+        cachedLastTransactionId = transaction.transactionId();
+
+        return write;
+    }
+
+    /** Snapshot reads are sent straight to the wrapped DataStore (the caches hold the current state). */
+    @Override
+    public Snapshot openSnapshot() {
+        return innerDataStore.openSnapshot();
+    }
+
+    /** Created and updated NodeHeaders are always complete, so they can be directly cached. */
+    private void updateNodeCache(TreeTransaction<byte[], byte[]> transaction) {
+
+        nodeCache.invalidateAll(transaction.deletedNodeHeaders());
+
+        transaction.createdNodes().forEach(node -> nodeCache.put(node.id(), node));
+        transaction.updatedNodes().forEach(node -> nodeCache.put(node.id(), node));
+    }
+
+    /**
+     * Update exactly the DataPages touched by this transaction.
+     * <p>
+     * A deleted DataPage is rebuilt from scratch, so its new contents are exactly the tuples this
+     * transaction assigns to it. A DataPage that was not deleted only receives new tuples, so a
+     * cached copy can be extended in place. Tuples only move away from DataPages that are deleted
+     * in the same transaction, so no other DataPage is affected.
+     */
+    private void updatePageCache(TreeTransaction<byte[], byte[]> transaction) {
+
+        Set<TimeId> deletedPages = transaction.deletedLeafNodes();
+
+        Map<TimeId, List<TupleAssignment<byte[], byte[]>>> assignmentsByPage = new HashMap<>();
+        addAssignments(assignmentsByPage, transaction.createdTuples());
+        addAssignments(assignmentsByPage, transaction.updatedTuples());
+
+        for (TimeId deletedPage : deletedPages) {
+            if (!assignmentsByPage.containsKey(deletedPage)) {
+                pageCache.invalidate(deletedPage);
+            }
+        }
+
+        assignmentsByPage.forEach((pageId, assignments) -> {
+            DataPage<byte[], byte[]> newTuples = DataPage.fromAssignments(pageId, assignments);
+            if (deletedPages.contains(pageId)) {
+                pageCache.put(pageId, newTuples);
+            } else {
+                // If the prior edition of the page isn't cached there is nothing to update
+                pageCache.asMap().computeIfPresent(pageId, (id, cached) -> DataPage.merge(cached, newTuples));
+            }
+        });
+    }
+
+    private static void addAssignments(
+            Map<TimeId, List<TupleAssignment<byte[], byte[]>>> assignmentsByPage,
+            List<TupleAssignment<byte[], byte[]>> assignments) {
+        for (TupleAssignment<byte[], byte[]> ta : assignments) {
+            assignmentsByPage.computeIfAbsent(ta.pageId(), id -> new ArrayList<>()).add(ta);
+        }
+    }
+
+    /** @return The DataStore this CachingDataStore decorates. */
+    public DataStore innerDataStore() {
+        return innerDataStore;
+    }
+
+    /** @return The approximate number of NodeHeaders currently cached. */
+    public long cachedNodeCount() {
+        return nodeCache.estimatedSize();
+    }
+
+    /** @return The approximate number of DataPages currently cached. */
+    public long cachedPageCount() {
+        return pageCache.estimatedSize();
+    }
+}
@@ -41,4 +41,67 @@ public class DataStores {
     public static DataStore duckDbStore(String pathToDbFiles) {
         return new DuckDBStore(pathToDbFiles);
     }
+
+    /**
+     * @param dataStore A DataStore that performs (slow) I/O operations to read and write data
+     *
+     * @return A DataStore that decorates the provided DataStore with read-through and
+     *     write-through caches for NodeHeaders and DataPages. The caches hold up to 64MB of
+     *     NodeHeaders and 256MB of DataPages.
+     */
+    public static DataStore cachingStore(DataStore dataStore) {
+        return new CachingDataStore(dataStore);
+    }
+
+    /**
+     * @param dataStore           A DataStore that performs (slow) I/O operations to read and write
+     *                            data
+     * @param maxHeaderCacheBytes The approximate number of bytes of NodeHeaders to cache (these are
+     *                            small and read constantly, so cache them liberally)
+     * @param maxPageCacheBytes   The approximate number of bytes of DataPages to cache (this will
+     *                            be the primary contributor to memory usage)
+     *
+     * @return A DataStore that decorates the provided DataStore with read-through and
+     *     write-through caches for NodeHeaders and DataPages.
+     */
+    public static DataStore cachingStore(DataStore dataStore, long maxHeaderCacheBytes, long maxPageCacheBytes) {
+        return new CachingDataStore(dataStore, maxHeaderCacheBytes, maxPageCacheBytes);
+    }
+
+    /**
+     * @param dataStore A DataStore that performs (slow) I/O operations to read and write data
+     *
+     * @return A DataStore that writes TreeTransactions to the provided DataStore using a background
+     *     thread. This lets DistanceTree.addBatches compute the next batch's transaction while the
+     *     prior transaction is still being written. Up to 4 transactions can be waiting to be
+     *     written. Wrap the result in a cachingStore to also cache reads.
+     */
+    public static DataStore pipelinedStore(DataStore dataStore) {
+        return new PipelinedDataStore(dataStore);
+    }
+
+    /**
+     * @param dataStore              A DataStore that performs (slow) I/O operations to read and
+     *                               write data
+     * @param maxPendingTransactions The max number of transactions that can be waiting to be
+     *                               written
+     *
+     * @return A DataStore that writes TreeTransactions to the provided DataStore using a background
+     *     thread.
+     */
+    public static DataStore pipelinedStore(DataStore dataStore, int maxPendingTransactions) {
+        return new PipelinedDataStore(dataStore, maxPendingTransactions);
+    }
+
+    /**
+     * @param dataStore A DataStore that holds the current state of the tree
+     *
+     * @return A DataStore that supports DataStore.openSnapshot (and thus DistanceTree.openSnapshot).
+     *     Superseded NodeHeaders and DataPages are retained in memory until no open Snapshot can
+     *     read them. Snapshot reads bypass any cachingStore that wraps the result, so wrap a
+     *     cachingStore (or pipelinedStore) with this DataStore rather than the other way around.
+     */
+    public static DataStore versionedStore(DataStore dataStore) {
+        return new VersionedDataStore(dataStore);
+    }
 }
@@ -2,7 +2,9 @@ package org.mitre.disttree.stores;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static java.util.Collections.emptyList;
 import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
 import java.io.File;
@@ -13,11 +15,19 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Stream;
 
 import org.mitre.caasd.commons.ids.TimeId;
@@ -28,7 +38,9 @@ import org.mitre.disttree.TreeTransaction;
 import org.mitre.disttree.Tuple;
 import org.mitre.disttree.TupleAssignment;
 
-public class DuckDBStore implements DataStore {
+import org.duckdb.DuckDBConnection;
+
+public class DuckDBStore implements DataStore, AutoCloseable {
 
     private static final String DEFAULT_DB_PATH = "DuckDBStore";
 
@@ -40,6 +52,18 @@ public class DuckDBStore implements DataStore {
     private Connection conn;
     private final String pathToDbFile;
 
+    /**
+     * Read-only queries borrow one of these duplicates of "conn" so concurrent readers (e.g., a
+     * parallel search) can query the DB at the same time. Readers never use "conn" because it may be
+     * in the middle of an uncommitted transaction. When every duplicate is borrowed a new one is made.
+     */
+    private final ConcurrentLinkedQueue<Connection> readConnections = new ConcurrentLinkedQueue<>();
+
+    /** Every duplicate of "conn" (borrowed or not), these are closed by close(). Guarded by itself. */
+    private final List<Connection> allReadConnections = new ArrayList<>();
+
+    private static final int NUM_READ_CONNECTIONS = Runtime.getRuntime().availableProcessors();
+
     DuckDBStore() {
         this(DEFAULT_DB_PATH);
     }
@@ -57,6 +81,11 @@ public class DuckDBStore implements DataStore {
             // Create nodes and tuples tables if they do not already exist
             createTables();
 
+            for (int i = 0; i < NUM_READ_CONNECTIONS; i++) {
+                allReadConnections.add(conn.unwrap(DuckDBConnection.class).duplicate());
+            }
+            readConnections.addAll(allReadConnections);
+
             // Get lastTransactionId and rootId from DB
             this.lastTransactionId = queryLastTransactionId();
             this.root = queryRootId();
@@ -99,6 +128,48 @@ public class DuckDBStore implements DataStore {
         return DriverManager.getConnection(connectionString);
     }
 
+    /** @return A connection for read-only queries, return it with returnReadConnection. */
+    private Connection borrowReadConnection() {
+        Connection readConn = readConnections.poll();
+        return isNull(readConn) ? newReadConnection() : readConn;
+    }
+
+    private Connection newReadConnection() {
+        synchronized (allReadConnections) {
+            try {
+                Connection readConn = conn.unwrap(DuckDBConnection.class).duplicate();
+                allReadConnections.add(readConn);
+                return readConn;
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void returnReadConnection(Connection readConn) {
+        readConnections.add(readConn);
+    }
+
+    /**
+     * Close the duplicate connections used for reads, then the connection used for writes. This
+     * DuckDBStore cannot be used afterward.
+     */
+    @Override
+    public synchronized void close() {
+        readConnections.clear();
+        synchronized (allReadConnections) {
+            try {
+                for (Connection readConn : allReadConnections) {
+                    readConn.close();
+                }
+                allReadConnections.clear();
+                conn.close();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     /** Create tables to store tuples and node objects */
     private void createTables() throws Exception {
         Statement stmt = conn.createStatement();
@@ -107,15 +178,57 @@ public class DuckDBStore implements DataStore {
         //                + "radius DOUBLE, childNodeIds VARCHAR[], numTuples INTEGER)");
         stmt.execute(
                 "CREATE TABLE IF NOT EXISTS nodes (id VARCHAR PRIMARY KEY, parentId VARCHAR, base64Center VARCHAR, "
-                        + "radius DOUBLE, childNodeIds VARCHAR[], numTuples INTEGER)");
-        stmt.execute(
-                "CREATE TABLE IF NOT EXISTS tuples (tupleId VARCHAR, pageId VARCHAR, key VARCHAR, " + "value VARCHAR)");
+                        + "radius DOUBLE, childNodeIds VARCHAR[], numTuples INTEGER, distToParent DOUBLE)");
+        // Databases created before NodeHeaders had a distToParent field need the column added
+        stmt.execute("ALTER TABLE nodes ADD COLUMN IF NOT EXISTS distToParent DOUBLE");
+        stmt.execute("CREATE TABLE IF NOT EXISTS tuples (tupleId VARCHAR, pageId VARCHAR, key VARCHAR, "
+                + "value VARCHAR, distToCenter DOUBLE, time BIGINT)");
+        // Databases created before DataPages stored each tuple's distToCenter need the column added
+        stmt.execute("ALTER TABLE tuples ADD COLUMN IF NOT EXISTS distToCenter DOUBLE");
+        // Databases created before tuples stored their epoch milli timestamp need the column added
+        stmt.execute("ALTER TABLE tuples ADD COLUMN IF NOT EXISTS time BIGINT");
+        backfillTupleTimes();
+        // The secondary index used to find the DataPage that holds a given tuple
+        stmt.execute("CREATE INDEX IF NOT EXISTS tuples_tupleId_idx ON tuples (tupleId)");
+        // The secondary index used to find tuples older than a cutoff
+        stmt.execute("CREATE INDEX IF NOT EXISTS tuples_time_idx ON tuples (time)");
         stmt.execute("CREATE TABLE IF NOT EXISTS transactions (transactionId VARCHAR, time BIGINT)");
         stmt.execute("CREATE TABLE IF NOT EXISTS roots (rootId VARCHAR, time BIGINT)");
 
         stmt.close();
     }
 
+    /** Populate the time column of tuples written before the column existed (their TimeIds hold the time). */
+    private void backfillTupleTimes() throws Exception {
+
+        List<String> tupleIds = new ArrayList<>();
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT tupleId FROM tuples WHERE time IS NULL");
+            while (rs.next()) {
+                tupleIds.add(rs.getString("tupleId"));
+            }
+        }
+        if (tupleIds.isEmpty()) {
+            return;
+        }
+
+        // One joined UPDATE instead of one UPDATE per tuple, each of which would scan the whole table
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TEMP TABLE tuple_times (tupleId VARCHAR, time BIGINT)");
+            try (PreparedStatement pStmt = conn.prepareStatement("INSERT INTO tuple_times VALUES (?, ?)")) {
+                for (String tupleId : tupleIds) {
+                    pStmt.setString(1, tupleId);
+                    pStmt.setLong(2, TimeId.fromBase64(tupleId).time().toEpochMilli());
+                    pStmt.addBatch();
+                }
+                pStmt.executeBatch();
+            }
+            stmt.execute("UPDATE tuples SET time = tuple_times.time FROM tuple_times "
+                    + "WHERE tuples.tupleId = tuple_times.tupleId");
+            stmt.execute("DROP TABLE tuple_times");
+        }
+    }
+
     /** Attempt to get lastTransactionId from DB. Return null if empty. */
     private TimeId queryLastTransactionId() throws Exception {
         TimeId id;
@@ -150,7 +263,8 @@ public class DuckDBStore implements DataStore {
             ResultSet rs = stmt.executeQuery(query);
             rs.next();
 
-            id = TimeId.fromBase64(rs.getString("rootId"));
+            String rootId = rs.getString("rootId");
+            id = isNull(rootId) ? null : TimeId.fromBase64(rootId);
         } catch (Exception e) {
             System.out.println("Could not get rootId from DB");
             id = null;
@@ -170,8 +284,6 @@ public class DuckDBStore implements DataStore {
                 "INSERT INTO transactions VALUES " + "('" + id.toString() + "', " + System.currentTimeMillis() + ")");
 
         stmt.close();
-
-        this.lastTransactionId = id;
     }
 
     /** Store rootId in DB. Including time allows use to keep a history of rootIds
@@ -180,15 +292,15 @@ public class DuckDBStore implements DataStore {
     private void insertRootId(TimeId id) throws Exception {
         Statement stmt = conn.createStatement();
 
-        stmt.execute("INSERT INTO roots VALUES " + "('" + id.toString() + "', " + System.currentTimeMillis() + ")");
+        // A null rootId records that every node was deleted (the tree is now empty)
+        String rootId = isNull(id) ? "NULL" : "'" + id + "'";
+        stmt.execute("INSERT INTO roots VALUES (" + rootId + ", " + System.currentTimeMillis() + ")");
 
         stmt.close();
-
-        this.root = id;
     }
 
     /** Extract all tuples from DB for a given pageId and return a DataPage object */
-    private DataPage<byte[], byte[]> queryTuplesByPageId(TimeId id) throws Exception {
+    private DataPage<byte[], byte[]> queryTuplesByPageId(Connection conn, TimeId id) throws Exception {
 
         DataPage<byte[], byte[]> page;
 
@@ -199,15 +311,12 @@ public class DuckDBStore implements DataStore {
         try {
             ResultSet rs = stmt.executeQuery(query);
 
-            Set<Tuple<byte[], byte[]>> tuples = new HashSet<>();
+            List<TupleAssignment<byte[], byte[]>> assignments = new ArrayList<>();
 
             while (rs.next()) {
-                tuples.add(new Tuple<>(
-                        TimeId.fromBase64(rs.getString("tupleId")),
-                        BASE_64_DECODER.decode(rs.getString("key")),
-                        isNull(rs.getString("value")) ? null : BASE_64_DECODER.decode(rs.getString("value"))));
+                assignments.add(asAssignment(rs));
             }
-            page = new DataPage<>(id, tuples);
+            page = DataPage.fromAssignments(id, assignments);
         } catch (Exception e) {
             System.out.println("Exception occurred querying tuples for DataPage: " + e);
             page = null;
@@ -217,6 +326,39 @@ public class DuckDBStore implements DataStore {
         return page;
     }
 
+    /** Find the pageId of a tuple using the tupleId index, return null if the tuple is not found. */
+    private TimeId queryPageIdByTupleId(Connection conn, TimeId tupleId) throws Exception {
+
+        String query = "SELECT pageId FROM tuples WHERE tupleId = ? LIMIT 1";
+
+        try (PreparedStatement pStmt = conn.prepareStatement(query)) {
+            pStmt.setString(1, tupleId.asBase64());
+
+            ResultSet rs = pStmt.executeQuery();
+            return rs.next() ? TimeId.fromBase64(rs.getString("pageId")) : null;
+        }
+    }
+
+    /** Use the time index to find the (tupleId, pageId) pairs of tuples older than the cutoff. */
+    private Map<TimeId, TimeId> queryPageIdsOfTuplesOlderThan(Connection conn, Instant cutoff) throws Exception {
+
+        // tupleIds are stored as base64 strings (which do not sort by time), the indexed time column does
+        String query = "SELECT tupleId, pageId FROM tuples WHERE time < ?";
+
+        Map<TimeId, TimeId> oldTuples = new HashMap<>();
+        try (PreparedStatement pStmt = conn.prepareStatement(query)) {
+            // TimeIds have millisecond precision, so "before the cutoff" means "before the cutoff's ceiling milli"
+            boolean wholeMilli = cutoff.getNano() % 1_000_000 == 0;
+            pStmt.setLong(1, wholeMilli ? cutoff.toEpochMilli() : cutoff.toEpochMilli() + 1);
+            ResultSet rs = pStmt.executeQuery();
+            while (rs.next()) {
+                TimeId tupleId = TimeId.fromBase64(rs.getString("tupleId"));
+                oldTuples.put(tupleId, TimeId.fromBase64(rs.getString("pageId")));
+            }
+        }
+        return oldTuples;
+    }
+
     /** Extract node from DB for a specified id */
     private NodeHeader<byte[]> queryNodeById(Connection conn, TimeId id) throws Exception {
         NodeHeader<byte[]> node;
@@ -231,22 +373,7 @@ public class DuckDBStore implements DataStore {
             // Move cursor to next row of ResultSet.
             rs.next();
 
-            // Convert sql array to object array and then to string array.
-            Object[] childIds = isNull(rs.getArray("childNodeIds"))
-                    ? null
-                    : (Object[]) rs.getArray("childNodeIds").getArray();
-
-            String[] childIdsList =
-                    isNull(childIds) ? null : Arrays.stream(childIds).toArray(String[]::new);
-
-            // Create node from retrieved data
-            node = new NodeHeader<>(
-                    TimeId.fromBase64(rs.getString("id")),
-                    isNull(rs.getString("parentId")) ? null : TimeId.fromBase64(rs.getString("parentId")),
-                    BASE_64_DECODER.decode(rs.getString("base64Center")),
-                    rs.getDouble("radius"),
-                    asTimeIdList(childIdsList),
-                    rs.getInt("numTuples"));
+            node = asNodeHeader(rs);
         } catch (Exception e) {
             System.out.println("Error querying id: " + id);
             node = null;
@@ -256,9 +383,106 @@ public class DuckDBStore implements DataStore {
         return node;
     }
 
+    /** Extract all tuples from DB for several pageIds using a single query. */
+    private Map<TimeId, List<TupleAssignment<byte[], byte[]>>> queryTuplesByPageIds(
+            Connection conn, Collection<TimeId> ids) throws Exception {
+
+        Map<TimeId, List<TupleAssignment<byte[], byte[]>>> tuplesByPage = new HashMap<>();
+
+        String query = "SELECT * FROM tuples WHERE pageId IN (" + placeholders(ids.size()) + ")";
+
+        try (PreparedStatement pStmt = conn.prepareStatement(query)) {
+            setIds(pStmt, ids);
+
+            ResultSet rs = pStmt.executeQuery();
+            while (rs.next()) {
+                TupleAssignment<byte[], byte[]> ta = asAssignment(rs);
+                tuplesByPage.computeIfAbsent(ta.pageId(), id -> new ArrayList<>()).add(ta);
+            }
+        }
+
+        return tuplesByPage;
+    }
+
+    /** Extract several nodes from DB using a single query. */
+    private Map<TimeId, NodeHeader<byte[]>> queryNodesByIds(Connection conn, Collection<TimeId> ids) throws Exception {
+
+        Map<TimeId, NodeHeader<byte[]>> nodesById = new HashMap<>();
+
+        String query = "SELECT * FROM nodes WHERE id IN (" + placeholders(ids.size()) + ")";
+
+        try (PreparedStatement pStmt = conn.prepareStatement(query)) {
+            setIds(pStmt, ids);
+
+            ResultSet rs = pStmt.executeQuery();
+            while (rs.next()) {
+                NodeHeader<byte[]> node = asNodeHeader(rs);
+                nodesById.put(node.id(), node);
+            }
+        }
+
+        return nodesById;
+    }
+
+    /** @return A comma separated list of n "?" for use in a "WHERE x IN (...)" clause. */
+    private static String placeholders(int n) {
+        return String.join(",", Collections.nCopies(n, "?"));
+    }
+
+    /** Bind each id to its "?" in the PreparedStatement. */
+    private static void setIds(PreparedStatement pStmt, Collection<TimeId> ids) throws SQLException {
+        int i = 1;
+        for (TimeId id : ids) {
+            pStmt.setString(i++, id.toString());
+        }
+    }
+
+    /** Convert the current row of a "SELECT * FROM tuples" query to a TupleAssignment. */
+    private static TupleAssignment<byte[], byte[]> asAssignment(ResultSet rs) throws SQLException {
+        Tuple<byte[], byte[]> tuple = new Tuple<>(
+                TimeId.fromBase64(rs.getString("tupleId")),
+                BASE_64_DECODER.decode(rs.getString("key")),
+                isNull(rs.getString("value")) ? null : BASE_64_DECODER.decode(rs.getString("value")));
+
+        // A NULL distToCenter (i.e., unknown) is represented as NaN
+        double distToCenter = rs.getDouble("distToCenter");
+        if (rs.wasNull()) {
+            distToCenter = Double.NaN;
+        }
+
+        return new TupleAssignment<>(tuple, TimeId.fromBase64(rs.getString("pageId")), distToCenter);
+    }
+
+    /** Convert the current row of a "SELECT * FROM nodes" query to a NodeHeader. */
+    private static NodeHeader<byte[]> asNodeHeader(ResultSet rs) throws SQLException {
+
+        // Convert sql array to object array and then to string array.
+        Object[] childIds = isNull(rs.getArray("childNodeIds"))
+                ? null
+                : (Object[]) rs.getArray("childNodeIds").getArray();
+
+        String[] childIdsList = isNull(childIds) ? null : Arrays.stream(childIds).toArray(String[]::new);
+
+        // A NULL distToParent (i.e., unknown) is represented as NaN
+        double distToParent = rs.getDouble("distToParent");
+        if (rs.wasNull()) {
+            distToParent = Double.NaN;
+        }
+
+        // Create node from retrieved data
+        return new NodeHeader<>(
+                TimeId.fromBase64(rs.getString("id")),
+                isNull(rs.getString("parentId")) ? null : TimeId.fromBase64(rs.getString("parentId")),
+                BASE_64_DECODER.decode(rs.getString("base64Center")),
+                rs.getDouble("radius"),
+                asTimeIdList(childIdsList),
+                rs.getInt("numTuples"),
+                distToParent);
+    }
+
     private void batchInsertTuples(List<TupleAssignment<byte[], byte[]>> tuples) {
 
-        String query = "INSERT INTO tuples(tupleId, pageId, key, value) VALUES (?,?,?,?)";
+        String query = "INSERT INTO tuples(tupleId, pageId, key, value, distToCenter, time) VALUES (?,?,?,?,?,?)";
         try (PreparedStatement pStmt = conn.prepareStatement(query)) {
             tuples.forEach(ta -> {
                 try {
@@ -270,6 +494,12 @@ public class DuckDBStore implements DataStore {
                             isNull(ta.tuple().value())
                                     ? null
                                     : BASE_64_ENCODER.encodeToString(ta.tuple().value()));
+                    if (Double.isNaN(ta.distToCenter())) {
+                        pStmt.setNull(5, Types.DOUBLE);
+                    } else {
+                        pStmt.setDouble(5, ta.distToCenter());
+                    }
+                    pStmt.setLong(6, ta.tuple().id().time().toEpochMilli());
                     pStmt.addBatch();
                 } catch (Exception e) {
                     throw new RuntimeException(e);
@@ -277,7 +507,7 @@ public class DuckDBStore implements DataStore {
             });
             pStmt.executeBatch();
         } catch (Exception e) {
-            System.out.println("Error batch inserting tuples");
+            throw new RuntimeException("Error batch inserting tuples", e);
         }
     }
 
@@ -289,7 +519,7 @@ public class DuckDBStore implements DataStore {
         // (?,?,?,?,?,?)";
 
         String query =
-                "INSERT OR REPLACE INTO nodes(id, parentId, base64Center, radius, childNodeIds, numTuples) VALUES (?,?,?,?,?,?)";
+                "INSERT OR REPLACE INTO nodes(id, parentId, base64Center, radius, childNodeIds, numTuples, distToParent) VALUES (?,?,?,?,?,?,?)";
 
         try (PreparedStatement pStmt = conn.prepareStatement(query)) {
             updatedHeaders.forEach(nodeHeader -> {
@@ -304,6 +534,11 @@ public class DuckDBStore implements DataStore {
                     pStmt.setDouble(4, nodeHeader.radius());
                     pStmt.setObject(5, asVarcharArray(nodeHeader));
                     pStmt.setInt(6, nodeHeader.numTuples());
+                    if (Double.isNaN(nodeHeader.distToParent())) {
+                        pStmt.setNull(7, Types.DOUBLE);
+                    } else {
+                        pStmt.setDouble(7, nodeHeader.distToParent());
+                    }
                     pStmt.addBatch();
 
                 } catch (Exception e) {
@@ -312,7 +547,7 @@ public class DuckDBStore implements DataStore {
             });
             pStmt.executeBatch();
         } catch (Exception e) {
-            System.out.println("Error inserting nodes for batch");
+            throw new RuntimeException("Error inserting nodes for batch", e);
         }
     }
 
@@ -414,11 +649,14 @@ public class DuckDBStore implements DataStore {
 
         DataPage<byte[], byte[]> page;
 
+        Connection readConn = borrowReadConnection();
         try {
-            page = queryTuplesByPageId(id);
+            page = queryTuplesByPageId(readConn, id);
         } catch (Exception e) {
             System.out.println("Exception occurred querying dataPage: " + e);
             page = null;
+        } finally {
+            returnReadConnection(readConn);
         }
 
         if (page.isEmpty()) {
@@ -435,17 +673,109 @@ public class DuckDBStore implements DataStore {
     public NodeHeader<byte[]> nodeAt(TimeId id) {
         NodeHeader<byte[]> node;
 
+        Connection readConn = borrowReadConnection();
         try {
-            node = queryNodeById(this.conn, id);
+            node = queryNodeById(readConn, id);
         } catch (Exception e) {
             System.out.println("Exception occurred querying node: " + e);
             node = null;
+        } finally {
+            returnReadConnection(readConn);
         }
         return node;
     }
 
     @Override
-    public void applyTransaction(TreeTransaction<byte[], byte[]> transaction) {
+    public List<NodeHeader<byte[]>> nodesAt(Collection<TimeId> ids) {
+        if (ids.isEmpty()) {
+            return emptyList();
+        }
+
+        Map<TimeId, NodeHeader<byte[]>> nodesById;
+
+        Connection readConn = borrowReadConnection();
+        try {
+            nodesById = queryNodesByIds(readConn, ids);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            returnReadConnection(readConn);
+        }
+
+        // Return the nodes in the same order as the requested ids
+        List<NodeHeader<byte[]>> nodes = new ArrayList<>(nodesById.size());
+        for (TimeId id : ids) {
+            NodeHeader<byte[]> node = nodesById.get(id);
+            if (nonNull(node)) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    @Override
+    public List<DataPage<byte[], byte[]>> dataPagesAt(Collection<TimeId> ids) {
+        if (ids.isEmpty()) {
+            return emptyList();
+        }
+
+        Map<TimeId, List<TupleAssignment<byte[], byte[]>>> tuplesByPage;
+
+        Connection readConn = borrowReadConnection();
+        try {
+            tuplesByPage = queryTuplesByPageIds(readConn, ids);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            returnReadConnection(readConn);
+        }
+
+        // Return the pages in the same order as the requested ids (empty pages are never returned)
+        List<DataPage<byte[], byte[]>> pages = new ArrayList<>(tuplesByPage.size());
+        for (TimeId id : ids) {
+            List<TupleAssignment<byte[], byte[]>> assignments = tuplesByPage.get(id);
+            if (nonNull(assignments)) {
+                pages.add(DataPage.fromAssignments(id, assignments));
+            }
+        }
+        return pages;
+    }
+
+    @Override
+    public TimeId pageIdOf(TimeId tupleId) {
+        requireNonNull(tupleId);
+
+        Connection readConn = borrowReadConnection();
+        try {
+            return queryPageIdByTupleId(readConn, tupleId);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            returnReadConnection(readConn);
+        }
+    }
+
+    @Override
+    public Map<TimeId, TimeId> pageIdsOfTuplesOlderThan(Instant cutoff) {
+        requireNonNull(cutoff);
+
+        Connection readConn = borrowReadConnection();
+        try {
+            return queryPageIdsOfTuplesOlderThan(readConn, cutoff);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            returnReadConnection(readConn);
+        }
+    }
+
+    /**
+     * Write every change in this transaction inside one SQL transaction. Readers (which use other
+     * connections) see either none or all of the transaction. When any write fails the SQL
+     * transaction is rolled back, the exception is rethrown, and this DataStore is left unchanged.
+     */
+    @Override
+    public synchronized void applyTransaction(TreeTransaction<byte[], byte[]> transaction) {
 
         //        System.out.println(transaction.describe());
 
@@ -453,8 +783,10 @@ public class DuckDBStore implements DataStore {
             throw new IllegalStateException("Cannot apply transaction, tree state has changed");
         }
 
-        // todo: need to make sure either all transactions succeed or all fail before committing to DB
+        TimeId rootAfter = transaction.rootAfter(root);
+
         try {
+            conn.setAutoCommit(false);
             insertLastTransactionId(transaction.transactionId());
             deletePages(transaction.deletedLeafNodes());
             deleteNodeHeaders(transaction.deletedNodeHeaders());
@@ -464,11 +796,35 @@ public class DuckDBStore implements DataStore {
 
             writeHeaders(transaction.createdNodes());
             writeHeaders(transaction.updatedNodes());
-            if (transaction.hasNewRoot()) {
-                insertRootId(transaction.newRoot());
+            if (!Objects.equals(rootAfter, root)) {
+                insertRootId(rootAfter);
             }
+            conn.commit();
         } catch (Exception e) {
-            System.out.println("Cannot apply transaction. Exception occurred: " + e);
+            rollback(e);
+            throw e instanceof RuntimeException re ? re : new RuntimeException("Cannot apply transaction", e);
+        } finally {
+            restoreAutoCommit();
+        }
+
+        this.lastTransactionId = transaction.transactionId();
+        this.root = rootAfter;
+    }
+
+    /** Undo a partially written transaction, a rollback failure is attached to the original failure. */
+    private void rollback(Exception cause) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void restoreAutoCommit() {
+        try {
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
         }
     }
 
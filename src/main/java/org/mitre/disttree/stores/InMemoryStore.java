@@ -1,8 +1,18 @@
 package org.mitre.disttree.stores;
 
+import static java.util.Objects.requireNonNull;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.mitre.caasd.commons.ids.TimeId;
 import org.mitre.disttree.DataPage;
@@ -17,20 +27,32 @@ import com.google.common.collect.TreeMultimap;
 
 public class InMemoryStore implements DataStore {
 
-    private TimeId lastTransactionId;
+    private volatile TimeId lastTransactionId;
+
+    private volatile TimeId root;
 
-    private TimeId root;
+    /** Reads can run concurrently with each other (e.g., a parallel search) but not with a write. */
+    private final ReadWriteLock lock;
 
     /** Store all the Tuples at any given PageId. */
     private final Multimap<TimeId, Tuple<byte[], byte[]>> tupleMultiMap;
 
+    /** The distance between each Tuple's key and its leaf's center (by tuple id, when known). */
+    private final Map<TimeId, Double> centerDists;
+
+    /** The id of the DataPage that holds each Tuple (by tuple id, so the oldest Tuples come first). */
+    private final TreeMap<TimeId, TimeId> pageIds;
+
     private final TreeMap<TimeId, NodeHeader<byte[]>> nodes;
 
     InMemoryStore() {
         this.lastTransactionId = null;
         this.root = null;
         this.tupleMultiMap = TreeMultimap.create();
+        this.centerDists = new HashMap<>();
+        this.pageIds = new TreeMap<>();
         this.nodes = new TreeMap<>();
+        this.lock = new ReentrantReadWriteLock();
     }
 
     /**
@@ -49,25 +71,107 @@ public class InMemoryStore implements DataStore {
 
     @Override
     public DataPage<byte[], byte[]> dataPageAt(TimeId id) {
-        DataPage<byte[], byte[]> page = DataPage.asDataPage(id, tupleMultiMap.get(id));
+        lock.readLock().lock();
+        try {
+            return readDataPage(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-        if (page.isEmpty()) {
+    private DataPage<byte[], byte[]> readDataPage(TimeId id) {
+        Collection<Tuple<byte[], byte[]>> tuples = tupleMultiMap.get(id);
+
+        if (tuples.isEmpty()) {
 
             // DO NOT return something like DataPage.emptySetAt(id) when get(id) returns a null!
             // It is better to directly return the "null" so logic errors are surfaced sooner
             return null;
-        } else {
-            return page;
         }
+
+        Map<TimeId, Double> dists = new HashMap<>();
+        for (Tuple<byte[], byte[]> tuple : tuples) {
+            Double dist = centerDists.get(tuple.id());
+            if (dist != null) {
+                dists.put(tuple.id(), dist);
+            }
+        }
+
+        return new DataPage<>(id, new TreeSet<>(tuples), dists);
     }
 
     @Override
     public NodeHeader<byte[]> nodeAt(TimeId id) {
-        return nodes.get(id);
+        lock.readLock().lock();
+        try {
+            return nodes.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<NodeHeader<byte[]>> nodesAt(Collection<TimeId> ids) {
+        lock.readLock().lock();
+        try {
+            return ids.stream().map(id -> nodes.get(id)).filter(Objects::nonNull).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<DataPage<byte[], byte[]>> dataPagesAt(Collection<TimeId> ids) {
+        lock.readLock().lock();
+        try {
+            return ids.stream().map(id -> readDataPage(id)).filter(Objects::nonNull).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public TimeId pageIdOf(TimeId tupleId) {
+        requireNonNull(tupleId);
+        lock.readLock().lock();
+        try {
+            return pageIds.get(tupleId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<TimeId, TimeId> pageIdsOfTuplesOlderThan(Instant cutoff) {
+        requireNonNull(cutoff);
+
+        // TimeIds sort by time, so only the old Tuples at the front of the index are visited
+        Map<TimeId, TimeId> oldTuples = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<TimeId, TimeId> entry : pageIds.entrySet()) {
+                if (!entry.getKey().time().isBefore(cutoff)) {
+                    break;
+                }
+                oldTuples.put(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return oldTuples;
     }
 
     @Override
     public void applyTransaction(TreeTransaction<byte[], byte[]> transaction) {
+        lock.writeLock().lock();
+        try {
+            write(transaction);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void write(TreeTransaction<byte[], byte[]> transaction) {
 
         //        System.out.println(transaction.describe());
 
@@ -84,17 +188,28 @@ public class InMemoryStore implements DataStore {
 
         writeHeaders(transaction.createdNodes());
         writeHeaders(transaction.updatedNodes());
-        if (transaction.hasNewRoot()) {
-            this.root = transaction.newRoot();
-        }
+        this.root = transaction.rootAfter(root);
     }
 
     private void writeTuples(List<TupleAssignment<byte[], byte[]>> tuples) {
-        tuples.forEach(ta -> tupleMultiMap.put(ta.pageId(), ta.tuple()));
+        tuples.forEach(ta -> {
+            tupleMultiMap.put(ta.pageId(), ta.tuple());
+            pageIds.put(ta.tupleId(), ta.pageId());
+            if (Double.isNaN(ta.distToCenter())) {
+                centerDists.remove(ta.tupleId());
+            } else {
+                centerDists.put(ta.tupleId(), ta.distToCenter());
+            }
+        });
     }
 
     private void deletePages(Set<TimeId> deletedLeafNodes) {
-        deletedLeafNodes.forEach(id -> tupleMultiMap.removeAll(id));
+        for (TimeId id : deletedLeafNodes) {
+            tupleMultiMap.removeAll(id).forEach(tuple -> {
+                centerDists.remove(tuple.id());
+                pageIds.remove(tuple.id());
+            });
+        }
     }
 
     private void deleteNodeHeaders(Set<TimeId> deletedNodeHeaders) {
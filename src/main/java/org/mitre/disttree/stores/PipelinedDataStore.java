@@ -0,0 +1,426 @@
+package org.mitre.disttree.stores;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import org.mitre.caasd.commons.ids.TimeId;
+import org.mitre.disttree.DataPage;
+import org.mitre.disttree.DataStore;
+import org.mitre.disttree.NodeHeader;
+import org.mitre.disttree.TreeTransaction;
+import org.mitre.disttree.TupleAssignment;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A PipelinedDataStore decorates a (slow) DataStore so TreeTransactions are persisted by a
+ * background thread. applyTransactionAsync returns as soon as the transaction is queued, so the
+ * next TreeTransaction can be computed while the previous one is still being written.
+ * <p>
+ * The not-yet-durable state is well-defined: every read reflects every transaction that was
+ * queued, in order. The NodeHeaders and DataPages written by pending transactions are kept in an
+ * overlay until the wrapped DataStore has persisted them, and lastTransactionId() and rootId()
+ * report the state after the last queued transaction. Consequently, the next TreeTransaction is
+ * built against the correct expectedTreeId.
+ * <p>
+ * Transactions are written in the order they were queued. When a write fails every later write
+ * also fails (they were built on top of the failed transaction) and all further transactions are
+ * rejected.
+ * <p>
+ * Reads that miss the overlay are sent to the wrapped DataStore while it may be writing, so the
+ * wrapped DataStore must support reads that are concurrent with applyTransaction. InMemoryStore
+ * does (it locks), and so does DuckDBStore (it commits each transaction as one SQL transaction and
+ * reads through separate connections).
+ * <p>
+ * Call close() to stop the background writer once the PipelinedDataStore is no longer needed.
+ */
+public class PipelinedDataStore implements DataStore, AutoCloseable {
+
+    static final int DEFAULT_MAX_PENDING_TRANSACTIONS = 4;
+
+    /** A DataStore that performs I/O operations to read and write data. */
+    private final DataStore innerDataStore;
+
+    /** Writes transactions to the wrapped DataStore (one at a time, in order). */
+    private final ExecutorService writer;
+
+    /** Blocks applyTransactionAsync when too many transactions are waiting to be written. */
+    private final Semaphore pendingPermits;
+
+    /** NodeHeaders written by pending transactions (a null NodeHeader was deleted). */
+    private final Map<TimeId, PendingNode> pendingNodes;
+
+    /** DataPages written by pending transactions (a null DataPage was deleted). */
+    private final Map<TimeId, PendingPage> pendingPages;
+
+    private volatile TimeId lastTransactionId;
+
+    private volatile TimeId rootId;
+
+    /** Completes when every transaction queued so far has been written. */
+    private volatile CompletableFuture<TimeId> lastWrite;
+
+    /** The first write failure, once this is set all further transactions are rejected. */
+    private volatile Throwable failure;
+
+    /**
+     * @param dataStore              A DataStore that performs (slow) I/O operations to read and
+     *                               write data
+     * @param maxPendingTransactions The max number of transactions that can be waiting to be
+     *                               written (applyTransactionAsync blocks when this is exceeded)
+     */
+    PipelinedDataStore(DataStore dataStore, int maxPendingTransactions) {
+        requireNonNull(dataStore);
+        checkArgument(maxPendingTransactions > 0);
+
+        this.innerDataStore = dataStore;
+        this.writer = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("pipelined-store-writer-%d")
+                .setDaemon(true)
+                .build());
+        this.pendingPermits = new Semaphore(maxPendingTransactions);
+        this.pendingNodes = new ConcurrentHashMap<>();
+        this.pendingPages = new ConcurrentHashMap<>();
+
+        this.lastTransactionId = innerDataStore.lastTransactionId();
+        this.rootId = innerDataStore.rootId();
+        this.lastWrite = CompletableFuture.completedFuture(lastTransactionId);
+    }
+
+    /** Wrap a DataStore so that up to 4 transactions can be waiting to be written. */
+    PipelinedDataStore(DataStore dataStore) {
+        this(dataStore, DEFAULT_MAX_PENDING_TRANSACTIONS);
+    }
+
+    /** A NodeHeader (or deletion) that was written by a pending transaction. */
+    private record PendingNode(NodeHeader<byte[]> node, TimeId writtenBy) {}
+
+    /**
+     * A DataPage (or deletion) that was written by a pending transaction.
+     *
+     * @param page              The page's content (null = the page was deleted)
+     * @param extendsStoredPage When true, the page only holds the Tuples that were ADDED to the
+     *                          page the wrapped DataStore holds
+     * @param writtenBy         The last pending transaction that altered this page
+     */
+    private record PendingPage(DataPage<byte[], byte[]> page, boolean extendsStoredPage, TimeId writtenBy) {}
+
+    @Override
+    public TimeId lastTransactionId() {
+        return lastTransactionId;
+    }
+
+    @Override
+    public TimeId rootId() {
+        return rootId;
+    }
+
+    @Override
+    public NodeHeader<byte[]> nodeAt(TimeId id) {
+        requireNonNull(id);
+
+        PendingNode pending = pendingNodes.get(id);
+
+        return nonNull(pending) ? pending.node() : innerDataStore.nodeAt(id);
+    }
+
+    @Override
+    public List<NodeHeader<byte[]>> nodesAt(Collection<TimeId> ids) {
+
+        // Look at the overlay once (a pending entry may disappear when its write finishes)
+        Map<TimeId, PendingNode> pending = new HashMap<>();
+        List<TimeId> storedIds = new ArrayList<>();
+        for (TimeId id : ids) {
+            PendingNode entry = pendingNodes.get(id);
+            if (nonNull(entry)) {
+                pending.put(id, entry);
+            } else {
+                storedIds.add(id);
+            }
+        }
+
+        // NodeHeaders that are not in the overlay are loaded with ONE bulk read
+        Map<TimeId, NodeHeader<byte[]>> found = new HashMap<>();
+        if (!storedIds.isEmpty()) {
+            innerDataStore.nodesAt(storedIds).forEach(node -> found.put(node.id(), node));
+        }
+
+        List<NodeHeader<byte[]>> nodes = new ArrayList<>(ids.size());
+        for (TimeId id : ids) {
+            NodeHeader<byte[]> node = pending.containsKey(id) ? pending.get(id).node() : found.get(id);
+            if (nonNull(node)) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    @Override
+    public DataPage<byte[], byte[]> dataPageAt(TimeId id) {
+        requireNonNull(id);
+
+        PendingPage pending = pendingPages.get(id);
+
+        if (isNull(pending)) {
+            return innerDataStore.dataPageAt(id);
+        }
+        if (!pending.extendsStoredPage()) {
+            return pending.page();
+        }
+
+        return withStoredTuples(pending, innerDataStore.dataPageAt(id));
+    }
+
+    @Override
+    public List<DataPage<byte[], byte[]>> dataPagesAt(Collection<TimeId> ids) {
+
+        // Look at the overlay once (a pending entry may disappear when its write finishes)
+        Map<TimeId, PendingPage> pendingById = new HashMap<>();
+        List<TimeId> storedIds = new ArrayList<>();
+        for (TimeId id : ids) {
+            PendingPage entry = pendingPages.get(id);
+            if (nonNull(entry)) {
+                pendingById.put(id, entry);
+            }
+            if (isNull(entry) || entry.extendsStoredPage()) {
+                storedIds.add(id);
+            }
+        }
+
+        // DataPages that are not in the overlay (or only extend a stored page) are loaded with ONE bulk read
+        Map<TimeId, DataPage<byte[], byte[]>> found = new HashMap<>();
+        if (!storedIds.isEmpty()) {
+            innerDataStore.dataPagesAt(storedIds).forEach(page -> found.put(page.id(), page));
+        }
+
+        List<DataPage<byte[], byte[]>> pages = new ArrayList<>(ids.size());
+        for (TimeId id : ids) {
+            PendingPage pending = pendingById.get(id);
+            DataPage<byte[], byte[]> page;
+            if (isNull(pending)) {
+                page = found.get(id);
+            } else if (pending.extendsStoredPage()) {
+                page = withStoredTuples(pending, found.get(id));
+            } else {
+                page = pending.page();
+            }
+            if (nonNull(page)) {
+                pages.add(page);
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Combine the Tuples added by pending transactions with the stored edition of the page. The
+     * stored page may already contain some of these Tuples (if a write finished after the overlay
+     * was read), merging is harmless in that case because a DataPage holds a set of Tuples.
+     */
+    private static DataPage<byte[], byte[]> withStoredTuples(PendingPage pending, DataPage<byte[], byte[]> stored) {
+        return isNull(stored) ? pending.page() : DataPage.merge(stored, pending.page());
+    }
+
+    /** The tuple index is not part of the overlay, so this lookup waits for pending writes. */
+    @Override
+    public TimeId pageIdOf(TimeId tupleId) {
+        requireNonNull(tupleId);
+        flush();
+        return innerDataStore.pageIdOf(tupleId);
+    }
+
+    /** The tuple index is not part of the overlay, so this lookup waits for pending writes. */
+    @Override
+    public Map<TimeId, TimeId> pageIdsOfTuplesOlderThan(Instant cutoff) {
+        requireNonNull(cutoff);
+        flush();
+        return innerDataStore.pageIdsOfTuplesOlderThan(cutoff);
+    }
+
+    /** Block until this transaction (and every transaction queued before it) is written. */
+    @Override
+    public void applyTransaction(TreeTransaction<byte[], byte[]> transaction) {
+        await(applyTransactionAsync(transaction));
+    }
+
+    /**
+     * Queue a transaction to be written by the background thread. Every read that follows this
+     * call reflects the transaction (even before it is durable).
+     *
+     * @return A future that completes with the transaction's id once the wrapped DataStore has
+     *     persisted it.
+     * @throws IllegalStateException When the transaction was not built from the current state, or
+     *                               an earlier write failed
+     */
+    @Override
+    public synchronized CompletableFuture<TimeId> applyTransactionAsync(TreeTransaction<byte[], byte[]> transaction) {
+        requireNonNull(transaction);
+
+        if (nonNull(failure)) {
+            throw new IllegalStateException("Cannot apply transaction, an earlier write failed", failure);
+        }
+        checkState(!writer.isShutdown(), "Cannot apply transaction, this PipelinedDataStore is closed");
+        if (lastTransactionId != transaction.expectedTreeId()) {
+            throw new IllegalStateException("Cannot apply transaction, tree state has changed");
+        }
+
+        pendingPermits.acquireUninterruptibly();
+
+        stageNodes(transaction);
+        stagePages(transaction);
+
+        // applying a transaction changes the rootId and lastTransactionId
+        rootId = transaction.rootAfter(rootId);
+        lastTransactionId = transaction.transactionId();
+
+        CompletableFuture<TimeId> write = CompletableFuture.supplyAsync(() -> persist(transaction), writer);
+        write.whenComplete((id, error) -> pendingPermits.release());
+
+        lastWrite = write;
+        return write;
+    }
+
+    /**
+     * Pending transactions are not part of the wrapped DataStore's history, so this waits for every
+     * pending write before the wrapped DataStore opens the Snapshot.
+     */
+    @Override
+    public Snapshot openSnapshot() {
+        flush();
+        return innerDataStore.openSnapshot();
+    }
+
+    /** Runs on the writer thread. */
+    private TimeId persist(TreeTransaction<byte[], byte[]> transaction) {
+
+        if (nonNull(failure)) {
+            throw new IllegalStateException("Cannot apply transaction, an earlier write failed", failure);
+        }
+
+        try {
+            innerDataStore.applyTransaction(transaction);
+        } catch (RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        }
+
+        // The wrapped DataStore now holds this transaction, drop the entries no later transaction replaced
+        TimeId txId = transaction.transactionId();
+        pendingNodes.values().removeIf(pending -> pending.writtenBy() == txId);
+        pendingPages.values().removeIf(pending -> pending.writtenBy() == txId);
+
+        return txId;
+    }
+
+    /** Created and updated NodeHeaders are always complete, so they can be directly staged. */
+    private void stageNodes(TreeTransaction<byte[], byte[]> transaction) {
+
+        TimeId txId = transaction.transactionId();
+
+        transaction.deletedNodeHeaders().forEach(id -> pendingNodes.put(id, new PendingNode(null, txId)));
+        transaction.createdNodes().forEach(node -> pendingNodes.put(node.id(), new PendingNode(node, txId)));
+        transaction.updatedNodes().forEach(node -> pendingNodes.put(node.id(), new PendingNode(node, txId)));
+    }
+
+    /**
+     * Stage exactly the DataPages touched by this transaction (see CachingDataStore).
+     * <p>
+     * A deleted DataPage is rebuilt from scratch, so its new contents are exactly the tuples this
+     * transaction assigns to it. A DataPage that was not deleted only receives new tuples, so those
+     * tuples are added to whatever edition of the page is already staged (or stored).
+     */
+    private void stagePages(TreeTransaction<byte[], byte[]> transaction) {
+
+        TimeId txId = transaction.transactionId();
+        Set<TimeId> deletedPages = transaction.deletedLeafNodes();
+
+        Map<TimeId, List<TupleAssignment<byte[], byte[]>>> assignmentsByPage = new HashMap<>();
+        addAssignments(assignmentsByPage, transaction.createdTuples());
+        addAssignments(assignmentsByPage, transaction.updatedTuples());
+
+        for (TimeId deletedPage : deletedPages) {
+            if (!assignmentsByPage.containsKey(deletedPage)) {
+                pendingPages.put(deletedPage, new PendingPage(null, false, txId));
+            }
+        }
+
+        assignmentsByPage.forEach((pageId, assignments) -> {
+            DataPage<byte[], byte[]> newTuples = DataPage.fromAssignments(pageId, assignments);
+            PendingPage prior = pendingPages.get(pageId);
+
+            if (deletedPages.contains(pageId)) {
+                pendingPages.put(pageId, new PendingPage(newTuples, false, txId));
+            } else if (isNull(prior)) {
+                pendingPages.put(pageId, new PendingPage(newTuples, true, txId));
+            } else if (isNull(prior.page())) {
+                // The page was deleted by an earlier pending transaction
+                pendingPages.put(pageId, new PendingPage(newTuples, false, txId));
+            } else {
+                DataPage<byte[], byte[]> combined = DataPage.merge(prior.page(), newTuples);
+                pendingPages.put(pageId, new PendingPage(combined, prior.extendsStoredPage(), txId));
+            }
+        });
+    }
+
+    private static void addAssignments(
+            Map<TimeId, List<TupleAssignment<byte[], byte[]>>> assignmentsByPage,
+            List<TupleAssignment<byte[], byte[]>> assignments) {
+        for (TupleAssignment<byte[], byte[]> ta : assignments) {
+            assignmentsByPage.computeIfAbsent(ta.pageId(), id -> new ArrayList<>()).add(ta);
+        }
+    }
+
+    /**
+     * Block until every queued transaction has been written to the wrapped DataStore.
+     *
+     * @throws RuntimeException The exception that caused a write to fail
+     */
+    public void flush() {
+        await(lastWrite);
+    }
+
+    private static void await(CompletableFuture<TimeId> write) {
+        try {
+            write.join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof RuntimeException cause ? cause : ex;
+        }
+    }
+
+    /**
+     * Block until every queued transaction has been written, then stop the background writer. Reads
+     * still work afterward, but no further transactions can be applied. The wrapped DataStore is not
+     * closed.
+     *
+     * @throws RuntimeException The exception that caused a write to fail
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    /** @return The DataStore this PipelinedDataStore decorates. */
+    public DataStore innerDataStore() {
+        return innerDataStore;
+    }
+}
@@ -0,0 +1,442 @@
+package org.mitre.disttree.stores;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.mitre.caasd.commons.ids.TimeId;
+import org.mitre.disttree.DataPage;
+import org.mitre.disttree.DataStore;
+import org.mitre.disttree.NodeHeader;
+import org.mitre.disttree.TreeTransaction;
+import org.mitre.disttree.TupleAssignment;
+
+import com.google.common.collect.SortedMultiset;
+import com.google.common.collect.TreeMultiset;
+
+/**
+ * A VersionedDataStore decorates a DataStore so it can provide Snapshots (i.e., read-only views
+ * that are pinned to one lastTransactionId). A Snapshot never observes a later (or half-applied)
+ * transaction, so searches and TreeIterators that read from a Snapshot can run at full concurrency
+ * while transactions are applied.
+ * <p>
+ * The wrapped DataStore only holds the current edition of each NodeHeader and DataPage. While at
+ * least one Snapshot is open, applyTransaction first copies the edition of every NodeHeader,
+ * DataPage, and tuple index entry the transaction is about to replace (or delete) into an
+ * in-memory history. A Snapshot reads the history when the item was replaced after the Snapshot
+ * was opened, otherwise it reads the wrapped DataStore. Superseded editions are discarded once no
+ * open Snapshot can reach them. When no Snapshots are open transactions are applied without any
+ * extra I/O.
+ * <p>
+ * Snapshot reads are never blocked by writes. Opening a Snapshot waits for an in-progress
+ * applyTransaction to finish. The wrapped DataStore must support reads that are concurrent with
+ * applyTransaction. InMemoryStore does, DuckDBStore does (each transaction is committed as one SQL
+ * transaction), and PipelinedDataStore does when the DataStore it wraps does.
+ */
+public class VersionedDataStore implements DataStore {
+
+    /** A DataStore that performs I/O operations to read and write data. */
+    private final DataStore innerDataStore;
+
+    /** Serializes transactions, opening Snapshots, and pruning the history. */
+    private final ReentrantLock writeLock;
+
+    /** The number of transactions applied through this DataStore (guarded by writeLock). */
+    private long version;
+
+    /** The version each open Snapshot is pinned to. */
+    private final SortedMultiset<Long> openSnapshots;
+
+    /** Superseded NodeHeaders: node id -> (version that replaced the node -> prior edition). */
+    private final Map<TimeId, NavigableMap<Long, Retired<NodeHeader<byte[]>>>> nodeHistory;
+
+    /** Superseded DataPages: page id -> (version that replaced the page -> prior edition). */
+    private final Map<TimeId, NavigableMap<Long, Retired<DataPage<byte[], byte[]>>>> pageHistory;
+
+    /** Superseded tuple index entries: tuple id -> (version that moved the tuple -> prior page id). */
+    private final Map<TimeId, NavigableMap<Long, Retired<TimeId>>> tupleHistory;
+
+    /** @param dataStore A DataStore that holds the current edition of the tree */
+    VersionedDataStore(DataStore dataStore) {
+        requireNonNull(dataStore);
+        this.innerDataStore = dataStore;
+        this.writeLock = new ReentrantLock();
+        this.version = 0;
+        this.openSnapshots = TreeMultiset.create();
+        this.nodeHistory = new ConcurrentHashMap<>();
+        this.pageHistory = new ConcurrentHashMap<>();
+        this.tupleHistory = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * The edition of an item that existed before a transaction replaced it.
+     *
+     * @param item The prior edition (null = the item did not exist)
+     */
+    private record Retired<T>(T item) {}
+
+    @Override
+    public TimeId lastTransactionId() {
+        return innerDataStore.lastTransactionId();
+    }
+
+    @Override
+    public TimeId rootId() {
+        return innerDataStore.rootId();
+    }
+
+    @Override
+    public DataPage<byte[], byte[]> dataPageAt(TimeId id) {
+        return innerDataStore.dataPageAt(id);
+    }
+
+    @Override
+    public NodeHeader<byte[]> nodeAt(TimeId id) {
+        return innerDataStore.nodeAt(id);
+    }
+
+    @Override
+    public List<NodeHeader<byte[]>> nodesAt(Collection<TimeId> ids) {
+        return innerDataStore.nodesAt(ids);
+    }
+
+    @Override
+    public List<DataPage<byte[], byte[]>> dataPagesAt(Collection<TimeId> ids) {
+        return innerDataStore.dataPagesAt(ids);
+    }
+
+    @Override
+    public TimeId pageIdOf(TimeId tupleId) {
+        return innerDataStore.pageIdOf(tupleId);
+    }
+
+    @Override
+    public Map<TimeId, TimeId> pageIdsOfTuplesOlderThan(Instant cutoff) {
+        return innerDataStore.pageIdsOfTuplesOlderThan(cutoff);
+    }
+
+    @Override
+    public void applyTransaction(TreeTransaction<byte[], byte[]> transaction) {
+        requireNonNull(transaction);
+        writeLock.lock();
+        try {
+            retireEditionsReplacedBy(transaction);
+            innerDataStore.applyTransaction(transaction);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * The superseded editions are copied before the transaction is handed to the wrapped DataStore.
+     * The wrapped DataStore reflects the transaction as soon as applyTransactionAsync returns, so
+     * Snapshots are unaffected by when the transaction becomes durable.
+     */
+    @Override
+    public CompletableFuture<TimeId> applyTransactionAsync(TreeTransaction<byte[], byte[]> transaction) {
+        requireNonNull(transaction);
+        writeLock.lock();
+        try {
+            retireEditionsReplacedBy(transaction);
+            return innerDataStore.applyTransactionAsync(transaction);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Open a Snapshot of the current state of this DataStore. Close the Snapshot as soon as it is
+     * no longer needed, the NodeHeaders and DataPages it may read are retained until then.
+     */
+    @Override
+    public Snapshot openSnapshot() {
+        writeLock.lock();
+        try {
+            pruneHistory();
+            synchronized (openSnapshots) {
+                openSnapshots.add(version);
+            }
+            return new VersionedSnapshot(version, innerDataStore.lastTransactionId(), innerDataStore.rootId());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Copy everything this transaction will replace into the history (only if a Snapshot may read it). */
+    private void retireEditionsReplacedBy(TreeTransaction<byte[], byte[]> transaction) {
+
+        pruneHistory();
+        version++;
+
+        if (!hasOpenSnapshots()) {
+            return;
+        }
+
+        Set<TimeId> nodeIds = new HashSet<>(transaction.deletedNodeHeaders());
+        transaction.createdNodes().forEach(node -> nodeIds.add(node.id()));
+        transaction.updatedNodes().forEach(node -> nodeIds.add(node.id()));
+
+        Set<TimeId> pageIds = new HashSet<>(transaction.deletedLeafNodes());
+        transaction.createdTuples().forEach(ta -> pageIds.add(ta.pageId()));
+        transaction.updatedTuples().forEach(ta -> pageIds.add(ta.pageId()));
+
+        // Read every prior edition with ONE bulk read per item type
+        Map<TimeId, NodeHeader<byte[]>> priorNodes = new HashMap<>();
+        innerDataStore.nodesAt(nodeIds).forEach(node -> priorNodes.put(node.id(), node));
+        Map<TimeId, DataPage<byte[], byte[]>> priorPages = new HashMap<>();
+        innerDataStore.dataPagesAt(pageIds).forEach(page -> priorPages.put(page.id(), page));
+
+        nodeIds.forEach(id -> retire(nodeHistory, id, priorNodes.get(id)));
+        pageIds.forEach(id -> retire(pageHistory, id, priorPages.get(id)));
+
+        // Tuples only leave a page when that page is deleted, new Tuples were not in the index at all
+        for (TimeId deletedPage : transaction.deletedLeafNodes()) {
+            DataPage<byte[], byte[]> prior = priorPages.get(deletedPage);
+            if (nonNull(prior)) {
+                prior.tuples().forEach(tuple -> retire(tupleHistory, tuple.id(), deletedPage));
+            }
+        }
+        for (TupleAssignment<byte[], byte[]> ta : transaction.createdTuples()) {
+            retire(tupleHistory, ta.tupleId(), null);
+        }
+    }
+
+    private <T> void retire(Map<TimeId, NavigableMap<Long, Retired<T>>> history, TimeId id, T priorEdition) {
+        history.computeIfAbsent(id, key -> new ConcurrentSkipListMap<>()).put(version, new Retired<>(priorEdition));
+    }
+
+    private boolean hasOpenSnapshots() {
+        synchronized (openSnapshots) {
+            return !openSnapshots.isEmpty();
+        }
+    }
+
+    /**
+     * Discard the editions no open Snapshot can read. A Snapshot pinned to version v only reads
+     * editions that were replaced by a later version, so everything replaced at or before the
+     * oldest open Snapshot's version is unreachable. Must be called while holding the writeLock.
+     */
+    private void pruneHistory() {
+        Long oldestPinned;
+        synchronized (openSnapshots) {
+            oldestPinned = openSnapshots.isEmpty() ? null : openSnapshots.firstEntry().getElement();
+        }
+
+        if (isNull(oldestPinned)) {
+            nodeHistory.clear();
+            pageHistory.clear();
+            tupleHistory.clear();
+            return;
+        }
+
+        prune(nodeHistory, oldestPinned);
+        prune(pageHistory, oldestPinned);
+        prune(tupleHistory, oldestPinned);
+    }
+
+    private static <T> void prune(Map<TimeId, NavigableMap<Long, Retired<T>>> history, long oldestPinned) {
+        history.values().removeIf(editions -> {
+            editions.headMap(oldestPinned, true).clear();
+            return editions.isEmpty();
+        });
+    }
+
+    /** Called when a Snapshot is closed, the history is pruned now unless a write is in progress. */
+    private void release(long pinnedVersion) {
+        synchronized (openSnapshots) {
+            openSnapshots.remove(pinnedVersion);
+        }
+        if (writeLock.tryLock()) {
+            try {
+                pruneHistory();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return The edition of this item a Snapshot pinned to this version should see, or null when
+     *     the item has not been replaced since then (i.e., the wrapped DataStore's edition is correct)
+     */
+    private static <T> Retired<T> retiredEdition(
+            Map<TimeId, NavigableMap<Long, Retired<T>>> history, TimeId id, long pinnedVersion) {
+        NavigableMap<Long, Retired<T>> editions = history.get(id);
+        if (isNull(editions)) {
+            return null;
+        }
+        Map.Entry<Long, Retired<T>> replacement = editions.higherEntry(pinnedVersion);
+        return isNull(replacement) ? null : replacement.getValue();
+    }
+
+    /**
+     * Read these items as they were at a pinned version. The history is consulted before AND after
+     * the wrapped DataStore is read. A transaction copies an item into the history before it
+     * alters the wrapped DataStore, so if the read saw a newer edition the second lookup finds the
+     * correct edition.
+     */
+    private static <T> List<T> readAsOf(
+            Collection<TimeId> ids,
+            long pinnedVersion,
+            Map<TimeId, NavigableMap<Long, Retired<T>>> history,
+            Function<List<TimeId>, List<T>> bulkRead,
+            Function<T, TimeId> idOf) {
+
+        Map<TimeId, T> found = new HashMap<>();
+        List<TimeId> currentIds = new ArrayList<>();
+        for (TimeId id : ids) {
+            Retired<T> retired = retiredEdition(history, id, pinnedVersion);
+            if (nonNull(retired)) {
+                found.put(id, retired.item());
+            } else {
+                currentIds.add(id);
+            }
+        }
+
+        if (!currentIds.isEmpty()) {
+            bulkRead.apply(currentIds).forEach(item -> found.put(idOf.apply(item), item));
+            for (TimeId id : currentIds) {
+                Retired<T> retired = retiredEdition(history, id, pinnedVersion);
+                if (nonNull(retired)) {
+                    found.put(id, retired.item());
+                }
+            }
+        }
+
+        List<T> items = new ArrayList<>(ids.size());
+        for (TimeId id : ids) {
+            T item = found.get(id);
+            if (nonNull(item)) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    /** @return The number of superseded NodeHeaders, DataPages, and tuple index entries being retained. */
+    public long retainedEditionCount() {
+        return count(nodeHistory) + count(pageHistory) + count(tupleHistory);
+    }
+
+    private static long count(Map<TimeId, ? extends NavigableMap<Long, ?>> history) {
+        return history.values().stream().mapToLong(editions -> editions.size()).sum();
+    }
+
+    /** @return The DataStore this VersionedDataStore decorates. */
+    public DataStore innerDataStore() {
+        return innerDataStore;
+    }
+
+    /** A read-only view of the VersionedDataStore that is pinned to one version. */
+    private class VersionedSnapshot implements Snapshot {
+
+        private final long pinnedVersion;
+
+        private final TimeId lastTransactionId;
+
+        private final TimeId rootId;
+
+        private volatile boolean closed;
+
+        VersionedSnapshot(long pinnedVersion, TimeId lastTransactionId, TimeId rootId) {
+            this.pinnedVersion = pinnedVersion;
+            this.lastTransactionId = lastTransactionId;
+            this.rootId = rootId;
+            this.closed = false;
+        }
+
+        @Override
+        public TimeId lastTransactionId() {
+            return lastTransactionId;
+        }
+
+        @Override
+        public TimeId rootId() {
+            return rootId;
+        }
+
+        @Override
+        public DataPage<byte[], byte[]> dataPageAt(TimeId id) {
+            requireNonNull(id);
+            return dataPagesAt(List.of(id)).stream().findFirst().orElse(null);
+        }
+
+        @Override
+        public NodeHeader<byte[]> nodeAt(TimeId id) {
+            requireNonNull(id);
+            return nodesAt(List.of(id)).stream().findFirst().orElse(null);
+        }
+
+        @Override
+        public List<NodeHeader<byte[]>> nodesAt(Collection<TimeId> ids) {
+            checkOpen();
+            return readAsOf(ids, pinnedVersion, nodeHistory, innerDataStore::nodesAt, NodeHeader::id);
+        }
+
+        @Override
+        public List<DataPage<byte[], byte[]>> dataPagesAt(Collection<TimeId> ids) {
+            checkOpen();
+            return readAsOf(ids, pinnedVersion, pageHistory, innerDataStore::dataPagesAt, DataPage::id);
+        }
+
+        @Override
+        public TimeId pageIdOf(TimeId tupleId) {
+            requireNonNull(tupleId);
+            checkOpen();
+
+            Retired<TimeId> retired = retiredEdition(tupleHistory, tupleId, pinnedVersion);
+            if (nonNull(retired)) {
+                return retired.item();
+            }
+            TimeId pageId = innerDataStore.pageIdOf(tupleId);
+            retired = retiredEdition(tupleHistory, tupleId, pinnedVersion);
+            return nonNull(retired) ? retired.item() : pageId;
+        }
+
+        /** Scanning the tuple index is only needed to alter the tree, Snapshots are read-only. */
+        @Override
+        public Map<TimeId, TimeId> pageIdsOfTuplesOlderThan(Instant cutoff) {
+            throw new UnsupportedOperationException("Snapshots do not support scanning the tuple index");
+        }
+
+        @Override
+        public void applyTransaction(TreeTransaction<byte[], byte[]> transaction) {
+            throw new UnsupportedOperationException("Snapshots are read-only");
+        }
+
+        @Override
+        public CompletableFuture<TimeId> applyTransactionAsync(TreeTransaction<byte[], byte[]> transaction) {
+            throw new UnsupportedOperationException("Snapshots are read-only");
+        }
+
+        /** Release this Snapshot's pin on the history (calling close again does nothing). */
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release(pinnedVersion);
+            }
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("This Snapshot is closed");
+            }
+        }
+    }
+}
@@ -52,4 +52,19 @@ class BatchAccumulatorTest {
         assertThat(batchMaker.currentBatchSize(), is(0));
         assertThat(batch.tuples().size(), is(4));
     }
+
+    @Test
+    public void drainResetsByteCount() {
+
+        var batchMaker = new Batch.BatchAccumulator<LatLong, byte[]>();
+
+        batchMaker.addToBatch(newRandomDatum(), 10);
+        batchMaker.addToBatch(newRandomDatum(), 15);
+
+        assertThat(batchMaker.currentBatchBytes(), is(25L));
+
+        batchMaker.drainToBatch();
+
+        assertThat(batchMaker.currentBatchBytes(), is(0L));
+    }
 }
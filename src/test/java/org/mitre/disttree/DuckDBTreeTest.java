@@ -1,7 +1,9 @@
 package org.mitre.disttree;
 
+import static java.util.stream.Collectors.toSet;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.mitre.disttree.Batch.batchify;
 import static org.mitre.disttree.MiscTestUtils.randomLatLong;
@@ -11,10 +13,13 @@ import static org.mitre.disttree.Tuple.newSlimTuple;
 import static org.mitre.disttree.stores.DataStores.duckDbStore;
 
 import java.io.File;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.mitre.caasd.commons.LatLong;
+import org.mitre.caasd.commons.ids.TimeId;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -191,4 +196,103 @@ public class DuckDBTreeTest {
         // verify a search can run
         assertDoesNotThrow(() -> tree.getClosest(randomLatLong()));
     }
+
+    @Test
+    public void bulkReadsMatchSingleReads() {
+
+        DataStore store = duckDbStore(testDir.getAbsolutePath());
+
+        TreeConfig<LatLong, String> config = TreeConfig.<LatLong, String>builder()
+                .maxTuplesPerPage(10)
+                .branchingFactor(4)
+                .distMetric(METRIC)
+                .dataStore(store)
+                .keySerde(KEY_SERDE)
+                .valueSerde(VALUE_SERDE)
+                .build();
+
+        var tree = new InternalTree<>(config);
+        addTestDataToTree(tree, createTestData(500));
+
+        List<TimeId> nodeIds = tree.allNodes().stream().map(NodeHeader::id).toList();
+        List<TimeId> leafIds = tree.leafNodes().stream().map(NodeHeader::id).toList();
+
+        List<NodeHeader<byte[]>> nodes = store.nodesAt(nodeIds);
+        List<DataPage<byte[], byte[]>> pages = store.dataPagesAt(leafIds);
+
+        // Every id is found, and the results come back in the requested order
+        assertThat(nodes.size(), is(nodeIds.size()));
+        assertThat(pages.size(), is(leafIds.size()));
+        for (int i = 0; i < nodeIds.size(); i++) {
+            assertThat(nodes.get(i).id(), is(nodeIds.get(i)));
+            assertThat(nodes.get(i).numTuples(), is(store.nodeAt(nodeIds.get(i)).numTuples()));
+        }
+        for (int i = 0; i < leafIds.size(); i++) {
+            assertThat(pages.get(i).id(), is(leafIds.get(i)));
+            assertThat(pages.get(i).idSet(), is(store.dataPageAt(leafIds.get(i)).idSet()));
+        }
+
+        // Ids that do not correspond to stored data are skipped
+        assertThat(store.nodesAt(List.of(TimeId.newId())).isEmpty(), is(true));
+        assertThat(store.dataPagesAt(List.of(TimeId.newId())).isEmpty(), is(true));
+    }
+
+    @Test
+    public void tupleIndexFindsTheDataPageOfEveryTuple() {
+
+        DataStore store = duckDbStore(testDir.getAbsolutePath());
+
+        TreeConfig<LatLong, String> config = TreeConfig.<LatLong, String>builder()
+                .maxTuplesPerPage(20)
+                .distMetric(METRIC)
+                .dataStore(store)
+                .keySerde(KEY_SERDE)
+                .valueSerde(VALUE_SERDE)
+                .build();
+
+        var tree = new DistanceTree<>(config);
+        List<Tuple<LatLong, String>> testData = createTestData(500);
+        addTestDataToTree(tree, testData);
+
+        // Tuples move as leaves split, the index must always point to the tuple's current DataPage
+        for (Tuple<LatLong, String> tuple : testData) {
+            TimeId pageId = store.pageIdOf(tuple.id());
+            assertThat(store.dataPageAt(pageId).idSet().contains(tuple.id()), is(true));
+            assertThat(tree.get(tuple.id()).key(), is(tuple.key()));
+        }
+
+        assertThat(store.pageIdOf(TimeId.newId()), nullValue());
+        assertThat(tree.get(TimeId.newId()), nullValue());
+    }
+
+    @Test
+    public void expiryQueryUsesTupleTimes() throws InterruptedException {
+
+        DataStore store = duckDbStore(testDir.getAbsolutePath());
+
+        DistanceTree<LatLong, String> tree = TreeConfig.<LatLong, String>builder()
+                .maxTuplesPerPage(20)
+                .distMetric(METRIC)
+                .dataStore(store)
+                .keySerde(KEY_SERDE)
+                .valueSerde(VALUE_SERDE)
+                .buildTree();
+
+        List<Tuple<LatLong, String>> oldData = createTestData(300);
+        Thread.sleep(5);
+        Instant cutoff = Instant.now();
+        Thread.sleep(5);
+        List<Tuple<LatLong, String>> newData = createTestData(200);
+
+        addTestDataToTree(tree, oldData);
+        addTestDataToTree(tree, newData);
+
+        // Only tuples created before the cutoff are found, each with its current DataPage
+        Map<TimeId, TimeId> oldTuples = store.pageIdsOfTuplesOlderThan(cutoff);
+        assertThat(oldTuples.keySet(), is(oldData.stream().map(Tuple::id).collect(toSet())));
+        oldTuples.forEach((tupleId, pageId) -> assertThat(store.pageIdOf(tupleId), is(pageId)));
+
+        assertThat(tree.expireOlderThan(cutoff), is(300));
+        verifyTree(newData, tree);
+    }
 }
@@ -0,0 +1,197 @@
+package org.mitre.disttree;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mitre.disttree.Serdes.latLongSerde;
+import static org.mitre.disttree.Serdes.stringUtf8Serde;
+import static org.mitre.disttree.SharedTestUtils.*;
+import static org.mitre.disttree.stores.DataStores.inMemoryStore;
+import static org.mitre.disttree.stores.DataStores.pipelinedStore;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mitre.caasd.commons.LatLong;
+import org.mitre.caasd.commons.ids.TimeId;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.jupiter.api.Test;
+
+class IngestServiceTest {
+
+    @Test
+    public void concurrentProducersAddEveryTuple() throws InterruptedException {
+
+        DistanceTree<LatLong, String> tree = newTree(pipelinedStore(inMemoryStore()));
+        IngestPolicy policy = IngestPolicy.defaults().withMaxBatchSize(100).withMaxQueuedTuples(50);
+
+        ConcurrentLinkedQueue<Tuple<LatLong, String>> added = new ConcurrentLinkedQueue<>();
+
+        try (IngestService<LatLong, String> service = tree.startIngestService(policy)) {
+
+            List<Thread> producers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                List<Tuple<LatLong, String>> data = createTestData(1_000);
+                producers.add(new Thread(() -> {
+                    for (Tuple<LatLong, String> tuple : data) {
+                        TimeId id = service.put(tuple.key(), tuple.value());
+                        added.add(new Tuple<>(id, tuple.key(), tuple.value()));
+                    }
+                }));
+            }
+            producers.forEach(Thread::start);
+            for (Thread producer : producers) {
+                producer.join();
+            }
+
+            service.flush();
+            verifyTree(new ArrayList<>(added), tree);
+        }
+    }
+
+    @Test
+    public void lingeringTuplesAreCommittedWithoutAFlush() throws InterruptedException {
+
+        DistanceTree<LatLong, String> tree = newTree(inMemoryStore());
+        IngestPolicy policy = IngestPolicy.defaults().withMaxLinger(Duration.ofMillis(10));
+
+        try (IngestService<LatLong, String> service = tree.startIngestService(policy)) {
+            LatLong key = LatLong.of(10.0, 10.0);
+            service.put(key, "lonely");
+
+            Thread.sleep(500);
+
+            assertThat(tree.knnSearch(key, 1).results().get(0).value(), is("lonely"));
+        }
+    }
+
+    @Test
+    public void lingerTimeStartsWhenPutAcceptsTheTuple() throws InterruptedException {
+
+        // The first metric execution after "stall" is set takes 1 second, this keeps the writer busy
+        AtomicBoolean stall = new AtomicBoolean(false);
+        CountDownLatch stalled = new CountDownLatch(1);
+
+        DistanceTree<LatLong, String> tree = TreeConfig.<LatLong, String>builder()
+                .distMetric((LatLong a, LatLong b) -> {
+                    if (stall.compareAndSet(true, false)) {
+                        stalled.countDown();
+                        Uninterruptibles.sleepUninterruptibly(1, SECONDS);
+                    }
+                    return a.distanceTo(b).inNauticalMiles();
+                })
+                .dataStore(inMemoryStore())
+                .keySerde(latLongSerde())
+                .valueSerde(stringUtf8Serde())
+                .buildTree();
+        IngestPolicy policy = IngestPolicy.defaults().withMaxLinger(Duration.ofMillis(600));
+
+        try (IngestService<LatLong, String> service = tree.startIngestService(policy)) {
+            service.put(LatLong.of(0.0, 0.0), "seed");
+            service.flush();
+
+            stall.set(true);
+            service.put(LatLong.of(1.0, 1.0), "slow");
+            assertThat(stalled.await(5, SECONDS), is(true));
+
+            // This Tuple waits in the queue while the writer is stuck, that wait counts as lingering
+            TimeId id = service.put(LatLong.of(2.0, 2.0), "waited");
+
+            Thread.sleep(1_300);
+
+            assertThat(tree.get(id), notNullValue());
+        }
+    }
+
+    @Test
+    public void closedServicesRejectTuples() {
+
+        DistanceTree<LatLong, String> tree = newTree(inMemoryStore());
+
+        IngestService<LatLong, String> service = tree.startIngestService(IngestPolicy.defaults());
+        service.put(LatLong.of(0.0, 0.0), "a");
+        service.close();
+
+        // close() commits whatever was still queued
+        assertThat(tree.knnSearch(LatLong.of(0.0, 0.0), 1).results().get(0).value(), is("a"));
+        assertThrows(IllegalStateException.class, () -> service.put(LatLong.of(1.0, 1.0), "b"));
+    }
+
+    @Test
+    public void batchesAreCommittedWhenTheyReachMaxBatchBytes() throws InterruptedException {
+
+        LatLong key = LatLong.of(10.0, 10.0);
+        String value = "x".repeat(100);
+        long tupleBytes = latLongSerde().toBytes(key).length + stringUtf8Serde().toBytes(value).length;
+
+        // Only the byte limit can commit a Batch (the count limit and linger time are never reached)
+        DistanceTree<LatLong, String> tree = newTree(inMemoryStore());
+        IngestPolicy policy =
+                IngestPolicy.defaults().withMaxBatchBytes(10 * tupleBytes).withMaxLinger(Duration.ofHours(1));
+
+        try (IngestService<LatLong, String> service = tree.startIngestService(policy)) {
+            for (int i = 0; i < 95; i++) {
+                service.put(key, value);
+            }
+
+            Thread.sleep(500);
+
+            // Nine full Batches of 10 Tuples were committed, the last 5 Tuples are still waiting
+            assertThat(tree.treeStats().numTuples(), is(90));
+
+            service.flush();
+            assertThat(tree.treeStats().numTuples(), is(95));
+        }
+    }
+
+    @Test
+    public void closingWhileProducersRunKeepsEveryAcceptedTuple() throws InterruptedException {
+
+        DistanceTree<LatLong, String> tree = newTree(pipelinedStore(inMemoryStore()));
+        IngestPolicy policy = IngestPolicy.defaults().withMaxBatchSize(50).withMaxQueuedTuples(20);
+        IngestService<LatLong, String> service = tree.startIngestService(policy);
+
+        ConcurrentLinkedQueue<TimeId> accepted = new ConcurrentLinkedQueue<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            List<Tuple<LatLong, String>> data = createTestData(1_000);
+            threads.add(new Thread(() -> {
+                try {
+                    for (Tuple<LatLong, String> tuple : data) {
+                        accepted.add(service.put(tuple.key(), tuple.value()));
+                    }
+                } catch (IllegalStateException ex) {
+                    // The service was closed
+                }
+            }));
+        }
+        // Several threads race to close the service while the producers are still putting
+        for (int i = 0; i < 3; i++) {
+            threads.add(new Thread(service::close));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Every Tuple that put accepted was committed before close returned
+        accepted.forEach(id -> assertThat(tree.get(id), notNullValue()));
+    }
+
+    @Test
+    public void badPoliciesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> IngestPolicy.defaults().withMaxBatchSize(0));
+        assertThrows(IllegalArgumentException.class, () -> IngestPolicy.defaults().withMaxBatchBytes(0));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> IngestPolicy.defaults().withMaxLinger(Duration.ofMillis(-1)));
+    }
+}
@@ -1,6 +1,8 @@
 package org.mitre.disttree;
 
 import static java.util.Collections.emptyList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mitre.caasd.commons.ids.TimeId.newId;
@@ -8,6 +10,8 @@ import static org.mitre.disttree.NodeHeader.newLeafNodeHeader;
 
 import java.util.List;
 
+import org.mitre.caasd.commons.ids.TimeId;
+
 import org.junit.jupiter.api.Test;
 
 class NodeHeaderTest {
@@ -41,4 +45,24 @@ class NodeHeaderTest {
     void canBuildInnerNode_withChild() {
         assertDoesNotThrow(() -> new NodeHeader<>(newId(), newId(), "center", 12, List.of(newId()), 0));
     }
+
+    @Test
+    void rejectNegativeDistToParent() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new NodeHeader<>(newId(), newId(), "center", 12, null, 5, -1.0));
+    }
+
+    @Test
+    void distToParentSurvivesCopiesButNotNewParents() {
+        TimeId child = newId();
+        NodeHeader<String> node = new NodeHeader<>(newId(), newId(), "center", 12, List.of(child), 0, 3.0);
+
+        assertThat(node.addChild(newId()).distToParent(), is(3.0));
+        assertThat(node.removeChild(child).distToParent(), is(3.0));
+        assertThat(node.replaceChild(child, newId()).distToParent(), is(3.0));
+
+        // a new parent has a different center
+        assertThat(node.withParent(newId()).hasDistToParent(), is(false));
+    }
 }
@@ -1,8 +1,11 @@
 package org.mitre.disttree;
 
+import static org.mitre.disttree.MiscTestUtils.randomLatLong;
 import static org.mitre.disttree.Serdes.latLongSerde;
 import static org.mitre.disttree.Serdes.stringUtf8Serde;
 import static org.mitre.disttree.SharedTestUtils.createTestData;
+import static org.mitre.disttree.TreeConfig.SearchStrategy.BEST_FIRST;
+import static org.mitre.disttree.TreeConfig.SearchStrategy.DEPTH_FIRST;
 import static org.mitre.disttree.stores.DataStores.inMemoryStore;
 
 import java.time.Duration;
@@ -45,6 +48,55 @@ public class PerformanceTest {
         measureTree(config, NUM_TRIALS, NUM_TUPLES_IN_TREE);
     }
 
+    /**
+     * Measure how many NodeHeaders and DataPages best-first kNN search avoids loading compared to
+     * depth-first kNN search.
+     */
+    @Disabled
+    @Test
+    public void compareSearchStrategies() {
+
+        TreeConfig<LatLong, String> config = TreeConfig.<LatLong, String>builder()
+                .maxTuplesPerPage(50)
+                .branchingFactor(8)
+                .distMetric((a, b) -> a.distanceTo(b).inNauticalMiles())
+                .dataStore(inMemoryStore())
+                .keySerde(latLongSerde())
+                .valueSerde(stringUtf8Serde())
+                .build();
+
+        DistanceTree<LatLong, String> tree = createTree(config, 50_000);
+
+        int NUM_SEARCHES = 1_000;
+        int K = 10;
+
+        StatsAccumulator depthFirstPages = new StatsAccumulator();
+        StatsAccumulator bestFirstPages = new StatsAccumulator();
+        StatsAccumulator depthFirstHeaders = new StatsAccumulator();
+        StatsAccumulator bestFirstHeaders = new StatsAccumulator();
+
+        for (int i = 0; i < NUM_SEARCHES; i++) {
+            LatLong searchKey = randomLatLong();
+
+            Search<LatLong, String> depthFirst = Search.knnSearch(searchKey, K, tree.tree, DEPTH_FIRST);
+            Search<LatLong, String> bestFirst = Search.knnSearch(searchKey, K, tree.tree, BEST_FIRST);
+            depthFirst.executeQuery();
+            bestFirst.executeQuery();
+
+            depthFirstPages.add(depthFirst.results().stats().pagesLoaded());
+            bestFirstPages.add(bestFirst.results().stats().pagesLoaded());
+            depthFirstHeaders.add(depthFirst.results().stats().headersLoaded());
+            bestFirstHeaders.add(bestFirst.results().stats().headersLoaded());
+        }
+
+        System.out.println("Avg DataPages loaded (depth-first): " + depthFirstPages.mean());
+        System.out.println("Avg DataPages loaded (best-first): " + bestFirstPages.mean());
+        System.out.println("Avg DataPages avoided: " + (depthFirstPages.mean() - bestFirstPages.mean()));
+        System.out.println("Avg NodeHeaders loaded (depth-first): " + depthFirstHeaders.mean());
+        System.out.println("Avg NodeHeaders loaded (best-first): " + bestFirstHeaders.mean());
+        System.out.println("Avg NodeHeaders avoided: " + (depthFirstHeaders.mean() - bestFirstHeaders.mean()));
+    }
+
     private void measureTree(TreeConfig<LatLong, String> config, int numTrials, int treeSize) {
 
         SingleUseTimer timer = new SingleUseTimer();
@@ -0,0 +1,98 @@
+package org.mitre.disttree;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mitre.disttree.Batch.batchify;
+import static org.mitre.disttree.Serdes.latLongSerde;
+import static org.mitre.disttree.Serdes.stringUtf8Serde;
+import static org.mitre.disttree.SharedTestUtils.*;
+import static org.mitre.disttree.stores.DataStores.cachingStore;
+import static org.mitre.disttree.stores.DataStores.inMemoryStore;
+import static org.mitre.disttree.stores.DataStores.pipelinedStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.mitre.caasd.commons.LatLong;
+import org.mitre.caasd.commons.ids.TimeId;
+import org.mitre.disttree.stores.PipelinedDataStore;
+
+import org.junit.jupiter.api.Test;
+
+class PipelinedDataStoreTest {
+
+    private static TreeConfig<LatLong, String> configFor(DataStore store) {
+        return TreeConfig.<LatLong, String>builder()
+                .maxTuplesPerPage(20)
+                .distMetric((a, b) -> a.distanceTo(b).inNauticalMiles())
+                .dataStore(store)
+                .keySerde(latLongSerde())
+                .valueSerde(stringUtf8Serde())
+                .build();
+    }
+
+    @Test
+    public void pendingBatchesAreVisibleBeforeTheyAreDurable() {
+
+        DataStore innerStore = inMemoryStore();
+        PipelinedDataStore store = (PipelinedDataStore) pipelinedStore(innerStore, 2);
+
+        var tree = new InternalTree<>(configFor(store));
+        DistanceTree<LatLong, String> facade = new DistanceTree<>(tree);
+
+        List<Tuple<LatLong, String>> dataSoFar = new ArrayList<>();
+        List<CompletableFuture<TimeId>> writes = new ArrayList<>();
+
+        for (Batch<LatLong, String> batch : batchify(createTestData(3_000), 200)) {
+            writes.add(facade.addBatchAsync(batch));
+            dataSoFar.addAll(batch.tuples());
+
+            // The tree must reflect the batch even if the write is still pending
+            verifyTree(dataSoFar, tree);
+        }
+
+        store.flush();
+
+        assertThat(writes.stream().allMatch(CompletableFuture::isDone), is(true));
+        assertThat(innerStore.lastTransactionId(), is(store.lastTransactionId()));
+
+        // The wrapped DataStore received every transaction
+        verifyTree(dataSoFar, new InternalTree<>(configFor(innerStore)));
+    }
+
+    @Test
+    public void addBatchesBuildsTheSameTreeThroughACache() {
+
+        DataStore innerStore = inMemoryStore();
+        var tree = new InternalTree<>(configFor(cachingStore(pipelinedStore(innerStore))));
+
+        List<Tuple<LatLong, String>> testData = createTestData(3_000);
+        new DistanceTree<>(tree).addBatches(batchify(testData, 200));
+
+        verifyTree(testData, tree);
+        verifyTree(testData, new InternalTree<>(configFor(innerStore)));
+    }
+
+    @Test
+    public void closeWritesPendingBatchesThenRejectsNewOnes() {
+
+        DataStore innerStore = inMemoryStore();
+        PipelinedDataStore store = (PipelinedDataStore) pipelinedStore(innerStore, 2);
+        DistanceTree<LatLong, String> tree = new DistanceTree<>(configFor(store));
+
+        List<Tuple<LatLong, String>> testData = createTestData(1_000);
+        batchify(testData, 200).forEach(batch -> tree.addBatchAsync(batch));
+
+        store.close();
+
+        // Every queued batch was written before the writer stopped
+        assertThat(innerStore.lastTransactionId(), is(store.lastTransactionId()));
+        verifyTree(testData, new InternalTree<>(configFor(innerStore)));
+
+        // Reads still work, writes do not
+        verifyTree(testData, tree);
+        assertThrows(IllegalStateException.class, () -> tree.addBatch(new Batch<>(createTestData(10))));
+    }
+}
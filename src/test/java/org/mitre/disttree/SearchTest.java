@@ -1,22 +1,37 @@
 package org.mitre.disttree;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mitre.disttree.Batch.batchify;
 import static org.mitre.disttree.MiscTestUtils.randomLatLong;
 import static org.mitre.disttree.Serdes.latLongSerde;
 import static org.mitre.disttree.Serdes.stringUtf8Serde;
 import static org.mitre.disttree.SharedTestUtils.createTestData;
+import static org.mitre.disttree.SharedTestUtils.verifyTree;
+import static org.mitre.disttree.TreeConfig.SearchStrategy.BEST_FIRST;
+import static org.mitre.disttree.TreeConfig.SearchStrategy.DEPTH_FIRST;
 import static org.mitre.disttree.stores.DataStores.inMemoryStore;
 
 import java.awt.Color;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
 
 import org.mitre.caasd.commons.Distance;
 import org.mitre.caasd.commons.LatLong;
+import org.mitre.caasd.commons.ids.TimeId;
 import org.mitre.caasd.commons.maps.MapBuilder;
 import org.mitre.caasd.commons.maps.MapFeatures;
 import org.mitre.caasd.commons.maps.MonochromeTileServer;
@@ -82,6 +97,283 @@ class SearchTest {
         assertThat(thrown.getMessage(), is("Search was not executed"));
     }
 
+    @Test
+    public void bestFirstSearchFindsSameResultsWithLessWork() {
+
+        List<Tuple<LatLong, String>> testData = createTestData(5_000);
+        InternalTree<LatLong, String> tree = makeInMemoryTreeWithData(testData);
+
+        int depthFirstPages = 0;
+        int bestFirstPages = 0;
+        int depthFirstHeaders = 0;
+        int bestFirstHeaders = 0;
+
+        for (int i = 0; i < 100; i++) {
+            LatLong searchKey = randomLatLong();
+
+            Search<LatLong, String> depthFirst = Search.knnSearch(searchKey, 5, tree, DEPTH_FIRST);
+            Search<LatLong, String> bestFirst = Search.knnSearch(searchKey, 5, tree, BEST_FIRST);
+            depthFirst.executeQuery();
+            bestFirst.executeQuery();
+
+            assertThat(bestFirst.results().distances(), is(depthFirst.results().distances()));
+
+            depthFirstPages += depthFirst.results().stats().pagesLoaded();
+            bestFirstPages += bestFirst.results().stats().pagesLoaded();
+            depthFirstHeaders += depthFirst.results().stats().headersLoaded();
+            bestFirstHeaders += bestFirst.results().stats().headersLoaded();
+        }
+
+        assertThat(bestFirstPages, lessThanOrEqualTo(depthFirstPages));
+        assertThat(bestFirstHeaders, lessThanOrEqualTo(depthFirstHeaders));
+    }
+
+    @Test
+    public void searchReportsDistanceExecutionsSaved() {
+
+        InternalTree<LatLong, String> tree = makeInMemoryTreeWithData(createTestData(2_000));
+        CountingDistanceMetric<LatLong> metric = tree.config().distMetric();
+
+        int maxTuplesPerPage = tree.config().maxTuplesPerPage();
+        int totalSaved = 0;
+
+        for (int i = 0; i < 20; i++) {
+            for (var strategy : List.of(DEPTH_FIRST, BEST_FIRST)) {
+                long priorCount = metric.numExecutions();
+
+                Search<LatLong, String> search = Search.knnSearch(randomLatLong(), 3, tree, strategy);
+                search.executeQuery();
+                SearchStats stats = search.results().stats();
+
+                // The counters are exact
+                assertThat((long) stats.distanceCalcs(), is(metric.numExecutions() - priorCount));
+
+                // Best-first never re-measures a node, so only pruned children and tuples count as saved:
+                // the root, each loaded child, and each tuple in a loaded page is measured or pruned (not both)
+                if (strategy == BEST_FIRST) {
+                    int candidates = 1 + stats.headersLoaded() + stats.pagesLoaded() * maxTuplesPerPage;
+                    assertThat(stats.distanceCalcs() + stats.distanceCalcsSaved(), lessThanOrEqualTo(candidates));
+                }
+                totalSaved += stats.distanceCalcsSaved();
+            }
+        }
+
+        assertThat(totalSaved, greaterThan(0));
+    }
+
+    @Test
+    public void depthFirstSearchCountsReusedDistancesAsSaved() {
+
+        InternalTree<LatLong, String> tree = makeInMemoryTreeWithData(createTestData(2_000));
+
+        // A radius this large visits every node and prunes nothing
+        Search<LatLong, String> search = Search.rangeSearch(randomLatLong(), 1_000_000.0, tree, DEPTH_FIRST);
+        search.executeQuery();
+        SearchStats stats = search.results().stats();
+
+        int numNodes = stats.nodesVisited();
+        int numInnerNodes = numNodes - stats.pagesLoaded();
+        assertThat(stats.headersLoaded(), is(numNodes));
+        assertThat(stats.pagesLoaded(), greaterThan(1));
+
+        // Each node's overlap check reuses its distance, and sorting the children of an inner node
+        // takes at least one comparison fewer than it has children (each comparison reuses 2 distances)
+        int minComparisons = (numNodes - 1) - numInnerNodes;
+        assertThat(stats.distanceCalcsSaved(), greaterThanOrEqualTo(numNodes + 2 * minComparisons));
+    }
+
+    @Test
+    public void batchSearchesMatchIndividualSearches() {
+
+        InternalTree<LatLong, String> tree = makeInMemoryTreeWithData(createTestData(5_000));
+
+        List<LatLong> searchKeys = IntStream.range(0, 50).mapToObj(i -> randomLatLong()).toList();
+
+        BatchSearch<LatLong, String> knnBatch = BatchSearch.knnSearches(searchKeys, 5, tree);
+        BatchSearch<LatLong, String> rangeBatch = BatchSearch.rangeSearches(searchKeys, 25.0, tree);
+        knnBatch.executeQueries();
+        rangeBatch.executeQueries();
+
+        int individualPages = 0;
+
+        for (int i = 0; i < searchKeys.size(); i++) {
+            Search<LatLong, String> knn = Search.knnSearch(searchKeys.get(i), 5, tree, DEPTH_FIRST);
+            Search<LatLong, String> range = Search.rangeSearch(searchKeys.get(i), 25.0, tree, DEPTH_FIRST);
+            knn.executeQuery();
+            range.executeQuery();
+
+            assertThat(knnBatch.results().get(i).distances(), is(knn.results().distances()));
+            assertThat(rangeBatch.results().get(i).distances(), is(range.results().distances()));
+
+            individualPages += knn.results().stats().pagesLoaded();
+        }
+
+        // The shared traversal never loads a DataPage more than once
+        assertThat(knnBatch.pagesLoaded(), lessThanOrEqualTo(individualPages));
+    }
+
+    @Test
+    public void parallelSearchMatchesSequentialSearch() {
+
+        InternalTree<LatLong, String> tree = makeInMemoryTreeWithData(createTestData(5_000));
+        CountingDistanceMetric<LatLong> metric = tree.config().distMetric();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            for (int i = 0; i < 50; i++) {
+                LatLong searchKey = randomLatLong();
+
+                long priorCount = metric.numExecutions();
+                ParallelSearch<LatLong, String> parallelKnn = ParallelSearch.knnSearch(searchKey, 5, tree, executor);
+                parallelKnn.executeQuery();
+
+                // The metric's counter is shared by every thread, it must not lose any increments
+                long numCalcs = parallelKnn.results().stats().distanceCalcs();
+                assertThat(numCalcs, is(metric.numExecutions() - priorCount));
+
+                Search<LatLong, String> knn = Search.knnSearch(searchKey, 5, tree);
+                knn.executeQuery();
+                assertThat(parallelKnn.results().distances(), is(knn.results().distances()));
+
+                ParallelSearch<LatLong, String> parallelRange =
+                        ParallelSearch.rangeSearch(searchKey, 25.0, tree, executor);
+                Search<LatLong, String> range = Search.rangeSearch(searchKey, 25.0, tree);
+                parallelRange.executeQuery();
+                range.executeQuery();
+                assertThat(parallelRange.results().distances(), is(range.results().distances()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void approximateSearchesHonorTheirLimits() {
+
+        InternalTree<LatLong, String> tree = makeInMemoryTreeWithData(createTestData(5_000));
+
+        for (int i = 0; i < 50; i++) {
+            LatLong searchKey = randomLatLong();
+
+            Search<LatLong, String> exact = Search.knnSearch(searchKey, 5, tree);
+            Search<LatLong, String> budget = Search.knnSearch(searchKey, 5, tree, Approximation.maxLeaves(2));
+            Search<LatLong, String> epsilon = Search.knnSearch(searchKey, 5, tree, Approximation.epsilon(0.5));
+            exact.executeQuery();
+            budget.executeQuery();
+            epsilon.executeQuery();
+
+            assertThat(exact.results().isExact(), is(true));
+            assertThat(budget.results().stats().pagesLoaded(), lessThanOrEqualTo(2));
+
+            // Every result is within a factor of (1 + epsilon) of the exact result
+            for (int j = 0; j < 5; j++) {
+                double exactDist = exact.results().result(j).distance();
+                assertThat(epsilon.results().result(j).distance(), lessThanOrEqualTo(1.5 * exactDist + 1E-9));
+            }
+
+            // Results flagged as exact must be exact
+            if (budget.results().isExact()) {
+                assertThat(budget.results().distances(), is(exact.results().distances()));
+            }
+            if (epsilon.results().isExact()) {
+                assertThat(epsilon.results().distances(), is(exact.results().distances()));
+            }
+        }
+    }
+
+    @Test
+    public void rangeSearchIteratorFindsSameResultsAsRangeSearch() {
+
+        InternalTree<LatLong, String> tree = makeInMemoryTreeWithData(createTestData(5_000));
+
+        for (int i = 0; i < 50; i++) {
+            LatLong searchKey = randomLatLong();
+
+            Search<LatLong, String> range = Search.rangeSearch(searchKey, 25.0, tree);
+            range.executeQuery();
+
+            RangeSearchIterator<LatLong, String> iter = new RangeSearchIterator<>(tree, searchKey, 25.0);
+            List<Double> streamed = new ArrayList<>();
+            iter.forEachRemaining(result -> streamed.add(result.distance()));
+
+            // The iterator does not sort its results
+            Collections.sort(streamed);
+            assertThat(streamed, is(range.results().distances()));
+            assertThrows(NoSuchElementException.class, () -> iter.next());
+        }
+    }
+
+    @Test
+    public void rangeSearchIteratorDetectsMutation() {
+
+        InternalTree<LatLong, String> tree = makeInMemoryTreeWithData(createTestData(1_000));
+        var facade = new DistanceTree<>(tree);
+
+        Iterator<SearchResult<LatLong, String>> iter = facade.rangeSearchIterator(randomLatLong(), 1_000.0);
+        iter.next();
+
+        facade.addBatch(batchify(createTestData(50), 50).get(0));
+
+        assertThrows(ConcurrentModificationException.class, () -> iter.forEachRemaining(result -> {}));
+    }
+
+    @Test
+    public void searchAndAddFindsNeighborsThenAddsTheBatch() {
+
+        InternalTree<LatLong, String> tree = makeInMemoryTreeWithData(createTestData(2_000));
+        var facade = new DistanceTree<>(tree);
+
+        List<Tuple<LatLong, String>> allData = new ArrayList<>();
+        facade.treeIterator().forEachRemaining(page -> allData.addAll(page.tuples()));
+
+        for (Batch<LatLong, String> batch : batchify(createTestData(1_000), 100)) {
+
+            // Compute the expected neighbors BEFORE the batch is added
+            List<List<Double>> expected = batch.tuples().stream()
+                    .map(tuple -> facade.knnSearch(tuple.key(), 3).distances())
+                    .toList();
+
+            List<SearchResults<LatLong, String>> results = facade.knnSearchAndAdd(batch, 3);
+            allData.addAll(batch.tuples());
+
+            assertThat(results.size(), is(batch.size()));
+            for (int i = 0; i < batch.size(); i++) {
+                assertThat(results.get(i).distances(), is(expected.get(i)));
+            }
+        }
+
+        verifyTree(allData, tree);
+    }
+
+    @Test
+    public void searchFromKnownTupleMatchesRegularSearch() {
+
+        List<Tuple<LatLong, String>> testData = createTestData(5_000);
+        var facade = new DistanceTree<>(makeInMemoryTreeWithData(testData));
+
+        int fromTupleCalcs = 0;
+        int regularCalcs = 0;
+
+        for (int i = 0; i < 50; i++) {
+            Tuple<LatLong, String> tuple = testData.get(i * 100);
+
+            SearchResults<LatLong, String> fromTuple = facade.knnSearchFrom(tuple.id(), 5);
+            SearchResults<LatLong, String> regular = facade.knnSearch(tuple.key(), 5);
+
+            assertThat(fromTuple.distances(), is(regular.distances()));
+            assertThat(fromTuple.result(0).distance(), is(0.0));
+
+            fromTupleCalcs += fromTuple.stats().distanceCalcs();
+            regularCalcs += regular.stats().distanceCalcs();
+        }
+
+        // Starting at the tuple's own leaf shrinks the search radius before the tree is walked
+        assertThat(fromTupleCalcs, lessThanOrEqualTo(regularCalcs));
+
+        assertThrows(IllegalArgumentException.class, () -> facade.knnSearchFrom(TimeId.newId(), 5));
+    }
+
     InternalTree<LatLong, String> makeInMemoryTreeWithData(Collection<Tuple<LatLong, String>> data) {
 
         InternalTree<LatLong, String> tree = makeInMemoryTree();
@@ -6,6 +6,8 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.mitre.disttree.Serdes.*;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.IntStream;
 
 import org.mitre.caasd.commons.LatLong;
@@ -47,4 +49,31 @@ class SerdePairTest {
         assertThat(inList, hasSize(outList.size()));
         IntStream.range(0, 2).forEach(i -> assertThat(inList.get(0), is(outList.get(0))));
     }
+
+    @Test
+    public void pageSerdeLoopKeepsDistToCenter() {
+        var serdePair = new SerdePair<>(latLongSerde(), stringUtf8Serde());
+
+        Tuple<LatLong, String> tuple = new Tuple<>(TimeId.newId(), LatLong.of(0.5, 10.0), "hello");
+        DataPage<LatLong, String> inPage = new DataPage<>(TimeId.newId(), Set.of(tuple), Map.of(tuple.id(), 2.5));
+
+        DataPage<LatLong, String> outPage = serdePair.deserialize(serdePair.serializePage(inPage));
+
+        assertThat(outPage.distToCenter(tuple.id()), is(2.5));
+        assertThat(Double.isNaN(outPage.distToCenter(TimeId.newId())), is(true));
+    }
+
+    @Test
+    public void serializedTransactionKeepsTransactionId() {
+        // The DataStore must record the typed transaction's id, in-memory indexes compare against it
+        var serdePair = new SerdePair<>(latLongSerde(), stringUtf8Serde());
+
+        TreeTransaction<LatLong, String> typed =
+                new TreeTransaction<>(TimeId.newId(), List.of(), List.of(), List.of(), List.of(), Set.of(), Set.of());
+
+        TreeTransaction<byte[], byte[]> serialized = serdePair.serializeTransaction(typed);
+
+        assertThat(serialized.transactionId(), is(typed.transactionId()));
+        assertThat(serialized.expectedTreeId(), is(typed.expectedTreeId()));
+    }
 }
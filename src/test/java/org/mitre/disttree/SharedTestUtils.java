@@ -7,6 +7,8 @@ import static org.hamcrest.Matchers.*;
 import static org.mitre.disttree.Batch.batchify;
 import static org.mitre.disttree.MiscTestUtils.randomBiModalLatLong;
 import static org.mitre.disttree.MiscTestUtils.randomLatLong;
+import static org.mitre.disttree.Serdes.latLongSerde;
+import static org.mitre.disttree.Serdes.stringUtf8Serde;
 import static org.mitre.disttree.Tuple.newTuple;
 
 import java.util.ArrayList;
@@ -23,6 +25,17 @@ import com.google.common.collect.Sets;
 
 public class SharedTestUtils {
 
+    /** @return A DistanceTree of LatLong/String Tuples (20 per DataPage) that is stored in this DataStore. */
+    static DistanceTree<LatLong, String> newTree(DataStore store) {
+        return TreeConfig.<LatLong, String>builder()
+                .maxTuplesPerPage(20)
+                .distMetric((a, b) -> a.distanceTo(b).inNauticalMiles())
+                .dataStore(store)
+                .keySerde(latLongSerde())
+                .valueSerde(stringUtf8Serde())
+                .buildTree();
+    }
+
     public static List<Tuple<LatLong, String>> createTestData(int n) {
 
         return IntStream.range(0, n)
@@ -100,6 +113,8 @@ public class SharedTestUtils {
         verifyNoDataAtInnerNodes(tree);
         verifyInnerNodesHaveChildren(tree);
         verifyInnerNodeChildrenAreFound(tree);
+        verifyDistToParent(tree);
+        verifyDistToCenter(tree);
 
         // leaf node constraints ...
         verifyAllDataInExactlyOneLeaf(testData, tree);
@@ -307,4 +322,33 @@ public class SharedTestUtils {
 
         System.out.println("  PASSED -- Leaf Node size = Data Page size");
     }
+
+    private static void verifyDistToParent(InternalTree<LatLong, String> tree) {
+
+        DistanceMetric<LatLong> metric = tree.config().distMetric().innerMetric();
+
+        for (NodeHeader<LatLong> innerNode : tree.innerNodes()) {
+            for (NodeHeader<LatLong> child : tree.nodesBelow(innerNode)) {
+                double expected = metric.distanceBtw(child.center(), innerNode.center());
+                assertThat(child.distToParent(), closeTo(expected, 1E-9));
+            }
+        }
+
+        System.out.println("  PASSED -- Every distToParent is correct");
+    }
+
+    private static void verifyDistToCenter(InternalTree<LatLong, String> tree) {
+
+        DistanceMetric<LatLong> metric = tree.config().distMetric().innerMetric();
+
+        for (NodeHeader<LatLong> leaf : tree.leafNodes()) {
+            DataPage<LatLong, String> page = tree.dataPageAt(leaf.id());
+            for (Tuple<LatLong, String> tuple : page.tuples()) {
+                double expected = metric.distanceBtw(tuple.key(), leaf.center());
+                assertThat(page.distToCenter(tuple.id()), closeTo(expected, 1E-9));
+            }
+        }
+
+        System.out.println("  PASSED -- Every tuple's distToCenter is correct");
+    }
 }
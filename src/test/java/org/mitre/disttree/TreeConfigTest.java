@@ -41,6 +41,9 @@ class TreeConfigTest {
         assertThat(config.serdePair().keySerde(), is(keySerde));
         assertThat(config.serdePair().valueSerde(), is(valueSerde));
         assertThat(config.distMetric().innerMetric(), is(metric));
+
+        // DistanceMetrics are not required to be thread-safe, so parallel routing is opt-in
+        assertThat(config.parallelRoutingThreshold, is(0));
     }
 
     @Test
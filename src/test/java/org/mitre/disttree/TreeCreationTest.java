@@ -1,8 +1,12 @@
 package org.mitre.disttree;
 
+import static java.util.stream.Collectors.toMap;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mitre.disttree.Batch.batchify;
 import static org.mitre.disttree.MiscTestUtils.randomLatLong;
 import static org.mitre.disttree.Serdes.*;
@@ -10,10 +14,17 @@ import static org.mitre.disttree.SharedTestUtils.*;
 import static org.mitre.disttree.Tuple.newSlimTuple;
 import static org.mitre.disttree.stores.DataStores.inMemoryStore;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import org.mitre.caasd.commons.LatLong;
+import org.mitre.caasd.commons.ids.TimeId;
 
 import org.junit.jupiter.api.Test;
 
@@ -185,4 +196,385 @@ public class TreeCreationTest {
         // verify a search can run
         assertDoesNotThrow(() -> tree.getClosest(randomLatLong()));
     }
+
+    @Test
+    public void residentInnerNodesMatchTheDataStore() {
+
+        // The resident copies of the upper inner nodes must track every transaction
+        DataStore dataStore = inMemoryStore();
+
+        TreeConfig<LatLong, String> config = TreeConfig.<LatLong, String>builder()
+                .maxTuplesPerPage(10)
+                .branchingFactor(3) // small branching factor = deep tree = several root changes
+                .residentLevels(2)
+                .distMetric(METRIC)
+                .dataStore(dataStore)
+                .keySerde(KEY_SERDE)
+                .valueSerde(VALUE_SERDE)
+                .build();
+
+        var tree = new InternalTree<>(config);
+        var facade = new DistanceTree<>(tree);
+
+        List<Tuple<LatLong, String>> testData = createTestData(2_000);
+        List<Tuple<LatLong, String>> dataSoFar = new ArrayList<>();
+
+        for (Batch<LatLong, String> batch : batchify(testData, 100)) {
+            facade.addBatch(batch);
+            dataSoFar.addAll(batch.tuples());
+
+            for (NodeHeader<LatLong> node : tree.innerNodes()) {
+                NodeHeader<LatLong> stored = config.serdePair().deserializeHeader(dataStore.nodeAt(node.id()));
+                assertThat(node.childNodes(), is(stored.childNodes()));
+                assertThat(node.parent(), is(stored.parent()));
+                assertThat(node.radius(), is(stored.radius()));
+            }
+        }
+
+        verifyTree(dataSoFar, tree);
+    }
+
+    @Test
+    public void inMemoryIndexesAreNotRebuiltAfterAWrite() {
+
+        // The DataStore must record the typed transaction's id, otherwise every write looks like
+        // a change made by some other process and all in-memory state is reloaded
+        for (int residentLevels : List.of(0, 2)) {
+
+            NodeReadCountingStore dataStore = new NodeReadCountingStore(inMemoryStore());
+
+            TreeConfig<LatLong, String> config = TreeConfig.<LatLong, String>builder()
+                    .maxTuplesPerPage(10)
+                    .branchingFactor(3)
+                    .residentLevels(residentLevels)
+                    .distMetric(METRIC)
+                    .dataStore(dataStore)
+                    .keySerde(KEY_SERDE)
+                    .valueSerde(VALUE_SERDE)
+                    .build();
+
+            var tree = new InternalTree<>(config);
+            var facade = new DistanceTree<>(tree);
+
+            List<Batch<LatLong, String>> batches = batchify(createTestData(1_000), 100);
+
+            // Build the in-memory indexes once, afterward the transactions should maintain them
+            facade.addBatch(batches.get(0));
+            tree.rootNode();
+            tree.leafIndex();
+
+            for (Batch<LatLong, String> batch : batches.subList(1, batches.size())) {
+                facade.addBatch(batch);
+
+                dataStore.numNodeReads = 0;
+
+                tree.rootNode();
+                tree.leafIndex().numLeaves();
+
+                assertThat(dataStore.numNodeReads, is(0));
+            }
+        }
+    }
+
+    @Test
+    public void headerCachesDetectChangesMadeByOtherTrees() {
+
+        // Two trees share one DataStore, each tree's HeaderCache must notice the other tree's writes
+        DataStore dataStore = inMemoryStore();
+
+        TreeConfig<LatLong, String> config = TreeConfig.<LatLong, String>builder()
+                .maxTuplesPerPage(10)
+                .branchingFactor(3)
+                .headerCacheSize(50)
+                .distMetric(METRIC)
+                .dataStore(dataStore)
+                .keySerde(KEY_SERDE)
+                .valueSerde(VALUE_SERDE)
+                .build();
+
+        var treeA = new InternalTree<>(config);
+        var treeB = new InternalTree<>(config);
+        var facadeA = new DistanceTree<>(treeA);
+        var facadeB = new DistanceTree<>(treeB);
+
+        List<Tuple<LatLong, String>> testData = createTestData(1_000);
+        List<Tuple<LatLong, String>> dataSoFar = new ArrayList<>();
+
+        boolean useA = true;
+        for (Batch<LatLong, String> batch : batchify(testData, 100)) {
+            (useA ? facadeA : facadeB).addBatch(batch);
+            dataSoFar.addAll(batch.tuples());
+            useA = !useA;
+
+            verifyTree(dataSoFar, treeA);
+            verifyTree(dataSoFar, treeB);
+        }
+    }
+
+    @Test
+    public void leafIndexMatchesTheTree() {
+
+        TreeConfig<LatLong, String> config = TreeConfig.<LatLong, String>builder()
+                .maxTuplesPerPage(10)
+                .branchingFactor(4)
+                .incrementalRepacking() // repacking is the main client of the LeafIndex
+                .distMetric(METRIC)
+                .dataStore(inMemoryStore())
+                .keySerde(KEY_SERDE)
+                .valueSerde(VALUE_SERDE)
+                .build();
+
+        var tree = new InternalTree<>(config);
+        var facade = new DistanceTree<>(tree);
+
+        for (Batch<LatLong, String> batch : batchify(createTestData(2_000), 100)) {
+            facade.addBatch(batch);
+
+            List<TimeId> leafIds =
+                    tree.leafNodes().stream().map(NodeHeader::id).sorted().toList();
+
+            TreeDiffTracker<LatLong, String> treeDiff = new TreeDiffTracker<>(tree);
+            assertThat(treeDiff.numLeafNodes(), is(leafIds.size()));
+            assertThat(treeDiff.oldestLeafNode(), is(leafIds.get(0)));
+        }
+    }
+
+    @Test
+    public void groupDescentFindsTheSamePathsAsSingleKeyDescent() {
+
+        // Without a HeaderCache every NodeHeader read reaches the DataStore (and is counted)
+        NodeReadCountingStore dataStore = new NodeReadCountingStore(inMemoryStore());
+        TreeConfig<LatLong, String> config = TreeConfig.<LatLong, String>builder()
+                .maxTuplesPerPage(20)
+                .branchingFactor(8)
+                .headerCacheSize(0)
+                .distMetric(METRIC)
+                .dataStore(dataStore)
+                .keySerde(KEY_SERDE)
+                .valueSerde(VALUE_SERDE)
+                .build();
+
+        var tree = new InternalTree<>(config);
+        var facade = new DistanceTree<>(tree);
+        batchify(createTestData(5_000), 500).forEach(facade::addBatch);
+
+        List<LatLong> keys = createTestData(200).stream().map(Tuple::key).toList();
+        List<Map<TimeId, Double>> noKnownDists =
+                keys.stream().map(key -> Map.<TimeId, Double>of()).toList();
+
+        TreeDiffTracker<LatLong, String> treeDiff = new TreeDiffTracker<>(tree);
+
+        dataStore.numNodeReads = 0;
+        List<List<DistBtw<LatLong>>> paths = treeDiff.pathsToLeavesFor(keys, noKnownDists, false);
+        int groupReads = dataStore.numNodeReads;
+
+        dataStore.numNodeReads = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            assertThat(paths.get(i), is(treeDiff.pathToLeafFor(keys.get(i))));
+        }
+        int singleKeyReads = dataStore.numNodeReads;
+
+        // The group descent reads the root, then the children of each inner node on any path (once each),
+        // single key descents re-read the upper levels for every key
+        Map<TimeId, Integer> numChildrenOfTouchedInnerNodes = paths.stream()
+                .flatMap(List::stream)
+                .map(DistBtw::node)
+                .filter(node -> !node.isLeafNode())
+                .collect(toMap(NodeHeader::id, NodeHeader::numChildren, (a, b) -> a));
+        int touchedNodes = 1 + numChildrenOfTouchedInnerNodes.values().stream().mapToInt(n -> n).sum();
+
+        assertThat(groupReads, lessThanOrEqualTo(touchedNodes));
+        assertThat(groupReads * 5, lessThan(singleKeyReads));
+    }
+
+    @Test
+    public void parallelRoutingBuildsTheSameTree() {
+
+        DistanceTree<LatLong, String> sequential = new DistanceTree<>(routingConfig(0));
+        DistanceTree<LatLong, String> parallel = new DistanceTree<>(routingConfig(1));
+
+        List<Tuple<LatLong, String>> testData = createTestData(10_000);
+        for (Batch<LatLong, String> batch : batchify(testData, 500)) {
+            sequential.addBatch(batch);
+            parallel.addBatch(batch);
+        }
+
+        // Routing in parallel measures the same distances and produces the same OpLists
+        assertThat(parallel.distMetricExecutionCount(), is(sequential.distMetricExecutionCount()));
+        assertThat(parallel.treeStats(), is(sequential.treeStats()));
+
+        verifyTree(testData, parallel);
+    }
+
+    private static TreeConfig<LatLong, String> routingConfig(int parallelRoutingThreshold) {
+        return TreeConfig.<LatLong, String>builder()
+                .maxTuplesPerPage(20)
+                .branchingFactor(8)
+                .parallelRoutingThreshold(parallelRoutingThreshold)
+                .distMetric(METRIC)
+                .dataStore(inMemoryStore())
+                .keySerde(KEY_SERDE)
+                .valueSerde(VALUE_SERDE)
+                .build();
+    }
+
+    @Test
+    public void bulkLoadingBuildsAValidTree() {
+
+        TreeConfig<LatLong, String> config = TreeConfig.<LatLong, String>builder()
+                .maxTuplesPerPage(50)
+                .branchingFactor(8)
+                .distMetric(METRIC)
+                .dataStore(inMemoryStore())
+                .keySerde(KEY_SERDE)
+                .valueSerde(VALUE_SERDE)
+                .build();
+
+        DistanceTree<LatLong, String> tree = new DistanceTree<>(config);
+
+        List<Tuple<LatLong, String>> testData = new ArrayList<>(createTestData(20_000));
+        tree.bulkLoad(testData);
+
+        verifyTree(testData, tree);
+
+        // A bulk loaded tree accepts new data just like any other tree
+        List<Tuple<LatLong, String>> moreData = createTestData(1_000);
+        batchify(moreData, 100).forEach(tree::addBatch);
+        testData.addAll(moreData);
+
+        verifyTree(testData, tree);
+    }
+
+    @Test
+    public void parallelBulkLoadingBuildsTheSameTree() {
+
+        // Big enough that the first splits are forked
+        List<Tuple<LatLong, String>> testData = createTestData(50_000);
+
+        DistanceTree<LatLong, String> sequential = new DistanceTree<>(bulkLoadConfig());
+        sequential.bulkLoad(testData);
+
+        DistanceTree<LatLong, String> parallel = new DistanceTree<>(bulkLoadConfig());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        parallel.bulkLoad(testData, pool);
+        pool.shutdown();
+
+        // The seeded partitioning does not depend on how the work was scheduled
+        assertThat(parallel.distMetricExecutionCount(), is(sequential.distMetricExecutionCount()));
+        assertThat(parallel.treeStats().numLeafNodes(), is(sequential.treeStats().numLeafNodes()));
+
+        verifyTree(testData, parallel);
+    }
+
+    @Test
+    public void bigFirstBatchesOnlyUseTheCallingThread() {
+
+        // A DistanceMetric is not required to be thread-safe, so parallel work must be opted into
+        Set<Thread> metricThreads = ConcurrentHashMap.newKeySet();
+        DistanceMetric<LatLong> recordingMetric = (a, b) -> {
+            metricThreads.add(Thread.currentThread());
+            return METRIC.distanceBtw(a, b);
+        };
+
+        DistanceTree<LatLong, String> tree = TreeConfig.<LatLong, String>builder()
+                .maxTuplesPerPage(50)
+                .distMetric(recordingMetric)
+                .dataStore(inMemoryStore())
+                .keySerde(KEY_SERDE)
+                .valueSerde(VALUE_SERDE)
+                .buildTree();
+
+        // Big enough to cross both the split and the center selection parallelism thresholds
+        List<Tuple<LatLong, String>> testData = createTestData(70_000);
+        tree.addBatch(new Batch<>(testData));
+
+        assertThat(metricThreads, is(Set.of(Thread.currentThread())));
+        verifyTree(testData, tree);
+    }
+
+    private static TreeConfig<LatLong, String> bulkLoadConfig() {
+        return TreeConfig.<LatLong, String>builder()
+                .maxTuplesPerPage(50)
+                .branchingFactor(8)
+                .distMetric(METRIC)
+                .dataStore(inMemoryStore())
+                .keySerde(KEY_SERDE)
+                .valueSerde(VALUE_SERDE)
+                .build();
+    }
+
+    @Test
+    public void bulkLoadingRequiresAnEmptyTree() {
+
+        TreeConfig<LatLong, String> config = TreeConfig.<LatLong, String>builder()
+                .distMetric(METRIC)
+                .dataStore(inMemoryStore())
+                .keySerde(KEY_SERDE)
+                .valueSerde(VALUE_SERDE)
+                .build();
+
+        DistanceTree<LatLong, String> tree = new DistanceTree<>(config);
+        tree.bulkLoad(createTestData(10));
+
+        assertThrows(IllegalStateException.class, () -> tree.bulkLoad(createTestData(10)));
+    }
+
+    /** Counts the NodeHeaders read from a DataStore. */
+    private static class NodeReadCountingStore implements DataStore {
+
+        final DataStore inner;
+
+        int numNodeReads = 0;
+
+        NodeReadCountingStore(DataStore inner) {
+            this.inner = inner;
+        }
+
+        @Override
+        public TimeId lastTransactionId() {
+            return inner.lastTransactionId();
+        }
+
+        @Override
+        public TimeId rootId() {
+            return inner.rootId();
+        }
+
+        @Override
+        public DataPage<byte[], byte[]> dataPageAt(TimeId id) {
+            return inner.dataPageAt(id);
+        }
+
+        @Override
+        public NodeHeader<byte[]> nodeAt(TimeId id) {
+            numNodeReads++;
+            return inner.nodeAt(id);
+        }
+
+        @Override
+        public List<NodeHeader<byte[]>> nodesAt(Collection<TimeId> ids) {
+            numNodeReads += ids.size();
+            return inner.nodesAt(ids);
+        }
+
+        @Override
+        public List<DataPage<byte[], byte[]>> dataPagesAt(Collection<TimeId> ids) {
+            return inner.dataPagesAt(ids);
+        }
+
+        @Override
+        public TimeId pageIdOf(TimeId tupleId) {
+            return inner.pageIdOf(tupleId);
+        }
+
+        @Override
+        public Map<TimeId, TimeId> pageIdsOfTuplesOlderThan(Instant cutoff) {
+            return inner.pageIdsOfTuplesOlderThan(cutoff);
+        }
+
+        @Override
+        public void applyTransaction(TreeTransaction<byte[], byte[]> transaction) {
+            inner.applyTransaction(transaction);
+        }
+    }
 }
@@ -2,6 +2,7 @@ package org.mitre.disttree;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mitre.disttree.MiscTestUtils.randomLatLong;
 import static org.mitre.disttree.Serdes.latLongSerde;
 import static org.mitre.disttree.Serdes.stringUtf8Serde;
@@ -10,6 +11,7 @@ import static org.mitre.disttree.SharedTestUtils.verifyTree;
 import static org.mitre.disttree.Tuple.newTuple;
 import static org.mitre.disttree.stores.DataStores.inMemoryStore;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -60,6 +62,135 @@ public class TreeTest {
         assertThat(testIds.size(), is(resultIds.size()));
     }
 
+    @Test
+    public void deletingTuplesOnlyRemovesThoseTuples() {
+
+        DistanceTree<LatLong, String> tree = TreeConfig.<LatLong, String>builder()
+                .branchingFactor(8)
+                .maxTuplesPerPage(40)
+                .distMetric((a, b) -> a.distanceTo(b).inNauticalMiles())
+                .dataStore(inMemoryStore())
+                .keySerde(latLongSerde())
+                .valueSerde(stringUtf8Serde())
+                .buildTree();
+
+        List<Tuple<LatLong, String>> testData = SharedTestUtils.createTestData(5_000);
+        addTestDataToTree(tree, testData);
+
+        // Delete the oldest 2,000 tuples (i.e., slide a retention window forward)
+        List<Tuple<LatLong, String>> deleted = testData.subList(0, 2_000);
+        List<Tuple<LatLong, String>> kept = testData.subList(2_000, 5_000);
+
+        tree.delete(deleted.stream().map(Tuple::id).toList());
+
+        // The tree is still correctly formatted, even though leaves shrank, merged, and disappeared
+        verifyTree(kept, tree);
+        assertThat(tree.treeStats().numTuples(), is(3_000));
+        deleted.forEach(tuple -> assertThat(tree.get(tuple.id()), nullValue()));
+
+        // Updating a value does not move the Tuple
+        Tuple<LatLong, String> updateMe = kept.get(0);
+        tree.updateValue(updateMe.id(), "newValue");
+
+        assertThat(tree.get(updateMe.id()).value(), is("newValue"));
+        assertThat(tree.get(updateMe.id()).key(), is(updateMe.key()));
+        assertThat(tree.treeStats().numTuples(), is(3_000));
+
+        // Deleting everything leaves an empty tree that can be refilled
+        tree.delete(kept.stream().map(Tuple::id).toList());
+        assertThat(tree.knnSearch(randomLatLong(), 5).isEmpty(), is(true));
+
+        List<Tuple<LatLong, String>> moreData = SharedTestUtils.createTestData(1_000);
+        addTestDataToTree(tree, moreData);
+        verifyTree(moreData, tree);
+    }
+
+    @Test
+    public void canDeleteAllTuplesWithKey() {
+
+        LatLong sharedKey = randomLatLong();
+
+        DistanceTree<LatLong, String> tree = TreeConfig.<LatLong, String>builder()
+                .branchingFactor(8)
+                .maxTuplesPerPage(40)
+                .distMetric((a, b) -> a.distanceTo(b).inNauticalMiles())
+                .dataStore(inMemoryStore())
+                .keySerde(latLongSerde())
+                .valueSerde(stringUtf8Serde())
+                .buildTree();
+
+        List<Tuple<LatLong, String>> otherData = SharedTestUtils.createTestData(1_000);
+        addTestDataToTree(tree, otherData);
+        addTestDataToTree(tree, createTestData(10, sharedKey));
+
+        int numDeleted = tree.deleteAllWithKey(sharedKey);
+
+        assertThat(numDeleted, is(10));
+        verifyTree(otherData, tree);
+    }
+
+    @Test
+    public void deletingEveryTupleClearsTheRoot() {
+
+        LatLong sharedKey = randomLatLong();
+        DataStore store = inMemoryStore();
+
+        DistanceTree<LatLong, String> tree = TreeConfig.<LatLong, String>builder()
+                .branchingFactor(8)
+                .maxTuplesPerPage(40)
+                .distMetric((a, b) -> a.distanceTo(b).inNauticalMiles())
+                .dataStore(store)
+                .keySerde(latLongSerde())
+                .valueSerde(stringUtf8Serde())
+                .buildTree();
+
+        addTestDataToTree(tree, createTestData(100, sharedKey));
+
+        assertThat(tree.deleteAllWithKey(sharedKey), is(100));
+
+        // The store must not keep pointing at the (deleted) root node
+        assertThat(store.rootId(), nullValue());
+        assertThat(tree.knnSearch(sharedKey, 5).isEmpty(), is(true));
+        assertThat(tree.treeStats().numTuples(), is(0));
+        assertThat(tree.treeIterator().hasNext(), is(false));
+
+        List<Tuple<LatLong, String>> moreData = SharedTestUtils.createTestData(500);
+        addTestDataToTree(tree, moreData);
+        verifyTree(moreData, tree);
+    }
+
+    @Test
+    public void expiringOldTuplesKeepsNewerTuples() throws InterruptedException {
+
+        DistanceTree<LatLong, String> tree = TreeConfig.<LatLong, String>builder()
+                .branchingFactor(8)
+                .maxTuplesPerPage(40)
+                .distMetric((a, b) -> a.distanceTo(b).inNauticalMiles())
+                .dataStore(inMemoryStore())
+                .keySerde(latLongSerde())
+                .valueSerde(stringUtf8Serde())
+                .buildTree();
+
+        // Tuple TimeIds are drawn when the Tuples are created, so older data is created first
+        List<Tuple<LatLong, String>> oldData = SharedTestUtils.createTestData(3_000);
+        Thread.sleep(5);
+        Instant cutoff = Instant.now();
+        Thread.sleep(5);
+        List<Tuple<LatLong, String>> newData = SharedTestUtils.createTestData(2_000);
+
+        addTestDataToTree(tree, oldData);
+        addTestDataToTree(tree, newData);
+
+        int numExpired = tree.expireOlderThan(cutoff);
+
+        assertThat(numExpired, is(3_000));
+        verifyTree(newData, tree);
+
+        // Nothing else is old enough to expire
+        assertThat(tree.expireOlderThan(cutoff), is(0));
+        assertThat(tree.treeStats().numTuples(), is(2_000));
+    }
+
     /** Create n Entries that all have the same LatLong Key. */
     private static List<Tuple<LatLong, String>> createTestData(int n, LatLong sharedKey) {
 
@@ -0,0 +1,186 @@
+package org.mitre.disttree;
+
+import static java.util.stream.Collectors.toMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mitre.disttree.Batch.batchify;
+import static org.mitre.disttree.SharedTestUtils.*;
+import static org.mitre.disttree.stores.DataStores.duckDbStore;
+import static org.mitre.disttree.stores.DataStores.inMemoryStore;
+import static org.mitre.disttree.stores.DataStores.versionedStore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.mitre.caasd.commons.LatLong;
+import org.mitre.caasd.commons.ids.TimeId;
+import org.mitre.disttree.stores.VersionedDataStore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class VersionedDataStoreTest {
+
+    @TempDir
+    File testDir;
+
+    @Test
+    public void snapshotsIgnoreLaterTransactions() {
+
+        VersionedDataStore store = (VersionedDataStore) versionedStore(inMemoryStore());
+        DistanceTree<LatLong, String> tree = newTree(store);
+
+        List<Tuple<LatLong, String>> firstData = createTestData(1_000);
+        tree.addBatches(batchify(firstData, 100));
+
+        try (TreeSnapshot<LatLong, String> snapshot = tree.openSnapshot()) {
+
+            TreeIterator<LatLong, String> iterator = snapshot.treeIterator();
+
+            List<Tuple<LatLong, String>> allData = new ArrayList<>(firstData);
+            for (Batch<LatLong, String> batch : batchify(createTestData(1_000), 100)) {
+                tree.addBatch(batch);
+                allData.addAll(batch.tuples());
+            }
+            tree.delete(firstData.get(0).id());
+            allData.remove(0);
+
+            // The snapshot's iterator does not detect mutation because the snapshot never changes
+            int numTuples = 0;
+            while (iterator.hasNext()) {
+                numTuples += iterator.next().tuples().size();
+            }
+            assertThat(numTuples, is(firstData.size()));
+
+            verifyTree(firstData, snapshot);
+            verifyTree(allData, tree);
+
+            assertThat(snapshot.get(firstData.get(0).id()), notNullValue());
+            assertThat(snapshot.get(allData.get(allData.size() - 1).id()), nullValue());
+            assertThat(store.retainedEditionCount() > 0, is(true));
+        }
+
+        assertThat(store.retainedEditionCount(), is(0L));
+    }
+
+    @Test
+    public void snapshotReadsRunWhileTransactionsCommit() throws InterruptedException {
+        readSnapshotsWhileWriting(versionedStore(inMemoryStore()));
+    }
+
+    @Test
+    public void snapshotReadsRunWhileDuckDBTransactionsCommit() throws InterruptedException {
+        readSnapshotsWhileWriting(versionedStore(duckDbStore(testDir.getAbsolutePath())));
+    }
+
+    /** What a reader saw in one snapshot. */
+    private record SnapshotRead(TimeId transactionId, Set<TimeId> tupleIds, List<Double> knnDistances) {}
+
+    /**
+     * A reader thread repeatedly iterates and searches snapshots while batches (that split leaves
+     * and inner nodes) and deletes are committed. Every snapshot must match exactly one committed
+     * state of the tree.
+     */
+    private static void readSnapshotsWhileWriting(DataStore store) throws InterruptedException {
+
+        DistanceTree<LatLong, String> tree = newTree(store);
+        LatLong searchKey = LatLong.of(0.0, 0.0);
+
+        List<Tuple<LatLong, String>> testData = createTestData(3_000);
+        Map<TimeId, LatLong> keys = testData.stream().collect(toMap(Tuple::id, Tuple::key));
+
+        // The tuples in the tree after each committed transaction (recorded by the writer)
+        Map<TimeId, Set<TimeId>> tupleIdsAfter = new ConcurrentHashMap<>();
+        List<TimeId> liveIds = new ArrayList<>();
+
+        tree.addBatches(batchify(testData.subList(0, 500), 100));
+        testData.subList(0, 500).forEach(tuple -> liveIds.add(tuple.id()));
+        tupleIdsAfter.put(tree.tree.lastTransactionId(), Set.copyOf(liveIds));
+
+        ConcurrentLinkedQueue<SnapshotRead> reads = new ConcurrentLinkedQueue<>();
+        AtomicReference<Throwable> readerFailure = new AtomicReference<>();
+        AtomicBoolean done = new AtomicBoolean(false);
+
+        Thread reader = new Thread(() -> {
+            try {
+                do {
+                    try (TreeSnapshot<LatLong, String> snapshot = tree.openSnapshot()) {
+                        Set<TimeId> tupleIds = new HashSet<>();
+                        TreeIterator<LatLong, String> iterator = snapshot.treeIterator();
+                        while (iterator.hasNext()) {
+                            tupleIds.addAll(iterator.next().idSet());
+                        }
+                        List<Double> distances = snapshot.knnSearch(searchKey, 5).distances();
+                        reads.add(new SnapshotRead(snapshot.transactionId(), tupleIds, distances));
+                    }
+                } while (!done.get());
+            } catch (Throwable ex) {
+                readerFailure.set(ex);
+            }
+        });
+        reader.start();
+
+        for (Batch<LatLong, String> batch : batchify(testData.subList(500, 3_000), 100)) {
+            tree.addBatch(batch);
+            batch.tuples().forEach(tuple -> liveIds.add(tuple.id()));
+            tupleIdsAfter.put(tree.tree.lastTransactionId(), Set.copyOf(liveIds));
+
+            // Delete the oldest tuples so leaves also shrink and merge
+            List<TimeId> oldest = liveIds.subList(0, 30);
+            tree.delete(oldest);
+            oldest.clear();
+            tupleIdsAfter.put(tree.tree.lastTransactionId(), Set.copyOf(liveIds));
+        }
+
+        done.set(true);
+        reader.join();
+
+        assertThat(readerFailure.get(), nullValue());
+        assertThat(reads.isEmpty(), is(false));
+
+        for (SnapshotRead read : reads) {
+            Set<TimeId> expected = tupleIdsAfter.get(read.transactionId());
+            assertThat(expected, notNullValue());
+            assertThat(read.tupleIds(), is(expected));
+
+            List<Double> expectedDistances = expected.stream()
+                    .map(id -> searchKey.distanceTo(keys.get(id)).inNauticalMiles())
+                    .sorted()
+                    .limit(5)
+                    .toList();
+            assertThat(read.knnDistances(), is(expectedDistances));
+        }
+    }
+
+    @Test
+    public void snapshotsAreReadOnly() {
+
+        DistanceTree<LatLong, String> tree = newTree(versionedStore(inMemoryStore()));
+        tree.addBatches(batchify(createTestData(100), 100));
+
+        try (TreeSnapshot<LatLong, String> snapshot = tree.openSnapshot()) {
+            assertThrows(
+                    UnsupportedOperationException.class,
+                    () -> snapshot.addBatch(batchify(createTestData(10), 10).get(0)));
+        }
+    }
+
+    @Test
+    public void storesWithoutHistoryCannotOpenSnapshots() {
+
+        DistanceTree<LatLong, String> tree = newTree(inMemoryStore());
+
+        assertThrows(UnsupportedOperationException.class, () -> tree.openSnapshot());
+    }
+}